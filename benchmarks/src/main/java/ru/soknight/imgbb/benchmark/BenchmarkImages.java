@@ -0,0 +1,50 @@
+package ru.soknight.imgbb.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/*
+ * Generates the benchmark images.
+ * 
+ * A gradient with noise is compressed like a photo: not as good as a flat color,
+ * but not as bad as a pure noise, so the encoded sizes are close to the real ones.
+ */
+final class BenchmarkImages {
+
+    private static final long SEED = 0x1B6B_5EEDL;
+    
+    private BenchmarkImages() {}
+    
+    static BufferedImage create(int size) {
+        Random random = new Random(SEED);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                int red = x * 255 / size;
+                int green = y * 255 / size;
+                int blue = (x + y) * 127 / size;
+                int noise = random.nextInt(16);
+                image.setRGB(x, y, (red ^ noise) << 16 | (green ^ noise) << 8 | (blue ^ noise));
+            }
+        }
+        return image;
+    }
+    
+    static File write(int size, String formatName) throws IOException {
+        Path path = Files.createTempFile("imgbb-benchmark-" + size + "-", "." + formatName);
+        File file = path.toFile();
+        file.deleteOnExit();
+        
+        if(!ImageIO.write(create(size), formatName, file))
+            throw new IllegalArgumentException("Unsupported image format: " + formatName + "!");
+        
+        return file;
+    }
+    
+}
@@ -0,0 +1,66 @@
+package ru.soknight.imgbb.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.soknight.imgbb.converter.ImageBase64Converters;
+
+/**
+ * Measures the image to base64 string converters.
+ * <p>
+ * The file converters read the same file every time, so it's mostly in the page cache
+ * and the results show the CPU and allocation cost of the encoding itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageEncodingBenchmark {
+
+    @Param({ "256", "1024", "2048" })
+    private int size;
+    
+    @Param({ "png", "jpeg" })
+    private String format;
+    
+    private BufferedImage image;
+    private File file;
+    
+    @Setup
+    public void setup() throws IOException {
+        this.image = BenchmarkImages.create(size);
+        this.file = BenchmarkImages.write(size, format);
+    }
+    
+    @Benchmark
+    public String fromBufferedImage() {
+        return ImageBase64Converters.fromBufferedImage(image, format);
+    }
+    
+    @Benchmark
+    public String fromImageFile() {
+        return ImageBase64Converters.fromImageFile(file);
+    }
+    
+    @Benchmark
+    public String fromImageFileDirect() {
+        return ImageBase64Converters.fromImageFileDirect(file);
+    }
+    
+}
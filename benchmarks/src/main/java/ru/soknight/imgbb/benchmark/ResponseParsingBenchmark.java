@@ -0,0 +1,42 @@
+package ru.soknight.imgbb.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.soknight.imgbb.response.OptionalResponse;
+
+/**
+ * Measures the parsing of the upload response body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private static final byte[] RESPONSE_BYTES = StubUploadServer.RESPONSE_BODY.getBytes(StandardCharsets.UTF_8);
+    
+    @Param({ "false", "true" })
+    private boolean retainRaw;
+    
+    @Benchmark
+    public OptionalResponse of() throws IOException {
+        return OptionalResponse.of(200, new ByteArrayInputStream(RESPONSE_BYTES), retainRaw);
+    }
+    
+}
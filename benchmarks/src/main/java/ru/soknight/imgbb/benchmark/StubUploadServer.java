@@ -0,0 +1,76 @@
+package ru.soknight.imgbb.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * An embedded HTTP server which imitates the 'https://api.imgbb.com/1/upload' endpoint.
+ * 
+ * The request body is read fully and dropped, the response is the same for all requests,
+ * so the measured time is the client side work plus the loopback transfer.
+ */
+final class StubUploadServer implements AutoCloseable {
+
+    static final String UPLOAD_PATH = "/1/upload";
+    
+    static final String RESPONSE_BODY = "{\"data\":{"
+            + "\"id\":\"2ndCYJK\",\"title\":\"c1f64245afb2\","
+            + "\"url_viewer\":\"https:\\/\\/ibb.co\\/2ndCYJK\","
+            + "\"url\":\"https:\\/\\/i.ibb.co\\/w04Prt6\\/c1f64245afb2.gif\","
+            + "\"display_url\":\"https:\\/\\/i.ibb.co\\/98W13PY\\/c1f64245afb2.gif\","
+            + "\"width\":\"1\",\"height\":\"1\",\"size\":\"42\",\"time\":\"1552042565\",\"expiration\":\"0\","
+            + "\"image\":{\"filename\":\"c1f64245afb2.gif\",\"name\":\"c1f64245afb2\",\"mime\":\"image\\/gif\","
+            + "\"extension\":\"gif\",\"url\":\"https:\\/\\/i.ibb.co\\/w04Prt6\\/c1f64245afb2.gif\"},"
+            + "\"thumb\":{\"filename\":\"c1f64245afb2.gif\",\"name\":\"c1f64245afb2\",\"mime\":\"image\\/gif\","
+            + "\"extension\":\"gif\",\"url\":\"https:\\/\\/i.ibb.co\\/2ndCYJK\\/c1f64245afb2.gif\"},"
+            + "\"medium\":{\"filename\":\"c1f64245afb2.gif\",\"name\":\"c1f64245afb2\",\"mime\":\"image\\/gif\","
+            + "\"extension\":\"gif\",\"url\":\"https:\\/\\/i.ibb.co\\/98W13PY\\/c1f64245afb2.gif\"},"
+            + "\"delete_url\":\"https:\\/\\/ibb.co\\/2ndCYJK\\/670a7e48ddcb85ac340c717a41047e5c\"},"
+            + "\"success\":true,\"status\":200}";
+    
+    private static final byte[] RESPONSE_BYTES = RESPONSE_BODY.getBytes(StandardCharsets.UTF_8);
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    
+    StubUploadServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        
+        server.createContext(UPLOAD_PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+    
+    String getUploadUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + UPLOAD_PATH;
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        try(InputStream body = exchange.getRequestBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+        
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, RESPONSE_BYTES.length);
+        exchange.getResponseBody().write(RESPONSE_BYTES);
+        exchange.close();
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+}
@@ -0,0 +1,84 @@
+package ru.soknight.imgbb.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.soknight.imgbb.ImgbbUploadClient;
+import ru.soknight.imgbb.converter.ImageBase64Converters;
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.response.OptionalResponse;
+import ru.soknight.imgbb.source.ImageSource;
+
+/**
+ * Measures the full upload path against the {@link StubUploadServer embedded stub server}.
+ * <p>
+ * The base64 benchmark encodes the image for each upload like the most of the SDK users do,
+ * the streamed one sends the image file as a multipart part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploadBenchmark {
+
+    private static final String API_KEY = "0123456789abcdef0123456789abcdef";
+    
+    @Param({ "256", "1024", "2048" })
+    private int size;
+    
+    @Param({ "png", "jpeg" })
+    private String format;
+    
+    private StubUploadServer server;
+    private ImgbbUploadClient client;
+    private File file;
+    
+    @Setup
+    public void setup() throws IOException {
+        this.server = new StubUploadServer();
+        this.client = new ImgbbUploadClient.Builder()
+                .apiUrl(server.getUploadUrl())
+                .build();
+        this.file = BenchmarkImages.write(size, format);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+    
+    @Benchmark
+    public OptionalResponse uploadBase64() {
+        UploadParameters parameters = new UploadParameters.Builder()
+                .apiKey(API_KEY)
+                .imageBase64(ImageBase64Converters.fromImageFile(file))
+                .build();
+        return client.uploadImage(parameters);
+    }
+    
+    @Benchmark
+    public OptionalResponse uploadStreamed() {
+        UploadParameters parameters = new UploadParameters.Builder()
+                .apiKey(API_KEY)
+                .imageSource(ImageSource.of(file))
+                .build();
+        return client.uploadImage(parameters);
+    }
+    
+}
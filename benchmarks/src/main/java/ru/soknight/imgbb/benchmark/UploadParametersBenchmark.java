@@ -0,0 +1,73 @@
+package ru.soknight.imgbb.benchmark;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.soknight.imgbb.converter.ImageBase64Converters;
+import ru.soknight.imgbb.parameter.ExpirationTime;
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.parameter.UploadTemplate;
+
+/**
+ * Measures the derivation of the upload parameters from a template and their serialization to the request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploadParametersBenchmark {
+
+    @Param({ "256", "1024", "2048" })
+    private int size;
+    
+    @Param({ "png", "jpeg" })
+    private String format;
+    
+    private UploadTemplate template;
+    private String imageBase64;
+    private UploadParameters parameters;
+    
+    @Setup
+    public void setup() throws IOException {
+        this.template = new UploadTemplate.Builder()
+                .apiKey("0123456789abcdef0123456789abcdef")
+                .expirationTime(ExpirationTime.fromLong(600))
+                .build();
+        this.imageBase64 = ImageBase64Converters.fromImageFile(BenchmarkImages.write(size, format));
+        this.parameters = new UploadParameters.Builder(template)
+                .imageBase64(imageBase64)
+                .imageName("benchmark")
+                .build();
+    }
+    
+    @Benchmark
+    public UploadParameters withImage() {
+        return template.withImage(imageBase64);
+    }
+    
+    @Benchmark
+    public Map<String, String> toMap() {
+        return parameters.toMap();
+    }
+    
+    @Benchmark
+    public byte[] toEncodedForm() {
+        return parameters.toEncodedForm();
+    }
+    
+}
@@ -0,0 +1,165 @@
+package ru.soknight.imgbb.metrics.micrometer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import ru.soknight.imgbb.metrics.UploadMetrics;
+
+/**
+ * The upload metrics which are recorded to a Micrometer registry.
+ * <p>
+ * The meters are:
+ * <ul>
+ * <li><b>imgbb.upload.phase</b> - timer of the upload phases, tagged by 'phase'
+ * (prepare, permit_wait, request_write, server_wait, parse);</li>
+ * <li><b>imgbb.upload.duration</b> - timer of the whole uploads, tagged by 'outcome' (success, error)
+ * and 'status' (the final status code or 'none' for the exceptions);</li>
+ * <li><b>imgbb.upload.request.size</b>, <b>imgbb.upload.response.size</b> - summaries of the bodies sizes in bytes;</li>
+ * <li><b>imgbb.upload.responses</b> - counter of the received responses including the repeated ones, tagged by 'status';</li>
+ * <li><b>imgbb.upload.failures</b> - counter of the failed attempts, tagged by 'exception';</li>
+ * <li><b>imgbb.upload.retries</b> - counter of the repeated attempts;</li>
+ * <li><b>imgbb.upload.in.flight</b> - gauge of the currently executed uploads.</li>
+ * </ul>
+ * All the meters have the common tags which are received by the constructor, they distinguish the clients.
+ */
+public class MicrometerUploadMetrics implements UploadMetrics {
+
+    private final MeterRegistry registry;
+    private final Tags tags;
+    
+    private final Timer prepareTimer;
+    private final Timer permitWaitTimer;
+    private final Timer requestWriteTimer;
+    private final Timer serverWaitTimer;
+    private final Timer parseTimer;
+    private final DistributionSummary requestSize;
+    private final DistributionSummary responseSize;
+    private final Counter retries;
+    
+    /**
+     * Creates the metrics which record to received registry.
+     * @param registry the registry to record to.
+     * @param tags the common tags of all the meters, e.g. the client name.
+     * 
+     * @throws IllegalArgumentException if received registry is null.
+     */
+    public MicrometerUploadMetrics(MeterRegistry registry, String... tags) {
+        if(registry == null)
+            throw new IllegalArgumentException("Specified registry is null!");
+        
+        this.registry = registry;
+        this.tags = Tags.of(tags);
+        
+        this.prepareTimer = phaseTimer("prepare");
+        this.permitWaitTimer = phaseTimer("permit_wait");
+        this.requestWriteTimer = phaseTimer("request_write");
+        this.serverWaitTimer = phaseTimer("server_wait");
+        this.parseTimer = phaseTimer("parse");
+        
+        this.requestSize = DistributionSummary.builder("imgbb.upload.request.size")
+                .description("Upload request body size")
+                .baseUnit("bytes")
+                .tags(this.tags)
+                .register(registry);
+        this.responseSize = DistributionSummary.builder("imgbb.upload.response.size")
+                .description("Upload response body size")
+                .baseUnit("bytes")
+                .tags(this.tags)
+                .register(registry);
+        this.retries = Counter.builder("imgbb.upload.retries")
+                .description("Repeated upload attempts")
+                .tags(this.tags)
+                .register(registry);
+    }
+    
+    private Timer phaseTimer(String phase) {
+        return Timer.builder("imgbb.upload.phase")
+                .description("Upload phase duration")
+                .tags(tags)
+                .tag("phase", phase)
+                .register(registry);
+    }
+    
+    @Override
+    public void bindInFlightUploads(IntSupplier inFlightUploads) {
+        Gauge.builder("imgbb.upload.in.flight", inFlightUploads, IntSupplier::getAsInt)
+                .description("Currently executed uploads")
+                .tags(tags)
+                .register(registry);
+    }
+    
+    @Override
+    public void requestPrepared(long nanos) {
+        prepareTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    @Override
+    public void permitWaited(long nanos) {
+        permitWaitTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    @Override
+    public void requestWritten(long nanos, long bytes) {
+        requestWriteTimer.record(nanos, TimeUnit.NANOSECONDS);
+        requestSize.record(bytes);
+    }
+    
+    @Override
+    public void responseReceived(long nanos, int statusCode) {
+        serverWaitTimer.record(nanos, TimeUnit.NANOSECONDS);
+        Counter.builder("imgbb.upload.responses")
+                .description("Received upload responses")
+                .tags(tags)
+                .tag("status", String.valueOf(statusCode))
+                .register(registry)
+                .increment();
+    }
+    
+    @Override
+    public void requestFailed(Throwable error) {
+        Counter.builder("imgbb.upload.failures")
+                .description("Failed upload attempts")
+                .tags(tags)
+                .tag("exception", error.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+    
+    @Override
+    public void uploadRetried(int attempt, long delayMillis) {
+        retries.increment();
+    }
+    
+    @Override
+    public void responseParsed(long nanos, long bytes) {
+        parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+        responseSize.record(bytes);
+    }
+    
+    @Override
+    public void uploadFinished(int statusCode, int attempts, long nanos) {
+        recordUpload(statusCode == 200 ? "success" : "error", String.valueOf(statusCode), nanos);
+    }
+    
+    @Override
+    public void uploadFailed(Throwable error, int attempts, long nanos) {
+        recordUpload("error", "none", nanos);
+    }
+    
+    private void recordUpload(String outcome, String status, long nanos) {
+        Timer.builder("imgbb.upload.duration")
+                .description("Whole upload duration including retries")
+                .tags(tags)
+                .tag("outcome", outcome)
+                .tag("status", status)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+}
@@ -0,0 +1,87 @@
+package ru.soknight.imgbb;
+
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.soknight.imgbb.multipart.MultipartBodyPublisher;
+
+/*
+ * A request body which emits read-only slices of the buffer without copying.
+ * 
+ * Each subscription reads its own view of the buffer, so the body may be sent again.
+ */
+final class BufferBodyPublisher implements BodyPublisher {
+    
+    private final ByteBuffer buffer;
+    
+    BufferBodyPublisher(ByteBuffer buffer) {
+        this.buffer = buffer.asReadOnlyBuffer();
+    }
+    
+    @Override
+    public long contentLength() {
+        return buffer.remaining();
+    }
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new SliceSubscription(subscriber, buffer.duplicate()));
+    }
+    
+    private static final class SliceSubscription implements Flow.Subscription {
+        
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final ByteBuffer remaining;
+        private final AtomicLong demand;
+        private final AtomicInteger drains;
+        private volatile boolean cancelled;
+        
+        private SliceSubscription(Flow.Subscriber<? super ByteBuffer> subscriber, ByteBuffer remaining) {
+            this.subscriber = subscriber;
+            this.remaining = remaining;
+            this.demand = new AtomicLong();
+            this.drains = new AtomicInteger();
+        }
+        
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("Requested items amount must be positive!"));
+                return;
+            }
+            
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+        
+        private void drain() {
+            if(drains.getAndIncrement() != 0)
+                return;
+            
+            do {
+                while(!cancelled && demand.get() > 0 && remaining.hasRemaining()) {
+                    ByteBuffer slice = MultipartBodyPublisher.nextSlice(remaining);
+                    demand.decrementAndGet();
+                    subscriber.onNext(slice);
+                }
+                
+                if(!cancelled && !remaining.hasRemaining()) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                    return;
+                }
+            } while(drains.decrementAndGet() != 0);
+        }
+        
+    }
+    
+}
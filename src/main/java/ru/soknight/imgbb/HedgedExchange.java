@@ -0,0 +1,132 @@
+package ru.soknight.imgbb;
+
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+ * A race of the same request sent several times: the first successful response wins.
+ * 
+ * The failed responses and exceptions are kept until the last request is completed,
+ * then the latest one is the result. The losers are cancelled, their failed responses
+ * which were received anyway are discarded to free the connections. The successful ones
+ * have uploaded the duplicated image, so they're passed to the duplicates handler.
+ */
+final class HedgedExchange {
+
+    private final CompletableFuture<HttpResponse<InputStream>> result;
+    private final List<CompletableFuture<HttpResponse<InputStream>>> exchanges;
+    private final Consumer<HttpResponse<InputStream>> duplicates;
+    private int pending;
+    private HttpResponse<InputStream> fallbackResponse;
+    private Throwable fallbackError;
+    
+    HedgedExchange(CompletableFuture<HttpResponse<InputStream>> primary, Consumer<HttpResponse<InputStream>> duplicates) {
+        this.result = new CompletableFuture<>();
+        this.exchanges = new ArrayList<>();
+        this.duplicates = duplicates;
+        this.pending = 1;
+        
+        result.whenComplete((response, throwable) -> {
+            if(result.isCancelled())
+                cancelLosers(null);
+        });
+        attach(primary);
+    }
+    
+    CompletableFuture<HttpResponse<InputStream>> result() {
+        return result;
+    }
+    
+    // the sender returns null when there is no free slot for the additional request
+    void hedge(Supplier<CompletableFuture<HttpResponse<InputStream>>> sender) {
+        synchronized (this) {
+            if(result.isDone())
+                return;
+            
+            pending++;
+        }
+        
+        CompletableFuture<HttpResponse<InputStream>> exchange;
+        try {
+            exchange = sender.get();
+        } catch (RuntimeException ex) {
+            exchange = null;
+        }
+        
+        if(exchange != null)
+            attach(exchange);
+        else
+            settle(null, null, null);
+    }
+    
+    private void attach(CompletableFuture<HttpResponse<InputStream>> exchange) {
+        synchronized (this) {
+            exchanges.add(exchange);
+        }
+        exchange.whenComplete((response, throwable) -> settle(exchange, response, throwable));
+    }
+    
+    private void settle(CompletableFuture<HttpResponse<InputStream>> exchange, HttpResponse<InputStream> response, Throwable throwable) {
+        HttpResponse<InputStream> discarded = null;
+        HttpResponse<InputStream> duplicate = null;
+        HttpResponse<InputStream> winnerResponse = null;
+        Throwable winnerError = null;
+        boolean finished = false;
+        
+        synchronized (this) {
+            pending--;
+            boolean success = response != null && response.statusCode() == 200;
+            if(result.isDone()) {
+                if(success)
+                    duplicate = response;
+                else
+                    discarded = response;
+            } else if(success) {
+                winnerResponse = response;
+                finished = true;
+            } else {
+                if(exchange != null) {
+                    discarded = fallbackResponse;
+                    this.fallbackResponse = response;
+                    this.fallbackError = throwable;
+                }
+                
+                if(pending == 0) {
+                    winnerResponse = fallbackResponse;
+                    winnerError = fallbackError;
+                    finished = true;
+                }
+            }
+        }
+        
+        ImgbbUploadClient.discardResponse(discarded);
+        if(duplicate != null)
+            duplicates.accept(duplicate);
+        
+        if(!finished)
+            return;
+        
+        boolean completed = winnerError != null ? result.completeExceptionally(winnerError) : result.complete(winnerResponse);
+        if(!completed)
+            ImgbbUploadClient.discardResponse(winnerResponse);
+        
+        cancelLosers(exchange);
+    }
+    
+    private void cancelLosers(CompletableFuture<HttpResponse<InputStream>> winner) {
+        List<CompletableFuture<HttpResponse<InputStream>>> losers;
+        synchronized (this) {
+            losers = new ArrayList<>(exchanges);
+        }
+        
+        for(CompletableFuture<HttpResponse<InputStream>> loser : losers)
+            if(loser != winner)
+                loser.cancel(true);
+    }
+    
+}
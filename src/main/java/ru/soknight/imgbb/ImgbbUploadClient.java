@@ -1,45 +1,997 @@
 package ru.soknight.imgbb;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-import org.jsoup.Connection.Method;
-import org.jsoup.Connection.Response;
-import org.jsoup.Jsoup;
-
+import ru.soknight.imgbb.hedge.DuplicateListener;
+import ru.soknight.imgbb.hedge.HedgingPolicy;
+import ru.soknight.imgbb.hedge.LatencyHistogram;
+import ru.soknight.imgbb.keypool.ApiKeyPool;
+import ru.soknight.imgbb.memory.BufferPool;
+import ru.soknight.imgbb.memory.MemoryBudget;
+import ru.soknight.imgbb.metrics.UploadMetrics;
+import ru.soknight.imgbb.multipart.MultipartBodyPublisher;
 import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.preprocess.ImagePreprocessor;
+import ru.soknight.imgbb.progress.TransferAbortedException;
+import ru.soknight.imgbb.progress.TransferListener;
+import ru.soknight.imgbb.ratelimit.RateLimiter;
 import ru.soknight.imgbb.response.OptionalResponse;
+import ru.soknight.imgbb.retry.RetryPolicy;
+import ru.soknight.imgbb.source.ImageSource;
 
 /*
- * Simple client implementation to do uploading image using the Jsoup framework.
+ * Simple client implementation to do uploading image using the JDK HTTP client.
+ * 
+ * An instance keeps its own HTTP client, so the keep-alive connections (HTTP/1.1) or
+ * the multiplexed connection (HTTP/2) are reused between uploads instead of doing
+ * a new TLS handshake per each upload.
+ * 
+ * Uploads may be done asynchronously, then the calling thread isn't blocked at all and
+ * the response is handled by the client executor (virtual threads on JDK 21+ by default).
  */
 public class ImgbbUploadClient {
 
     private static final String API_URL = "https://api.imgbb.com/1/upload";
     private static final String USER_AGENT = "Imgbb Java SDK";
     private static final int TIMEOUT = 5000;
+    private static final int MAX_CONNECTIONS = 16;
+    
+    private final HttpClient httpClient;
+    private final URI apiUri;
+    private final String userAgent;
+    private final Duration readTimeout;
+    private final InFlightLimiter limiter;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final boolean retainRawResponse;
+    private final Executor responseExecutor;
+    private final UploadMetrics metrics;
+    private final ImagePreprocessor preprocessor;
+    private final ApiKeyPool apiKeyPool;
+    private final HedgingPolicy hedgingPolicy;
+    private final LatencyHistogram latencies;
+    private final MemoryBudget memoryBudget;
+    private final BufferPool bufferPool;
+    private final TransferMonitor transferMonitor;
+    
+    private ImgbbUploadClient(Builder builder) {
+        this.httpClient = builder.httpClient != null ? builder.httpClient : createHttpClient(builder);
+        this.apiUri = URI.create(builder.apiUrl);
+        this.userAgent = builder.userAgent;
+        this.readTimeout = Duration.ofMillis(builder.readTimeout);
+        this.limiter = new InFlightLimiter(builder.maxConnections);
+        this.retryPolicy = builder.retryPolicy;
+        this.rateLimiter = builder.rateLimiter;
+        this.retainRawResponse = builder.retainRawResponse;
+        this.responseExecutor = httpClient.executor().orElse(ForkJoinPool.commonPool());
+        this.metrics = builder.metrics;
+        this.preprocessor = builder.preprocessor;
+        this.apiKeyPool = builder.apiKeyPool;
+        this.hedgingPolicy = builder.hedgingPolicy;
+        this.latencies = hedgingPolicy != null ? hedgingPolicy.newHistogram() : null;
+        this.memoryBudget = builder.memoryBudget;
+        this.bufferPool = builder.bufferPool;
+        this.transferMonitor = builder.transferListener != null || builder.minThroughput > 0
+                ? new TransferMonitor(builder.transferListener, builder.progressInterval, builder.minThroughput, builder.throughputWindow)
+                : null;
+        
+        metrics.bindInFlightUploads(limiter::getInFlight);
+    }
+    
+    private static HttpClient createHttpClient(Builder builder) {
+        HttpClient.Builder httpClientBuilder = HttpClient.newBuilder()
+                .version(builder.httpVersion)
+                .connectTimeout(Duration.ofMillis(builder.connectTimeout))
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        
+        Executor executor = builder.executor != null ? builder.executor : VirtualThreads.newPerTaskExecutor();
+        if(executor != null)
+            httpClientBuilder.executor(executor);
+        
+        return httpClientBuilder.build();
+    }
     
     /**
-     * Uploads an image using received {@link UploadParameters} instance.
+     * Returns the shared client instance with default settings.
+     * <p>
+     * It's created lazily on the first call and used by the static {@link ImgbbUploadClient#upload(UploadParameters)}.
+     * @return The default client instance.
+     */
+    public static ImgbbUploadClient getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+    
+    /**
+     * Uploads an image using received {@link UploadParameters} instance and the default client.
      * @param parameters a parameters to do image uploading.
      * @return The {@link OptionalResponse} instance as response of uploading operation.
      * 
      * @throws RuntimeException when anyone I/O exception catches.
+     * @see ImgbbUploadClient#uploadImage(UploadParameters)
      */
     public static OptionalResponse upload(UploadParameters parameters) {
+        return getDefault().uploadImage(parameters);
+    }
+    
+    /**
+     * Uploads an image using received {@link UploadParameters} instance.
+     * <p>
+     * The calling thread waits for the memory budget, for a free connection slot when the connections limit
+     * is reached and for the rate limiter permit, failed attempts are repeated according to the retry policy.
+     * @param parameters a parameters to do image uploading.
+     * @return The {@link OptionalResponse} instance as response of uploading operation.
+     * 
+     * @throws RuntimeException when anyone I/O exception catches.
+     * @throws RuntimeException when the calling thread was interrupted.
+     */
+    public OptionalResponse uploadImage(UploadParameters parameters) {
+        UploadTrace trace = UploadTrace.start(metrics);
+        UploadMemory memory = new UploadMemory(memoryBudget, bufferPool);
+        boolean completed = false;
+        try {
+            memory.reserveBlocking(estimateMemory(parameters));
+            OptionalResponse response = uploadImage(parameters, trace, memory);
+            completed = true;
+            return response;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            RuntimeException error = new RuntimeException("Thread was interrupted while try to upload image!", ex);
+            trace.finished(error);
+            throw error;
+        } finally {
+            memory.release(completed && hedgingPolicy == null);
+        }
+    }
+    
+    private OptionalResponse uploadImage(UploadParameters parameters, UploadTrace trace, UploadMemory memory) {
+        HttpRequest request = createRequest(parameters, trace, memory);
+        boolean replayable = isReplayable(parameters);
+        boolean pooled = isPooled(parameters);
+        trace.prepared();
+        
+        try {
+            for(int attempt = 1; ; attempt++) {
+                trace.waiting();
+                ApiKeyPool.Lease lease = pooled ? apiKeyPool.lease() : null;
+                HttpResponse<InputStream> response = null;
+                IOException failure = null;
+                
+                try {
+                    if(lease != null && lease.getDelay() > 0)
+                        TimeUnit.NANOSECONDS.sleep(lease.getDelay());
+                    
+                    if(rateLimiter != null)
+                        rateLimiter.acquire();
+                    
+                    limiter.acquireBlocking();
+                    trace.sending();
+                    try {
+                        // the permit is released by the exchange itself
+                        response = await(exchange(parameters, request, lease, replayable, pooled));
+                        trace.received(response);
+                    } catch (IOException ex) {
+                        failure = ex;
+                        trace.failed(ex);
+                    }
+                } finally {
+                    releaseLease(lease, response);
+                }
+                
+                long delay = getRetryDelay(attempt, replayable, response, failure);
+                if(delay < 0) {
+                    if(failure != null) {
+                        RuntimeException error = new RuntimeException("I/O exception was catched while try to upload image!", failure);
+                        trace.finished(error);
+                        throw error;
+                    }
+                    
+                    return readResponse(response, trace);
+                }
+                
+                trace.retrying(attempt, delay);
+                discardResponse(response);
+                Thread.sleep(delay);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            RuntimeException error = new RuntimeException("Thread was interrupted while try to upload image!", ex);
+            trace.finished(error);
+            throw error;
+        }
+    }
+    
+    /**
+     * Uploads an image asynchronously using received {@link UploadParameters} instance.
+     * <p>
+     * The calling thread isn't blocked, the upload waits for a free slot when the in-flight limit
+     * is reached and then it's executed by the client executor. Failed attempts are repeated
+     * according to the retry policy after a delay, no thread is blocked while waiting as well.
+     * <p>
+     * Cancellation of the returned future cancels the upload: the next attempts aren't executed
+     * and the request in flight is aborted (since Java 16, older HTTP clients complete it in the background).
+     * @param parameters a parameters to do image uploading.
+     * @return The future which will be completed by the {@link OptionalResponse} instance
+     * or exceptionally by {@link RuntimeException} when anyone I/O exception catches.
+     */
+    public CompletableFuture<OptionalResponse> uploadAsync(UploadParameters parameters) {
+        UploadTrace trace = UploadTrace.start(metrics);
+        boolean replayable = isReplayable(parameters);
+        boolean pooled = isPooled(parameters);
+        UploadCancellation cancellation = new UploadCancellation();
+        UploadMemory memory = new UploadMemory(memoryBudget, bufferPool);
+        
+        CompletableFuture<Void> reserved;
+        try {
+            reserved = memory.reserve(estimateMemory(parameters));
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        
+        CompletableFuture<OptionalResponse> result = reserved.thenCompose(ignored -> {
+            // the caller isn't waiting for this upload anymore
+            if(cancellation.isCancelled())
+                return CompletableFuture.failedFuture(new CancellationException());
+            
+            if(preprocessor != null && parameters.isStreamed()) {
+                // the image is decoded and written again, so it's done by the client executor
+                return CompletableFuture.supplyAsync(() -> createRequest(parameters, trace, memory), responseExecutor)
+                        .thenCompose(request -> uploadAsync(parameters, request, replayable, pooled, trace, cancellation));
+            }
+            
+            return uploadAsync(parameters, createRequest(parameters, trace, memory), replayable, pooled, trace, cancellation);
+        });
+        
+        result.whenComplete((response, throwable) -> {
+            if(result.isCancelled())
+                cancellation.cancel();
+            
+            memory.release(throwable == null && hedgingPolicy == null);
+        });
+        return result;
+    }
+    
+    /**
+     * Returns the amount of currently executed uploads (synchronous and asynchronous).
+     * @return Current in-flight uploads amount.
+     */
+    public int getInFlightUploads() {
+        return limiter.getInFlight();
+    }
+    
+    /**
+     * Checks if the client has a pool of API keys, so the parameters may be built without API key.
+     * @return 'true' if the client has a key pool or 'false' otherwise.
+     */
+    public boolean hasApiKeyPool() {
+        return apiKeyPool != null;
+    }
+    
+    private CompletableFuture<OptionalResponse> uploadAsync(
+            UploadParameters parameters,
+            HttpRequest request,
+            boolean replayable,
+            boolean pooled,
+            UploadTrace trace,
+            UploadCancellation cancellation
+    ) {
+        trace.prepared();
+        return attemptAsync(parameters, request, replayable, pooled, 1, trace, cancellation)
+                .thenApplyAsync(response -> readResponse(response, trace), responseExecutor);
+    }
+    
+    private CompletableFuture<HttpResponse<InputStream>> attemptAsync(
+            UploadParameters parameters,
+            HttpRequest request,
+            boolean replayable,
+            boolean pooled,
+            int attempt,
+            UploadTrace trace,
+            UploadCancellation cancellation
+    ) {
+        trace.waiting();
+        ApiKeyPool.Lease lease = pooled ? apiKeyPool.lease() : null;
+        return delay(lease != null ? lease.getDelay() : 0L)
+                .thenCompose(ignored -> throttle())
+                .thenCompose(ignored -> limiter.acquire())
+                .thenCompose(ignored -> {
+                    trace.sending();
+                    CompletableFuture<HttpResponse<InputStream>> exchange = exchange(parameters, request, lease, replayable, pooled);
+                    cancellation.attach(exchange);
+                    return exchange;
+                })
+                .handle((response, throwable) -> {
+                    releaseLease(lease, response);
+                    Throwable failure = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause()
+                            : throwable;
+                    
+                    if(failure == null)
+                        trace.received(response);
+                    else
+                        trace.failed(failure);
+                    
+                    long delay = cancellation.isCancelled() ? -1L : getRetryDelay(attempt, replayable, response, failure);
+                    if(delay < 0) {
+                        if(failure == null)
+                            return CompletableFuture.completedFuture(response);
+                        
+                        if(failure instanceof IOException)
+                            failure = new RuntimeException("I/O exception was catched while try to upload image!", failure);
+                        
+                        trace.finished(failure);
+                        return CompletableFuture.<HttpResponse<InputStream>>failedFuture(failure);
+                    }
+                    
+                    trace.retrying(attempt, delay);
+                    discardResponse(response);
+                    Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS);
+                    return CompletableFuture.runAsync(() -> {}, delayed)
+                            .thenCompose(ignored -> attemptAsync(parameters, request, replayable, pooled, attempt + 1, trace, cancellation));
+                })
+                .thenCompose(Function.identity());
+    }
+    
+    private CompletableFuture<Void> throttle() {
+        return delay(rateLimiter != null ? rateLimiter.reserve() : 0L);
+    }
+    
+    private static CompletableFuture<Void> delay(long delay) {
+        if(delay <= 0)
+            return CompletableFuture.completedFuture(null);
+        
+        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS));
+    }
+    
+    private CompletableFuture<HttpResponse<InputStream>> exchange(
+            UploadParameters parameters,
+            HttpRequest request,
+            ApiKeyPool.Lease lease,
+            boolean replayable,
+            boolean pooled
+    ) {
+        CompletableFuture<HttpResponse<InputStream>> primary = sendAsync(forAttempt(request, lease));
+        long hedgeDelay = hedgingPolicy != null && replayable ? hedgingPolicy.getHedgeDelay(latencies) : -1L;
+        if(hedgeDelay < 0)
+            return primary;
+        
+        HedgedExchange hedged = new HedgedExchange(primary, response -> handleDuplicate(parameters, response));
+        for(int hedge = 1; hedge <= hedgingPolicy.getMaxHedges(); hedge++) {
+            Executor delayed = CompletableFuture.delayedExecutor(hedgeDelay * hedge, TimeUnit.MILLISECONDS);
+            delayed.execute(() -> hedged.hedge(() -> trySendHedge(request, pooled)));
+        }
+        return hedged.result();
+    }
+    
+    private CompletableFuture<HttpResponse<InputStream>> trySendHedge(HttpRequest request, boolean pooled) {
+        // the hedges mustn't wait for the limits, they're sent only when there is a free slot right now
+        if(!limiter.tryAcquire())
+            return null;
+        
+        if(rateLimiter != null && !rateLimiter.tryAcquire()) {
+            limiter.release();
+            return null;
+        }
+        
+        // the pooled hedge leases its own key, so it's counted by the key limits and backoff
+        ApiKeyPool.Lease lease = pooled ? apiKeyPool.tryLease() : null;
+        if(pooled && lease == null) {
+            limiter.release();
+            return null;
+        }
+        
+        CompletableFuture<HttpResponse<InputStream>> exchange;
+        try {
+            exchange = sendAsync(forAttempt(request, lease));
+        } catch (RuntimeException ex) {
+            releaseLease(lease, null);
+            throw ex;
+        }
+        
+        exchange.whenComplete((response, throwable) -> releaseLease(lease, response));
+        return exchange;
+    }
+    
+    private void handleDuplicate(UploadParameters parameters, HttpResponse<InputStream> response) {
+        DuplicateListener listener = hedgingPolicy.getDuplicateListener();
+        if(listener == null) {
+            discardResponse(response);
+            return;
+        }
+        
+        // the response is read by the client executor, since the exchange is completed by the HTTP client thread
+        responseExecutor.execute(() -> {
+            try(InputStream body = response.body()) {
+                listener.duplicated(parameters, OptionalResponse.of(response.statusCode(), body, retainRawResponse));
+            } catch (IOException | RuntimeException ignored) {
+                // the broken listener or response mustn't fail the upload
+            }
+        });
+    }
+    
+    private static HttpResponse<InputStream> await(CompletableFuture<HttpResponse<InputStream>> exchange) throws IOException, InterruptedException {
+        try {
+            return exchange.get();
+        } catch (InterruptedException ex) {
+            exchange.cancel(true);
+            throw ex;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof IOException)
+                throw (IOException) cause;
+            
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            
+            throw new IOException(cause);
+        }
+    }
+    
+    private CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request) {
+        TransferMonitor.AbortHandle abortHandle = transferMonitor != null ? new TransferMonitor.AbortHandle() : null;
+        CompletableFuture<HttpResponse<InputStream>> future;
+        long startedAt = System.nanoTime();
         try {
-            Response response = Jsoup.connect(API_URL)
-                    .ignoreContentType(true)
-                    .ignoreHttpErrors(true)
-                    .method(Method.POST)
-                    .data(parameters.toMap())
-                    .timeout(TIMEOUT)
-                    .userAgent(USER_AGENT)
-                    .execute();
-            
-            return OptionalResponse.of(response);
+            HttpRequest sent = abortHandle != null ? TransferMonitor.bind(request, abortHandle) : request;
+            future = httpClient.sendAsync(sent, BodyHandlers.ofInputStream());
+        } catch (RuntimeException ex) {
+            limiter.release();
+            throw ex;
+        }
+        
+        if(abortHandle != null)
+            abortHandle.attach(future);
+        
+        CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+        future.whenComplete((response, throwable) -> {
+            limiter.release();
+            // the failed exchanges are recorded as well, only the cancelled ones say nothing about the latency
+            if(latencies != null && !future.isCancelled())
+                latencies.record(System.nanoTime() - startedAt);
+            
+            // the aborted transfer cancels the exchange, but the abort reason is reported instead
+            TransferAbortedException abortError = abortHandle != null ? abortHandle.getError() : null;
+            if(throwable != null)
+                result.completeExceptionally(abortError != null ? abortError : throwable);
+            else
+                result.complete(response);
+        });
+        
+        // the dependent future doesn't cancel the exchange by itself
+        result.whenComplete((response, throwable) -> {
+            if(result.isCancelled())
+                future.cancel(true);
+        });
+        return result;
+    }
+    
+    private OptionalResponse readResponse(HttpResponse<InputStream> response, UploadTrace trace) {
+        try(InputStream body = trace.meter(response.body())) {
+            OptionalResponse result = OptionalResponse.of(response.statusCode(), body, retainRawResponse);
+            trace.finished(result);
+            return result;
+        } catch (IOException ex) {
+            RuntimeException error = new RuntimeException("I/O exception was catched while try to read upload response!", ex);
+            trace.finished(error);
+            throw error;
+        }
+    }
+    
+    static void discardResponse(HttpResponse<InputStream> response) {
+        if(response == null)
+            return;
+        
+        // the body is read till the end to keep the connection alive
+        try(InputStream body = response.body()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException ignored) {
+        }
+    }
+    
+    private long getRetryDelay(int attempt, boolean replayable, HttpResponse<?> response, Throwable failure) {
+        if(!replayable || isCancelledTransfer(failure))
+            return -1L;
+        
+        if(failure != null)
+            return retryPolicy.getRetryDelay(attempt, failure);
+        
+        int status = response.statusCode();
+        if(status == 200)
+            return -1L;
+        
+        return retryPolicy.getRetryDelay(attempt, status, response.headers().firstValue("Retry-After").orElse(null));
+    }
+    
+    private static boolean isCancelledTransfer(Throwable failure) {
+        // the HTTP client may wrap the body error
+        for(Throwable cause = failure; cause != null; cause = cause.getCause())
+            if(cause instanceof TransferAbortedException)
+                return ((TransferAbortedException) cause).isCancelled();
+        
+        return false;
+    }
+    
+    private HttpRequest forAttempt(HttpRequest request, ApiKeyPool.Lease lease) {
+        Duration timeout = hedgingPolicy != null
+                ? Duration.ofMillis(hedgingPolicy.getTimeout(latencies, readTimeout.toMillis()))
+                : readTimeout;
+        
+        if(lease == null && timeout.equals(readTimeout))
+            return request;
+        
+        // the key is passed as a query parameter, so the same body is sent with any key
+        URI uri = apiUri;
+        if(lease != null) {
+            String separator = apiUri.getRawQuery() != null ? "&" : "?";
+            uri = URI.create(apiUri + separator + "key=" + URLEncoder.encode(lease.getApiKey(), StandardCharsets.UTF_8));
+        }
+        
+        return HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("User-Agent", userAgent)
+                .header("Content-Type", request.headers().firstValue("Content-Type").orElseThrow())
+                .POST(request.bodyPublisher().orElseThrow())
+                .build();
+    }
+    
+    private static void releaseLease(ApiKeyPool.Lease lease, HttpResponse<?> response) {
+        if(lease == null)
+            return;
+        
+        if(response != null)
+            lease.release(response.statusCode(), response.headers().firstValue("Retry-After").orElse(null));
+        else
+            lease.cancel();
+    }
+    
+    private long estimateMemory(UploadParameters parameters) {
+        if(memoryBudget == null)
+            return 0L;
+        
+        if(!parameters.isStreamed())
+            return parameters.getEncodedFormLength();
+        
+        // the preprocessed image is kept in memory, otherwise only the chunks in flight are
+        long imageLength = parameters.getImageSource().getContentLength();
+        if(preprocessor != null)
+            return Math.max(imageLength, MultipartBodyPublisher.CHUNK_SIZE);
+        
+        return MultipartBodyPublisher.CHUNK_SIZE;
+    }
+    
+    private HttpRequest createRequest(UploadParameters parameters, UploadTrace trace, UploadMemory memory) {
+        if(parameters.getApiKey() == null && apiKeyPool == null)
+            throw new IllegalArgumentException("The required API key parameter is invalid!");
+        
+        HttpRequest.Builder builder = HttpRequest.newBuilder(apiUri)
+                .timeout(readTimeout)
+                .header("User-Agent", userAgent);
+        
+        if(parameters.isStreamed()) {
+            MultipartBodyPublisher body = new MultipartBodyPublisher(parameters.toMap(), preprocess(parameters.getImageSource()));
+            builder.header("Content-Type", body.getContentType()).POST(monitor(parameters, trace.meter(body)));
+        } else if(memory.isPooled()) {
+            ByteBuffer body = memory.allocate(parameters.getEncodedFormLength());
+            parameters.writeEncodedForm(body);
+            builder.header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(monitor(parameters, trace.meter(new BufferBodyPublisher(body.flip()))));
+        } else {
+            builder.header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(monitor(parameters, trace.meter(BodyPublishers.ofByteArray(parameters.toEncodedForm()))));
+        }
+        
+        return builder.build();
+    }
+    
+    private BodyPublisher monitor(UploadParameters parameters, BodyPublisher body) {
+        return transferMonitor != null ? transferMonitor.monitor(parameters, body) : body;
+    }
+    
+    private ImageSource preprocess(ImageSource imageSource) {
+        if(preprocessor == null)
+            return imageSource;
+        
+        try {
+            return preprocessor.process(imageSource);
         } catch (IOException ex) {
-            throw new RuntimeException("I/O exception was catched while try to upload image!", ex);
+            throw new RuntimeException("I/O exception was catched while try to preprocess image!", ex);
+        }
+    }
+    
+    private boolean isPooled(UploadParameters parameters) {
+        // the own key of the parameters has priority over the pool
+        return apiKeyPool != null && parameters.getApiKey() == null;
+    }
+    
+    private boolean isReplayable(UploadParameters parameters) {
+        // the preprocessed image is kept in memory, so it may be sent again
+        return parameters.isReplayable() || preprocessor != null && parameters.isStreamed();
+    }
+    
+    private static final class DefaultHolder {
+        
+        private static final ImgbbUploadClient INSTANCE = new Builder().build();
+        
+    }
+    
+    /**
+     * A builder for the {@link ImgbbUploadClient}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private String apiUrl = API_URL;
+        private String userAgent = USER_AGENT;
+        private int connectTimeout = TIMEOUT;
+        private int readTimeout = TIMEOUT;
+        private int maxConnections = MAX_CONNECTIONS;
+        private HttpClient.Version httpVersion = HttpClient.Version.HTTP_2;
+        private Executor executor;
+        private HttpClient httpClient;
+        private RetryPolicy retryPolicy = RetryPolicy.disabled();
+        private RateLimiter rateLimiter;
+        private boolean retainRawResponse;
+        private UploadMetrics metrics = UploadMetrics.noop();
+        private ImagePreprocessor preprocessor;
+        private ApiKeyPool apiKeyPool;
+        private HedgingPolicy hedgingPolicy;
+        private MemoryBudget memoryBudget;
+        private BufferPool bufferPool;
+        private TransferListener transferListener;
+        private long progressInterval = 1000L;
+        private long minThroughput;
+        private long throughputWindow = 10_000L;
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the upload API URL, the default is '{@value ImgbbUploadClient#API_URL}'.
+         * @param value the upload API URL.
+         * @return Current builder instance.
+         */
+        public Builder apiUrl(String value) {
+            if(value == null || value.isEmpty())
+                throw new IllegalArgumentException("The API URL cannot be null or empty!");
+            
+            this.apiUrl = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the 'User-Agent' header value, the default is '{@value ImgbbUploadClient#USER_AGENT}'.
+         * @param value the user agent to set.
+         * @return Current builder instance.
+         */
+        public Builder userAgent(String value) {
+            if(value == null || value.isEmpty())
+                throw new IllegalArgumentException("The user agent cannot be null or empty!");
+            
+            this.userAgent = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the connection establishing timeout <b>in milliseconds</b>, the default is {@value ImgbbUploadClient#TIMEOUT}.
+         * @param value the connect timeout to set.
+         * @return Current builder instance.
+         */
+        public Builder connectTimeout(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The connect timeout must be positive!");
+            
+            this.connectTimeout = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the response waiting timeout <b>in milliseconds</b>, the default is {@value ImgbbUploadClient#TIMEOUT}.
+         * @param value the read timeout to set.
+         * @return Current builder instance.
+         */
+        public Builder readTimeout(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The read timeout must be positive!");
+            
+            this.readTimeout = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of simultaneously used connections, the default is {@value ImgbbUploadClient#MAX_CONNECTIONS}.
+         * <p>
+         * Idle keep-alive connections are reused, so it also bounds the connections pool size.
+         * It's the in-flight limit for asynchronous uploads as well, the rest of them are queued.
+         * @param value the connections limit to set.
+         * @return Current builder instance.
+         */
+        public Builder maxConnections(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The connections limit must be positive!");
+            
+            this.maxConnections = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the preferred HTTP protocol version, the default is HTTP/2 with fallback to HTTP/1.1.
+         * @param value the HTTP version to prefer.
+         * @return Current builder instance.
+         */
+        public Builder httpVersion(HttpClient.Version value) {
+            if(value == null)
+                throw new IllegalArgumentException("The HTTP version cannot be null!");
+            
+            this.httpVersion = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the executor for asynchronous tasks of the HTTP client.
+         * <p>
+         * The virtual threads executor is used by default on JDK 21+, or the HTTP client default one otherwise.
+         * @param value the executor to use.
+         * @return Current builder instance.
+         */
+        public Builder executor(Executor value) {
+            this.executor = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the preconfigured HTTP client to use instead of creating a new one.
+         * <p>
+         * The connect timeout, the HTTP version and the executor settings are ignored in this case.
+         * @param value the HTTP client to use.
+         * @return Current builder instance.
+         */
+        public Builder httpClient(HttpClient value) {
+            this.httpClient = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the policy of repeating failed uploads, the default makes the only attempt.
+         * <p>
+         * Uploads of the images from an input stream are never repeated.
+         * @param value the retry policy to use.
+         * @return Current builder instance.
+         */
+        public Builder retryPolicy(RetryPolicy value) {
+            if(value == null)
+                throw new IllegalArgumentException("The retry policy cannot be null!");
+            
+            this.retryPolicy = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the client-wide requests rate limiter, each attempt takes one permit. The rate isn't limited by default.
+         * @param value the rate limiter to use, may be shared by many clients.
+         * @return Current builder instance.
+         */
+        public Builder rateLimiter(RateLimiter value) {
+            this.rateLimiter = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets whether the raw response of successful upload is retained as string, the default is 'false'.
+         * <p>
+         * Otherwise the response is parsed right from the stream without buffering.
+         * @param value 'true' to retain the raw response.
+         * @return Current builder instance.
+         * 
+         * @see OptionalResponse#getRaw()
+         */
+        public Builder retainRawResponse(boolean value) {
+            this.retainRawResponse = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the instrumentation hook to report the upload phases timings, sizes and outcomes to.
+         * Nothing is measured by default.
+         * @param value the metrics to use.
+         * @return Current builder instance.
+         * 
+         * @see UploadMetrics#noop()
+         */
+        public Builder metrics(UploadMetrics value) {
+            if(value == null)
+                throw new IllegalArgumentException("The metrics cannot be null!");
+            
+            this.metrics = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the preprocessor to downscale and recompress the images before uploading. Images aren't processed by default.
+         * <p>
+         * Only the images from an {@link ImageSource} are processed, the base64 encoded images are sent as is.
+         * The asynchronous uploads are processed by the client executor.
+         * @param value the preprocessor to use.
+         * @return Current builder instance.
+         */
+        public Builder preprocessor(ImagePreprocessor value) {
+            this.preprocessor = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the pool of API keys to spread the uploads over them. There is no pool by default.
+         * <p>
+         * The parameters without API key are uploaded with the keys from the pool, each attempt leases a key.
+         * The parameters with own API key are uploaded with it as usual.
+         * @param value the key pool to use, may be shared by many clients.
+         * @return Current builder instance.
+         */
+        public Builder apiKeyPool(ApiKeyPool value) {
+            this.apiKeyPool = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the policy of the request hedging and the adaptive timeouts based on the observed latencies.
+         * There is no hedging by default, the request timeout is the read timeout.
+         * <p>
+         * The adaptive timeout never exceeds the read timeout. The additional requests are sent only when
+         * there is a free connection slot and a rate limiter token right now.
+         * @param value the hedging policy to use.
+         * @return Current builder instance.
+         */
+        public Builder hedgingPolicy(HedgingPolicy value) {
+            this.hedgingPolicy = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the memory budget of the upload bodies. There is no budget by default.
+         * <p>
+         * Each upload reserves the size of its body (or of its read window for the streamed images)
+         * before it's prepared, the uploads wait for the memory when the budget is exhausted.
+         * @param value the memory budget to use, may be shared by many clients.
+         * @return Current builder instance.
+         */
+        public Builder memoryBudget(MemoryBudget value) {
+            this.memoryBudget = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the pool of buffers for the form bodies of the base64 encoded images. The bodies are allocated by default.
+         * @param value the buffer pool to use, may be shared by many clients.
+         * @return Current builder instance.
+         */
+        public Builder bufferPool(BufferPool value) {
+            this.bufferPool = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the listener of the request body transfers. There is no listener by default.
+         * <p>
+         * It receives the written bytes and the transfer rate periodically and may cancel a stalled upload.
+         * @param value the transfer listener to use.
+         * @return Current builder instance.
+         */
+        public Builder transferListener(TransferListener value) {
+            this.transferListener = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the interval between the transfer progress reports <b>in milliseconds</b>, the default is 1000.
+         * @param value the progress interval to set.
+         * @return Current builder instance.
+         */
+        public Builder progressInterval(long value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The progress interval must be positive!");
+            
+            this.progressInterval = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the minimal throughput of the request body transfers <b>in bytes per second</b>. It's disabled by default.
+         * <p>
+         * The transfer is aborted as soon as its rate over the throughput window falls below this value,
+         * so the stalled connections are dropped long before the read timeout. The aborted uploads are repeated
+         * as the other I/O failures according to the retry policy.
+         * @param value the minimal throughput to set, 0 to disable it.
+         * @return Current builder instance.
+         */
+        public Builder minThroughput(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The minimal throughput cannot be negative!");
+            
+            this.minThroughput = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the window of the transfer rate measuring <b>in milliseconds</b>, the default is 10000.
+         * <p>
+         * A transfer isn't aborted as a slow one before the first window is passed,
+         * so the short bursts of a congested link don't abort it.
+         * @param value the throughput window to set.
+         * @return Current builder instance.
+         */
+        public Builder throughputWindow(long value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The throughput window must be positive!");
+            
+            this.throughputWindow = value;
+            return this;
+        }
+        
+        /**
+         * Finishes a client building and returns builded client.
+         * @return Builded upload client instance.
+         */
+        public ImgbbUploadClient build() {
+            return new ImgbbUploadClient(this);
         }
+        
     }
     
 }
@@ -0,0 +1,78 @@
+package ru.soknight.imgbb;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/*
+ * A non-blocking limiter of simultaneously executed uploads.
+ * 
+ * Asynchronous uploads wait for a permit as a future without holding a thread,
+ * synchronous uploads just wait for the same future in the calling thread.
+ */
+final class InFlightLimiter {
+
+    private final int limit;
+    private final Queue<CompletableFuture<Void>> waiters;
+    private int inFlight;
+    
+    InFlightLimiter(int limit) {
+        this.limit = limit;
+        this.waiters = new ArrayDeque<>();
+    }
+    
+    CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            if(inFlight < limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+    
+    synchronized boolean tryAcquire() {
+        if(inFlight >= limit)
+            return false;
+        
+        inFlight++;
+        return true;
+    }
+    
+    void acquireBlocking() throws InterruptedException {
+        CompletableFuture<Void> permit = acquire();
+        try {
+            permit.get();
+        } catch (InterruptedException ex) {
+            // the permit may be granted concurrently, so it must be returned back
+            if(!permit.cancel(false))
+                release();
+            throw ex;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+    
+    void release() {
+        CompletableFuture<Void> next;
+        do {
+            synchronized (this) {
+                next = waiters.poll();
+                if(next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            // the permit is passed to the next waiter directly, cancelled waiters are skipped
+        } while(!next.complete(null));
+    }
+    
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+    
+}
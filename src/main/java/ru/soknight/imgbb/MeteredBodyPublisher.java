@@ -0,0 +1,92 @@
+package ru.soknight.imgbb;
+
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * A body publisher which counts the published bytes and remembers when the last one was published.
+ * 
+ * The request is subscribed again by each attempt and by each hedged request of the attempt, since they
+ * share the same body. The counters are kept per subscription and only the first subscription of the attempt
+ * is metered, so the hedged requests don't reset the counters of the request which is reported.
+ */
+final class MeteredBodyPublisher implements BodyPublisher {
+
+    private final BodyPublisher delegate;
+    private final AtomicReference<MeteredSubscriber> metered;
+    
+    MeteredBodyPublisher(BodyPublisher delegate) {
+        this.delegate = delegate;
+        this.metered = new AtomicReference<>();
+    }
+    
+    @Override
+    public long contentLength() {
+        return delegate.contentLength();
+    }
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        MeteredSubscriber meteredSubscriber = new MeteredSubscriber(subscriber);
+        if(metered.compareAndSet(null, meteredSubscriber))
+            delegate.subscribe(meteredSubscriber);
+        else
+            delegate.subscribe(subscriber);
+    }
+    
+    // the next subscription is metered instead of the previous one
+    void startAttempt() {
+        metered.set(null);
+    }
+    
+    long getBytesWritten() {
+        MeteredSubscriber subscriber = metered.get();
+        return subscriber != null ? subscriber.bytesWritten : 0L;
+    }
+    
+    // 0 if the body isn't written completely
+    long getWrittenAt() {
+        MeteredSubscriber subscriber = metered.get();
+        return subscriber != null ? subscriber.writtenAt : 0L;
+    }
+    
+    private static final class MeteredSubscriber implements Flow.Subscriber<ByteBuffer> {
+        
+        private final Flow.Subscriber<? super ByteBuffer> downstream;
+        private long bytes;
+        private volatile long bytesWritten;
+        private volatile long writtenAt;
+        
+        private MeteredSubscriber(Flow.Subscriber<? super ByteBuffer> downstream) {
+            this.downstream = downstream;
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            downstream.onSubscribe(subscription);
+        }
+        
+        @Override
+        public void onNext(ByteBuffer item) {
+            bytes += item.remaining();
+            downstream.onNext(item);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            bytesWritten = bytes;
+            downstream.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            bytesWritten = bytes;
+            writtenAt = System.nanoTime();
+            downstream.onComplete();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,347 @@
+package ru.soknight.imgbb;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.progress.TransferAbortedException;
+import ru.soknight.imgbb.progress.TransferListener;
+import ru.soknight.imgbb.progress.TransferProgress;
+
+/*
+ * Watches the request body transfers of the client: reports their progress to the listener
+ * and aborts the cancelled and the too slow ones.
+ * 
+ * The transfers are checked by the only monitor thread on a fixed rate, so a stalled transfer
+ * is detected even though its body subscriber doesn't receive anything. The monitor thread is shared
+ * by all the clients, the checks are scheduled only while the client has the transfers, and the idle
+ * thread is terminated after the keep-alive time. The HTTP client handles
+ * the body error only after the queued chunks are written, so an aborted transfer cancels its
+ * exchange as well, which closes the connection immediately without waiting for the request timeout.
+ * The body is bound to the exchange by each sending, since the hedged requests share the same body.
+ */
+final class TransferMonitor {
+
+    private static final long KEEP_ALIVE_TIME = 60_000L;
+    private static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor();
+    
+    private final TransferListener listener;
+    private final long progressInterval;
+    private final long minThroughput;
+    private final long throughputWindow;
+    private final long period;
+    private final Set<Transfer> transfers;
+    private ScheduledFuture<?> checkTask;
+    
+    TransferMonitor(TransferListener listener, long progressInterval, long minThroughput, long throughputWindow) {
+        this.listener = listener;
+        this.progressInterval = progressInterval;
+        this.minThroughput = minThroughput;
+        this.throughputWindow = throughputWindow;
+        this.transfers = ConcurrentHashMap.newKeySet();
+        
+        // the throughput is sampled at least ten times per window
+        long period = minThroughput > 0 ? Math.max(1L, throughputWindow / 10) : progressInterval;
+        if(listener != null)
+            period = Math.min(period, progressInterval);
+        
+        this.period = period;
+    }
+    
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "imgbb-transfer-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setKeepAliveTime(KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
+    BodyPublisher monitor(UploadParameters parameters, BodyPublisher body) {
+        return new MonitoredBody(parameters, body, null);
+    }
+    
+    // returns the same request if its body isn't monitored
+    static HttpRequest bind(HttpRequest request, AbortHandle handle) {
+        BodyPublisher body = request.bodyPublisher().orElse(null);
+        if(!(body instanceof MonitoredBody))
+            return request;
+        
+        MonitoredBody monitored = (MonitoredBody) body;
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.uri())
+                .POST(monitored.bind(handle));
+        
+        request.timeout().ifPresent(builder::timeout);
+        request.headers().map().forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+        return builder.build();
+    }
+    
+    private synchronized void register(Transfer transfer) {
+        transfers.add(transfer);
+        if(checkTask == null)
+            this.checkTask = EXECUTOR.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    private synchronized void unregister(Transfer transfer) {
+        if(transfers.remove(transfer) && transfers.isEmpty() && checkTask != null) {
+            checkTask.cancel(false);
+            this.checkTask = null;
+        }
+    }
+    
+    private void check() {
+        long now = System.nanoTime();
+        for(Transfer transfer : transfers) {
+            try {
+                transfer.check(now);
+            } catch (RuntimeException ignored) {
+                // the broken listener mustn't stop the monitor
+            }
+        }
+    }
+    
+    /*
+     * A link between the transfer and the exchange which sends it, the exchange may be attached
+     * after the transfer was aborted already.
+     */
+    static final class AbortHandle {
+        
+        private CompletableFuture<?> exchange;
+        private TransferAbortedException error;
+        
+        void attach(CompletableFuture<?> exchange) {
+            boolean aborted;
+            synchronized (this) {
+                this.exchange = exchange;
+                aborted = error != null;
+            }
+            
+            if(aborted)
+                exchange.cancel(true);
+        }
+        
+        synchronized TransferAbortedException getError() {
+            return error;
+        }
+        
+        private void abort(TransferAbortedException error) {
+            CompletableFuture<?> current;
+            synchronized (this) {
+                this.error = error;
+                current = exchange;
+            }
+            
+            if(current != null)
+                current.cancel(true);
+        }
+        
+    }
+    
+    private final class MonitoredBody implements BodyPublisher {
+        
+        private final UploadParameters parameters;
+        private final BodyPublisher delegate;
+        private final AbortHandle handle;
+        
+        private MonitoredBody(UploadParameters parameters, BodyPublisher delegate, AbortHandle handle) {
+            this.parameters = parameters;
+            this.delegate = delegate;
+            this.handle = handle;
+        }
+        
+        private MonitoredBody bind(AbortHandle handle) {
+            return new MonitoredBody(parameters, delegate, handle);
+        }
+        
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+        
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            delegate.subscribe(new Transfer(parameters, delegate.contentLength(), handle, subscriber));
+        }
+        
+    }
+    
+    private final class Transfer implements Flow.Subscriber<ByteBuffer>, TransferProgress {
+        
+        private final UploadParameters parameters;
+        private final long contentLength;
+        private final AbortHandle handle;
+        private final Flow.Subscriber<? super ByteBuffer> downstream;
+        private final long startedAt;
+        
+        // the samples of the written bytes, they're accessed by the monitor thread only
+        private final ArrayDeque<long[]> samples;
+        private long reportedAt;
+        
+        private Flow.Subscription upstream;
+        private volatile long bytesWritten;
+        private volatile double bytesPerSecond;
+        private volatile boolean completed;
+        private boolean terminated;
+        
+        private Transfer(
+                UploadParameters parameters,
+                long contentLength,
+                AbortHandle handle,
+                Flow.Subscriber<? super ByteBuffer> downstream
+        ) {
+            this.parameters = parameters;
+            this.contentLength = contentLength;
+            this.handle = handle;
+            this.downstream = downstream;
+            this.startedAt = System.nanoTime();
+            this.samples = new ArrayDeque<>();
+            this.reportedAt = startedAt;
+            samples.add(new long[] { startedAt, 0L });
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.upstream = subscription;
+            register(this);
+            downstream.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+                
+                @Override
+                public void cancel() {
+                    // the HTTP client cancels the body when the exchange is finished or failed
+                    unregister(Transfer.this);
+                    subscription.cancel();
+                }
+            });
+        }
+        
+        @Override
+        public synchronized void onNext(ByteBuffer item) {
+            if(terminated)
+                return;
+            
+            this.bytesWritten += item.remaining();
+            downstream.onNext(item);
+        }
+        
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            if(terminated)
+                return;
+            
+            this.terminated = true;
+            unregister(this);
+            downstream.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                if(terminated)
+                    return;
+                
+                this.terminated = true;
+                this.completed = true;
+                unregister(this);
+                downstream.onComplete();
+            }
+            
+            if(listener != null)
+                EXECUTOR.execute(() -> report(System.nanoTime()));
+        }
+        
+        private void abort(TransferAbortedException error) {
+            synchronized (this) {
+                if(terminated)
+                    return;
+                
+                this.terminated = true;
+                unregister(this);
+                downstream.onError(error);
+            }
+            
+            upstream.cancel();
+            if(handle != null)
+                handle.abort(error);
+        }
+        
+        private void check(long now) {
+            long bytes = bytesWritten;
+            samples.add(new long[] { now, bytes });
+            
+            // the oldest sample is kept at the window start or before it
+            long windowStart = now - TimeUnit.MILLISECONDS.toNanos(throughputWindow);
+            long[] oldest = samples.poll();
+            while(samples.peek()[0] <= windowStart)
+                oldest = samples.poll();
+            samples.addFirst(oldest);
+            
+            long elapsed = now - oldest[0];
+            this.bytesPerSecond = elapsed > 0 ? (bytes - oldest[1]) * 1e9D / elapsed : 0D;
+            
+            if(minThroughput > 0 && oldest[0] <= windowStart && bytesPerSecond < minThroughput) {
+                abort(new TransferAbortedException("The transfer is slower than the minimal throughput!", false));
+                return;
+            }
+            
+            if(listener != null && now - reportedAt >= TimeUnit.MILLISECONDS.toNanos(progressInterval))
+                report(now);
+        }
+        
+        private void report(long now) {
+            this.reportedAt = now;
+            try {
+                listener.progress(parameters, this);
+            } catch (RuntimeException ignored) {
+                // the broken listener mustn't stop the monitor
+            }
+        }
+        
+        @Override
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+        
+        @Override
+        public long getContentLength() {
+            return contentLength;
+        }
+        
+        @Override
+        public long getElapsedTime() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        }
+        
+        @Override
+        public double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+        
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+        
+        @Override
+        public void cancel() {
+            abort(new TransferAbortedException("The transfer was cancelled!", true));
+        }
+        
+    }
+    
+}
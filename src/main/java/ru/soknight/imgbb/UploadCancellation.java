@@ -0,0 +1,42 @@
+package ru.soknight.imgbb;
+
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * A link between the future returned to the caller and the HTTP exchange of the current attempt.
+ * 
+ * The caller cancels the returned future, but the attempts chain isn't cancelled by it,
+ * so the current exchange is cancelled explicitly and the next attempts are cancelled
+ * as soon as they're attached. The HTTP client aborts the cancelled exchange since Java 16.
+ */
+final class UploadCancellation {
+
+    private CompletableFuture<?> exchange;
+    private boolean cancelled;
+    
+    synchronized void attach(CompletableFuture<?> exchange) {
+        if(cancelled)
+            exchange.cancel(true);
+        else
+            this.exchange = exchange;
+    }
+    
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+    
+    void cancel() {
+        CompletableFuture<?> current;
+        synchronized (this) {
+            if(cancelled)
+                return;
+            
+            this.cancelled = true;
+            current = exchange;
+        }
+        
+        if(current != null)
+            current.cancel(true);
+    }
+    
+}
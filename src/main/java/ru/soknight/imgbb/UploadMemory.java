@@ -0,0 +1,87 @@
+package ru.soknight.imgbb;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import ru.soknight.imgbb.memory.BufferPool;
+import ru.soknight.imgbb.memory.MemoryBudget;
+
+/*
+ * The memory held by one upload: the budget reservation and the pooled body buffer.
+ * 
+ * Both are released together when the upload is finished. The buffer is returned to the pool
+ * only after the normal completion, otherwise the HTTP client may still write it
+ * (a timed out or cancelled exchange), so it's left to the garbage collector.
+ */
+final class UploadMemory {
+
+    private final MemoryBudget budget;
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+    private long reserved;
+    private boolean released;
+    
+    UploadMemory(MemoryBudget budget, BufferPool pool) {
+        this.budget = budget;
+        this.pool = pool;
+    }
+    
+    CompletableFuture<Void> reserve(long bytes) {
+        if(budget == null)
+            return CompletableFuture.completedFuture(null);
+        
+        return budget.reserve(bytes).thenAccept(this::granted);
+    }
+    
+    void reserveBlocking(long bytes) throws InterruptedException {
+        if(budget != null)
+            granted(budget.reserveBlocking(bytes));
+    }
+    
+    boolean isPooled() {
+        return pool != null;
+    }
+    
+    synchronized ByteBuffer allocate(int size) {
+        if(buffer != null)
+            pool.release(buffer);
+        
+        this.buffer = pool.acquire(size);
+        return buffer;
+    }
+    
+    void release(boolean recycle) {
+        long amount;
+        ByteBuffer pooled;
+        synchronized (this) {
+            if(released)
+                return;
+            
+            this.released = true;
+            amount = reserved;
+            pooled = buffer;
+            this.reserved = 0L;
+            this.buffer = null;
+        }
+        
+        if(amount > 0)
+            budget.release(amount);
+        
+        if(pooled != null && recycle)
+            pool.release(pooled);
+    }
+    
+    private void granted(long amount) {
+        boolean late;
+        synchronized (this) {
+            late = released;
+            if(!late)
+                this.reserved += amount;
+        }
+        
+        // the upload was finished while waiting, so the memory isn't needed anymore
+        if(late)
+            budget.release(amount);
+    }
+    
+}
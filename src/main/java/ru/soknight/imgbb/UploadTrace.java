@@ -0,0 +1,157 @@
+package ru.soknight.imgbb;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpResponse;
+
+import ru.soknight.imgbb.metrics.UploadMetrics;
+import ru.soknight.imgbb.response.OptionalResponse;
+
+/*
+ * Measures the phases of one upload and reports them to the metrics.
+ * 
+ * The disabled trace is shared and does nothing, so the no-op metrics don't cost even a clock reading.
+ * The steps of an upload are sequential (the async ones are chained by the futures), so the fields
+ * aren't guarded, only the request body is written by another thread.
+ */
+final class UploadTrace {
+
+    private static final UploadTrace DISABLED = new UploadTrace(null);
+    
+    private final UploadMetrics metrics;
+    private final long startedAt;
+    
+    private MeteredBodyPublisher body;
+    private CountingInputStream response;
+    private long waitStartedAt;
+    private long sentAt;
+    private long readStartedAt;
+    private int attempts;
+    
+    private UploadTrace(UploadMetrics metrics) {
+        this.metrics = metrics;
+        this.startedAt = metrics != null ? System.nanoTime() : 0L;
+    }
+    
+    static UploadTrace start(UploadMetrics metrics) {
+        return metrics != UploadMetrics.noop() ? new UploadTrace(metrics) : DISABLED;
+    }
+    
+    BodyPublisher meter(BodyPublisher publisher) {
+        if(metrics == null)
+            return publisher;
+        
+        this.body = new MeteredBodyPublisher(publisher);
+        return body;
+    }
+    
+    void prepared() {
+        if(metrics != null)
+            metrics.requestPrepared(System.nanoTime() - startedAt);
+    }
+    
+    void waiting() {
+        if(metrics != null)
+            this.waitStartedAt = System.nanoTime();
+    }
+    
+    void sending() {
+        if(metrics == null)
+            return;
+        
+        this.sentAt = System.nanoTime();
+        this.attempts++;
+        if(body != null)
+            body.startAttempt();
+        
+        metrics.permitWaited(sentAt - waitStartedAt);
+    }
+    
+    void received(HttpResponse<?> response) {
+        if(metrics == null)
+            return;
+        
+        long receivedAt = System.nanoTime();
+        long writtenAt = body != null ? body.getWrittenAt() : 0L;
+        if(writtenAt != 0L) {
+            metrics.requestWritten(writtenAt - sentAt, body.getBytesWritten());
+            metrics.responseReceived(receivedAt - writtenAt, response.statusCode());
+        } else {
+            // the server responded before the whole body was written
+            metrics.responseReceived(receivedAt - sentAt, response.statusCode());
+        }
+    }
+    
+    void failed(Throwable error) {
+        if(metrics != null)
+            metrics.requestFailed(error);
+    }
+    
+    void retrying(int attempt, long delay) {
+        if(metrics != null)
+            metrics.uploadRetried(attempt, delay);
+    }
+    
+    InputStream meter(InputStream input) {
+        if(metrics == null)
+            return input;
+        
+        this.readStartedAt = System.nanoTime();
+        this.response = new CountingInputStream(input);
+        return response;
+    }
+    
+    void finished(OptionalResponse result) {
+        if(metrics == null)
+            return;
+        
+        long finishedAt = System.nanoTime();
+        if(response != null)
+            metrics.responseParsed(finishedAt - readStartedAt, response.count);
+        
+        metrics.uploadFinished(result.statusCode(), attempts, finishedAt - startedAt);
+    }
+    
+    void finished(Throwable error) {
+        if(metrics != null)
+            metrics.uploadFailed(error, attempts, System.nanoTime() - startedAt);
+    }
+    
+    private static final class CountingInputStream extends FilterInputStream {
+        
+        private long count;
+        
+        private CountingInputStream(InputStream input) {
+            super(input);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if(value >= 0)
+                count++;
+            
+            return value;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if(read > 0)
+                count += read;
+            
+            return read;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,47 @@
+package ru.soknight.imgbb;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Access to the virtual threads executor without compile-time dependency on JDK 21.
+ * 
+ * The factory is looked up reflectively, so it's registered in the native image reflection config.
+ */
+final class VirtualThreads {
+
+    private static final MethodHandle NEW_EXECUTOR = findFactory();
+    
+    private VirtualThreads() {}
+    
+    static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+    
+    /*
+     * Returns a new virtual thread per task executor or null if it's unsupported by the current JVM.
+     */
+    static ExecutorService newPerTaskExecutor() {
+        if(NEW_EXECUTOR == null)
+            return null;
+        
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invokeExact();
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+    
+    private static MethodHandle findFactory() {
+        try {
+            MethodType type = MethodType.methodType(ExecutorService.class);
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", type);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            return null;
+        }
+    }
+    
+}
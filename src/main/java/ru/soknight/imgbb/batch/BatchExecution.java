@@ -0,0 +1,232 @@
+package ru.soknight.imgbb.batch;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import ru.soknight.imgbb.ImgbbUploadClient;
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.response.OptionalResponse;
+
+/*
+ * One running batch: the feeder thread pulls items while the pipeline has free space,
+ * the CPU workers encode them into the bounded queue and the dispatcher thread uploads
+ * them asynchronously with the concurrency limit. Results are consumed by the iterator.
+ */
+final class BatchExecution<T> implements Iterator<BatchResult<T>> {
+
+    private static final Object WAKEUP = new Object();
+    
+    private final ImgbbUploadClient client;
+    private final ExecutorService encodingExecutor;
+    private final Iterator<T> items;
+    private final Function<T, UploadParameters> encoder;
+    
+    // items in the whole pipeline, an item leaves it when its result is consumed
+    private final Semaphore window;
+    private final Semaphore uploads;
+    private final BlockingQueue<Object> encoded;
+    private final BlockingQueue<Object> results;
+    private final Set<CompletableFuture<OptionalResponse>> running;
+    
+    // the feeder holds an extra one until the input end
+    private final AtomicLong pendingEncodes;
+    private final AtomicLong submitted;
+    private long delivered;
+    
+    private final Thread feeder;
+    private final Thread dispatcher;
+    
+    private volatile boolean inputDone;
+    private volatile Throwable inputError;
+    private volatile boolean cancelled;
+    private BatchResult<T> next;
+    
+    BatchExecution(
+            ImgbbUploadClient client,
+            ExecutorService encodingExecutor,
+            Iterator<T> items,
+            Function<T, UploadParameters> encoder,
+            int maxConcurrentUploads,
+            int queueCapacity
+    ) {
+        this.client = client;
+        this.encodingExecutor = encodingExecutor;
+        this.items = items;
+        this.encoder = encoder;
+        
+        int windowSize = queueCapacity + maxConcurrentUploads;
+        this.window = new Semaphore(windowSize);
+        this.uploads = new Semaphore(maxConcurrentUploads);
+        this.encoded = new ArrayBlockingQueue<>(windowSize + 1);
+        this.results = new LinkedBlockingQueue<>();
+        this.running = ConcurrentHashMap.newKeySet();
+        
+        this.pendingEncodes = new AtomicLong(1);
+        this.submitted = new AtomicLong();
+        
+        this.feeder = BatchUploader.daemonThreadFactory("imgbb-batch-feeder").newThread(this::feed);
+        this.dispatcher = BatchUploader.daemonThreadFactory("imgbb-batch-dispatcher").newThread(this::dispatch);
+    }
+    
+    void start() {
+        feeder.start();
+        dispatcher.start();
+    }
+    
+    void cancel() {
+        cancelled = true;
+        feeder.interrupt();
+        dispatcher.interrupt();
+        results.add(WAKEUP);
+        running.forEach(upload -> upload.cancel(true));
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if(next != null)
+            return true;
+        
+        while(!cancelled) {
+            if(inputDone && delivered == submitted.get()) {
+                if(inputError != null)
+                    throw new RuntimeException("Exception was catched while try to read the batch input!", inputError);
+                
+                return false;
+            }
+            
+            Object result;
+            try {
+                result = results.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new RuntimeException("Thread was interrupted while waiting for the batch result!", ex);
+            }
+            
+            if(result != WAKEUP) {
+                @SuppressWarnings("unchecked")
+                BatchResult<T> batchResult = (BatchResult<T>) result;
+                
+                next = batchResult;
+                delivered++;
+                window.release();
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    @Override
+    public BatchResult<T> next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+        
+        BatchResult<T> result = next;
+        next = null;
+        return result;
+    }
+    
+    private void feed() {
+        long index = 0;
+        try {
+            while(!cancelled && items.hasNext()) {
+                window.acquire();
+                
+                long itemIndex = index++;
+                T item = items.next();
+                
+                submitted.incrementAndGet();
+                pendingEncodes.incrementAndGet();
+                try {
+                    encodingExecutor.execute(() -> encode(itemIndex, item));
+                } catch (RejectedExecutionException ex) {
+                    results.add(new BatchResult<>(itemIndex, item, null, ex));
+                    encodeFinished();
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } catch (Throwable ex) {
+            inputError = ex;
+        } finally {
+            inputDone = true;
+            results.add(WAKEUP);
+            encodeFinished();
+        }
+    }
+    
+    private void encode(long index, T item) {
+        try {
+            UploadParameters parameters = encoder.apply(item);
+            encoded.add(new Encoded<>(index, item, parameters));
+        } catch (Throwable ex) {
+            results.add(new BatchResult<>(index, item, null, ex));
+        } finally {
+            encodeFinished();
+        }
+    }
+    
+    private void encodeFinished() {
+        if(pendingEncodes.decrementAndGet() == 0)
+            encoded.add(WAKEUP);
+    }
+    
+    private void dispatch() {
+        try {
+            while(!cancelled) {
+                Object element = encoded.take();
+                if(element == WAKEUP)
+                    return;
+                
+                @SuppressWarnings("unchecked")
+                Encoded<T> item = (Encoded<T>) element;
+                
+                uploads.acquire();
+                CompletableFuture<OptionalResponse> upload = client.uploadAsync(item.parameters);
+                running.add(upload);
+                
+                // the execution may be cancelled before the upload was registered
+                if(cancelled)
+                    upload.cancel(true);
+                
+                upload.whenComplete((response, throwable) -> {
+                    running.remove(upload);
+                    uploads.release();
+                    
+                    Throwable error = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause()
+                            : throwable;
+                    results.add(new BatchResult<>(item.index, item.item, response, error));
+                });
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+    
+    private static final class Encoded<T> {
+        
+        private final long index;
+        private final T item;
+        private final UploadParameters parameters;
+        
+        private Encoded(long index, T item, UploadParameters parameters) {
+            this.index = index;
+            this.item = item;
+            this.parameters = parameters;
+        }
+        
+    }
+    
+}
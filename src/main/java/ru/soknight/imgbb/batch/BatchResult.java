@@ -0,0 +1,84 @@
+package ru.soknight.imgbb.batch;
+
+import java.util.NoSuchElementException;
+
+import ru.soknight.imgbb.response.OptionalResponse;
+
+/**
+ * Represents a result of one item uploading in the batch.
+ * <p>
+ * It's successful when the item was encoded and uploaded without exceptions,
+ * so {@link BatchResult#getResponse()} is available, otherwise {@link BatchResult#getError()} is available.
+ * @param <T> the type of batch items.
+ */
+public class BatchResult<T> {
+
+    private final long index;
+    private final T item;
+    private final OptionalResponse response;
+    private final Throwable error;
+    
+    BatchResult(long index, T item, OptionalResponse response, Throwable error) {
+        this.index = index;
+        this.item = item;
+        this.response = response;
+        this.error = error;
+    }
+    
+    /**
+     * Returns a zero-based position of the item in the batch input.
+     * @return The item index.
+     */
+    public long getIndex() {
+        return index;
+    }
+    
+    /**
+     * Returns an original batch item.
+     * @return The batch item.
+     */
+    public T getItem() {
+        return item;
+    }
+    
+    /**
+     * Checks if the item was uploaded without exceptions.
+     * <p>
+     * Note that the response still may have not 200 status code.
+     * @return 'true' if the response is available or 'false' if the error is.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+    
+    /**
+     * Returns the upload response of this item.
+     * @return The upload response.
+     * 
+     * @throws NoSuchElementException if the item was failed.
+     */
+    public OptionalResponse getResponse() {
+        if(error != null)
+            throw new NoSuchElementException("No response present, the item was failed");
+        
+        return response;
+    }
+    
+    /**
+     * Returns an exception which was thrown while the item encoding or uploading.
+     * @return The item exception or null if it was successful.
+     */
+    public Throwable getError() {
+        return error;
+    }
+    
+    @Override
+    public String toString() {
+        return "BatchResult{"
+                + "index=" + index + ", "
+                + "item=" + item + ", "
+                + "response=" + response + ", "
+                + "error=" + error + "}";
+    }
+    
+}
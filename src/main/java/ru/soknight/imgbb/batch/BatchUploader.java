@@ -0,0 +1,193 @@
+package ru.soknight.imgbb.batch;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ru.soknight.imgbb.ImgbbUploadClient;
+import ru.soknight.imgbb.parameter.UploadParameters;
+
+/**
+ * An uploader of many images as one batch with bounded parallelism.
+ * <p>
+ * Each batch is processed by two stages: the items encoding (to {@link UploadParameters}) on the CPU workers
+ * and the uploading by the client asynchronously with a concurrency limit. There is a bounded queue between
+ * the stages and the whole amount of the items in the pipeline is bounded too, so the input is read lazily
+ * and the batch is never placed in memory entirely.
+ * <p>
+ * You must use the {@link BatchUploader.Builder} to build a new uploader instance.
+ */
+public class BatchUploader implements AutoCloseable {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    
+    private final ImgbbUploadClient client;
+    private final ExecutorService encodingExecutor;
+    private final int maxConcurrentUploads;
+    private final int queueCapacity;
+    
+    private BatchUploader(Builder builder) {
+        this.client = builder.client;
+        this.encodingExecutor = Executors.newFixedThreadPool(builder.encodingThreads, daemonThreadFactory("imgbb-batch-encoder"));
+        this.maxConcurrentUploads = builder.maxConcurrentUploads;
+        this.queueCapacity = builder.queueCapacity;
+    }
+    
+    /**
+     * Uploads already prepared parameters as one batch.
+     * @param parameters a batch items.
+     * @return The lazy stream of item results in the completion order, closing of it cancels the batch.
+     * 
+     * @see BatchUploader#upload(Iterator, Function)
+     */
+    public Stream<BatchResult<UploadParameters>> upload(Iterable<UploadParameters> parameters) {
+        return upload(parameters.iterator(), Function.identity());
+    }
+    
+    /**
+     * Encodes and uploads the stream items as one batch.
+     * @param <T> the type of batch items (files, buffered images etc.)
+     * @param items a batch items.
+     * @param encoder a function to create parameters from the item, it's called on the CPU workers.
+     * @return The lazy stream of item results in the completion order, closing of it cancels the batch.
+     * 
+     * @see BatchUploader#upload(Iterator, Function)
+     */
+    public <T> Stream<BatchResult<T>> upload(Stream<T> items, Function<T, UploadParameters> encoder) {
+        return upload(items.iterator(), encoder).onClose(items::close);
+    }
+    
+    /**
+     * Encodes and uploads the iterator items as one batch.
+     * <p>
+     * The items are pulled from the iterator only when there is free space in the pipeline,
+     * so the input iterator may be lazy and very long.
+     * @param <T> the type of batch items (files, buffered images etc.)
+     * @param items a batch items.
+     * @param encoder a function to create parameters from the item, it's called on the CPU workers.
+     * @return The lazy stream of item results in the completion order, closing of it cancels the batch.
+     * 
+     * @throws IllegalStateException when this uploader is already closed.
+     */
+    public <T> Stream<BatchResult<T>> upload(Iterator<T> items, Function<T, UploadParameters> encoder) {
+        if(encodingExecutor.isShutdown())
+            throw new IllegalStateException("This batch uploader is already closed!");
+        
+        BatchExecution<T> execution = new BatchExecution<>(
+                client, encodingExecutor, items, encoder, maxConcurrentUploads, queueCapacity
+        );
+        execution.start();
+        
+        Spliterator<BatchResult<T>> spliterator = Spliterators.spliteratorUnknownSize(
+                execution, Spliterator.NONNULL | Spliterator.ORDERED
+        );
+        return StreamSupport.stream(spliterator, false).onClose(execution::cancel);
+    }
+    
+    /**
+     * Stops the encoding workers, started batches will fail to encode remaining items.
+     */
+    @Override
+    public void close() {
+        encodingExecutor.shutdownNow();
+    }
+    
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * A builder for the {@link BatchUploader}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private final ImgbbUploadClient client;
+        private int encodingThreads;
+        private int maxConcurrentUploads;
+        private int queueCapacity;
+        
+        /**
+         * Building of uploader starts from this step.
+         * @param client the client to upload images by.
+         * 
+         * @throws IllegalArgumentException if received client is null.
+         */
+        public Builder(ImgbbUploadClient client) {
+            if(client == null)
+                throw new IllegalArgumentException("Specified client is null!");
+            
+            this.client = client;
+            this.encodingThreads = Runtime.getRuntime().availableProcessors();
+            this.maxConcurrentUploads = 16;
+            this.queueCapacity = 32;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the amount of the CPU workers to encode images, the default is the available processors amount.
+         * @param value the encoding threads amount.
+         * @return Current builder instance.
+         */
+        public Builder encodingThreads(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The encoding threads amount must be positive!");
+            
+            this.encodingThreads = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of simultaneous uploads per batch, the default is 16.
+         * <p>
+         * Note that the client in-flight limit is applied as well.
+         * @param value the concurrent uploads limit.
+         * @return Current builder instance.
+         */
+        public Builder maxConcurrentUploads(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The concurrent uploads limit must be positive!");
+            
+            this.maxConcurrentUploads = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the capacity of the queue between the encoding and the uploading stages, the default is 32.
+         * @param value the queue capacity.
+         * @return Current builder instance.
+         */
+        public Builder queueCapacity(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The queue capacity must be positive!");
+            
+            this.queueCapacity = value;
+            return this;
+        }
+        
+        /**
+         * Finishes an uploader building and returns builded uploader.
+         * @return Builded batch uploader instance.
+         */
+        public BatchUploader build() {
+            return new BatchUploader(this);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,139 @@
+package ru.soknight.imgbb.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.source.ImageSource;
+
+/**
+ * A SHA-256 hash of the image bytes, it's calculated in a streaming pass by fixed-size chunks.
+ * <p>
+ * The hash of the Base64 encoded image is calculated from the decoded bytes,
+ * so the same image has the same hash regardless of the way it's specified.
+ */
+public final class ContentHash {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    
+    private ContentHash() {}
+    
+    /**
+     * Calculates a hash of the image specified in the upload parameters.
+     * <p>
+     * The image string which isn't valid Base64 string is hashed as is.
+     * @param parameters a parameters with the image.
+     * @return The image hash as lowercase hex string.
+     * 
+     * @throws UncheckedIOException when the image source cannot be read.
+     */
+    public static String of(UploadParameters parameters) {
+        if(parameters.isStreamed())
+            return of(parameters.getImageSource());
+        
+        try {
+            return ofBase64(parameters.getImageBase64());
+        } catch (IllegalArgumentException ignored) {
+            // it's left to the server to reject such string, so it's deduplicated as well
+            return toHex(newDigest().digest(parameters.getImageBase64().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+    
+    /**
+     * Calculates a hash of the image source bytes, the source is read once.
+     * @param imageSource an image source to read.
+     * @return The image hash as lowercase hex string.
+     * 
+     * @throws UncheckedIOException when the image source cannot be read.
+     */
+    public static String of(ImageSource imageSource) {
+        MessageDigest digest = newDigest();
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        try(ReadableByteChannel channel = imageSource.openChannel()) {
+            while(channel.read(chunk) >= 0) {
+                chunk.flip();
+                digest.update(chunk);
+                chunk.clear();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("I/O exception was catched while try to hash an image!", ex);
+        }
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Calculates a hash of the image bytes encoded as Base64 string.
+     * <p>
+     * The string is decoded by chunks, so the whole decoded image isn't placed in the heap.
+     * The characters outside of the Base64 alphabet (the line breaks of the MIME Base64) are ignored.
+     * @param imageBase64 an image Base64 encoded string.
+     * @return The image hash as lowercase hex string.
+     * 
+     * @throws IllegalArgumentException when the string isn't valid Base64 string.
+     */
+    public static String ofBase64(String imageBase64) {
+        MessageDigest digest = newDigest();
+        Base64.Decoder decoder = Base64.getDecoder();
+        
+        // chunk length is a multiple of 4 characters, so the padding may be only at the end
+        byte[] encoded = new byte[CHUNK_SIZE];
+        byte[] decoded = new byte[CHUNK_SIZE / 4 * 3];
+        int chunkLength = 0;
+        
+        int length = imageBase64.length();
+        for(int i = 0; i < length; i++) {
+            char next = imageBase64.charAt(i);
+            if(!isBase64Char(next))
+                continue;
+            
+            encoded[chunkLength++] = (byte) next;
+            if(chunkLength == CHUNK_SIZE) {
+                digest.update(decoded, 0, decoder.decode(encoded, decoded));
+                chunkLength = 0;
+            }
+        }
+        
+        if(chunkLength > 0)
+            digest.update(decoded, 0, decoder.decode(Arrays.copyOf(encoded, chunkLength), decoded));
+        
+        return toHex(digest.digest());
+    }
+    
+    // a short hash of the secret text (an API key), so it isn't stored in the caches as is
+    static String ofSecret(String text) {
+        byte[] digest = newDigest().digest(text.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest).substring(0, 16);
+    }
+    
+    // the same alphabet which is accepted by the MIME decoder
+    private static boolean isBase64Char(char value) {
+        return value >= 'A' && value <= 'Z' || value >= 'a' && value <= 'z' || value >= '0' && value <= '9'
+                || value == '+' || value == '/' || value == '=';
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 algorithm isn't supported by the JVM!", ex);
+        }
+    }
+    
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+    
+}
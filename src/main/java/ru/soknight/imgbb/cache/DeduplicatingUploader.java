@@ -0,0 +1,261 @@
+package ru.soknight.imgbb.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import ru.soknight.imgbb.ImgbbUploadClient;
+import ru.soknight.imgbb.parameter.ExpirationTime;
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.response.OptionalResponse;
+import ru.soknight.imgbb.response.ResponseModel;
+import ru.soknight.imgbb.response.ResponseModelData;
+
+/**
+ * An uploader which skips uploading of the images which were already uploaded.
+ * <p>
+ * The image bytes are hashed before the upload, and if the cache contains not expired response data
+ * for the same hash, it's returned as {@link OptionalResponse#isCached() cached} response without any request.
+ * The cache is keyed by the hash together with the API key and the expiration time, so the image uploaded
+ * with other parameters isn't returned. Simultaneous uploads of the same image are merged into one upload.
+ * <p>
+ * The images from an input stream cannot be read twice, so they are uploaded without deduplication.
+ * <p>
+ * You must use the {@link DeduplicatingUploader.Builder} to build a new uploader instance.
+ */
+public class DeduplicatingUploader {
+
+    private final ImgbbUploadClient client;
+    private final UploadCache cache;
+    private final long minRemainingLifetime;
+    private final Executor hashingExecutor;
+    private final ConcurrentMap<String, CompletableFuture<OptionalResponse>> inFlight;
+    
+    private DeduplicatingUploader(Builder builder) {
+        this.client = builder.client;
+        this.cache = builder.cache;
+        this.minRemainingLifetime = builder.minRemainingLifetime;
+        this.hashingExecutor = builder.hashingExecutor;
+        this.inFlight = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Uploads an image if the same image isn't in the cache.
+     * @param parameters a parameters to do image uploading.
+     * @return The cached response or the {@link OptionalResponse} instance as response of uploading operation.
+     * 
+     * @throws RuntimeException when anyone I/O exception catches.
+     * @see ImgbbUploadClient#uploadImage(UploadParameters)
+     */
+    public OptionalResponse upload(UploadParameters parameters) {
+        if(!parameters.isReplayable())
+            return client.uploadImage(parameters);
+        
+        String cacheKey = cacheKey(parameters, ContentHash.of(parameters));
+        OptionalResponse cached = lookup(cacheKey);
+        if(cached != null)
+            return cached;
+        
+        CompletableFuture<OptionalResponse> promise = new CompletableFuture<>();
+        CompletableFuture<OptionalResponse> existing = inFlight.putIfAbsent(cacheKey, promise);
+        if(existing != null)
+            return await(existing);
+        
+        try {
+            // the same upload may be finished between the lookup and the registration
+            OptionalResponse response = lookup(cacheKey);
+            if(response == null) {
+                response = client.uploadImage(parameters);
+                store(cacheKey, response);
+            }
+            
+            promise.complete(response);
+            return response;
+        } catch (RuntimeException ex) {
+            promise.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(cacheKey, promise);
+        }
+    }
+    
+    /**
+     * Uploads an image asynchronously if the same image isn't in the cache.
+     * <p>
+     * The image is hashed by the hashing executor.
+     * @param parameters a parameters to do image uploading.
+     * @return The future which will be completed by the cached response or by the {@link OptionalResponse}
+     * instance as response of uploading operation.
+     * 
+     * @see ImgbbUploadClient#uploadAsync(UploadParameters)
+     */
+    public CompletableFuture<OptionalResponse> uploadAsync(UploadParameters parameters) {
+        if(!parameters.isReplayable())
+            return client.uploadAsync(parameters);
+        
+        return CompletableFuture.supplyAsync(() -> ContentHash.of(parameters), hashingExecutor)
+                .thenCompose(contentHash -> {
+                    String cacheKey = cacheKey(parameters, contentHash);
+                    OptionalResponse cached = lookup(cacheKey);
+                    if(cached != null)
+                        return CompletableFuture.completedFuture(cached);
+                    
+                    CompletableFuture<OptionalResponse> promise = new CompletableFuture<>();
+                    CompletableFuture<OptionalResponse> existing = inFlight.putIfAbsent(cacheKey, promise);
+                    if(existing != null)
+                        return existing;
+                    
+                    // the same upload may be finished between the lookup and the registration
+                    cached = lookup(cacheKey);
+                    if(cached != null) {
+                        inFlight.remove(cacheKey, promise);
+                        promise.complete(cached);
+                        return promise;
+                    }
+                    
+                    client.uploadAsync(parameters).whenComplete((response, throwable) -> {
+                        if(response != null)
+                            store(cacheKey, response);
+                        
+                        inFlight.remove(cacheKey, promise);
+                        if(throwable != null)
+                            promise.completeExceptionally(throwable);
+                        else
+                            promise.complete(response);
+                    });
+                    return promise;
+                });
+    }
+    
+    // the pooled keys share the same entries, since they're expected to belong to the same account
+    private static String cacheKey(UploadParameters parameters, String contentHash) {
+        String apiKey = parameters.getApiKey();
+        ExpirationTime expirationTime = parameters.getExpirationTime();
+        return contentHash
+                + ':' + (apiKey != null ? ContentHash.ofSecret(apiKey) : "pool")
+                + ':' + (expirationTime != null ? expirationTime.getAsLong() : 0L);
+    }
+    
+    private static OptionalResponse await(CompletableFuture<OptionalResponse> upload) {
+        try {
+            return upload.join();
+        } catch (CompletionException ex) {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            
+            throw ex;
+        }
+    }
+    
+    private OptionalResponse lookup(String cacheKey) {
+        ResponseModelData data = cache.get(cacheKey);
+        if(data == null)
+            return null;
+        
+        long deadline = System.currentTimeMillis() / 1000L + minRemainingLifetime;
+        if(data.isExpired(deadline)) {
+            cache.remove(cacheKey);
+            return null;
+        }
+        
+        return OptionalResponse.ofCached(data);
+    }
+    
+    private void store(String cacheKey, OptionalResponse response) {
+        if(!response.isPresent())
+            return;
+        
+        ResponseModel model = response.get();
+        if(model.isUploadedSuccess() && model.getResponseData() != null)
+            cache.put(cacheKey, model.getResponseData());
+    }
+    
+    /**
+     * A builder for the {@link DeduplicatingUploader}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private final ImgbbUploadClient client;
+        private UploadCache cache;
+        private long minRemainingLifetime;
+        private Executor hashingExecutor;
+        
+        /**
+         * Building of uploader starts from this step.
+         * @param client the client to upload images by.
+         * 
+         * @throws IllegalArgumentException if received client is null.
+         */
+        public Builder(ImgbbUploadClient client) {
+            if(client == null)
+                throw new IllegalArgumentException("Specified client is null!");
+            
+            this.client = client;
+            this.cache = new MemoryUploadCache(10_000, 0L);
+            this.minRemainingLifetime = 60L;
+            this.hashingExecutor = ForkJoinPool.commonPool();
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the cache of uploaded images, the default is in-memory cache for 10000 entries.
+         * @param value the cache to use.
+         * @return Current builder instance.
+         * 
+         * @see TieredUploadCache
+         */
+        public Builder cache(UploadCache value) {
+            if(value == null)
+                throw new IllegalArgumentException("The cache cannot be null!");
+            
+            this.cache = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the minimal remaining lifetime <b>in seconds</b> of the cached URLs to return them, the default is 60.
+         * <p>
+         * The image is uploaded again when its cached URLs expire earlier.
+         * @param value the minimal remaining lifetime.
+         * @return Current builder instance.
+         */
+        public Builder minRemainingLifetime(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The minimal remaining lifetime cannot be negative!");
+            
+            this.minRemainingLifetime = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the executor to hash images for asynchronous uploads, the default is the common fork-join pool.
+         * @param value the executor to use.
+         * @return Current builder instance.
+         */
+        public Builder hashingExecutor(Executor value) {
+            if(value == null)
+                throw new IllegalArgumentException("The hashing executor cannot be null!");
+            
+            this.hashingExecutor = value;
+            return this;
+        }
+        
+        /**
+         * Finishes an uploader building and returns builded uploader.
+         * @return Builded deduplicating uploader instance.
+         */
+        public DeduplicatingUploader build() {
+            return new DeduplicatingUploader(this);
+        }
+        
+    }
+    
+}
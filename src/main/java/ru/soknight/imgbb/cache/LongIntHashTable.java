@@ -0,0 +1,83 @@
+package ru.soknight.imgbb.cache;
+
+/*
+ * An open addressing hash table which maps the 64-bit key hashes to the record slots.
+ * 
+ * It keeps two primitive arrays without any per-entry objects. The key 0 marks an empty
+ * bucket, so the hashes are never 0. Removal shifts the following entries back
+ * instead of leaving tombstones, so the probe sequences stay short.
+ */
+final class LongIntHashTable {
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    
+    LongIntHashTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+    
+    static long hash(String value) {
+        // FNV-1a over the chars with the final avalanche mixing
+        long hash = 0xCBF29CE484222325L;
+        for(int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash != 0L ? hash : 1L;
+    }
+    
+    int get(long key) {
+        for(int index = bucket(key); keys[index] != 0L; index = (index + 1) & mask)
+            if(keys[index] == key)
+                return values[index];
+        
+        return -1;
+    }
+    
+    void put(long key, int value) {
+        int index = bucket(key);
+        while(keys[index] != 0L && keys[index] != key)
+            index = (index + 1) & mask;
+        
+        keys[index] = key;
+        values[index] = value;
+    }
+    
+    // removes the key only if it's still mapped to the value
+    void remove(long key, int value) {
+        int index = bucket(key);
+        while(keys[index] != key) {
+            if(keys[index] == 0L)
+                return;
+            
+            index = (index + 1) & mask;
+        }
+        
+        if(values[index] != value)
+            return;
+        
+        // backward shift of the following entries of the cluster
+        int hole = index;
+        for(int next = (index + 1) & mask; keys[next] != 0L; next = (next + 1) & mask) {
+            int home = bucket(keys[next]);
+            if(((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = 0L;
+    }
+    
+    private int bucket(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+    
+}
@@ -0,0 +1,86 @@
+package ru.soknight.imgbb.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ru.soknight.imgbb.response.ResponseModelData;
+
+/**
+ * A bounded in-memory {@link UploadCache} with LRU eviction and time-to-live of entries.
+ */
+public class MemoryUploadCache implements UploadCache {
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final LinkedHashMap<String, CacheEntry> entries;
+    
+    /**
+     * Creates a new in-memory cache.
+     * @param maxEntries the maximal amount of entries, the least recently used entry is evicted above it.
+     * @param timeToLive the entry lifetime <b>in milliseconds</b>, 0 to keep entries until the eviction.
+     * 
+     * @throws IllegalArgumentException if the entries limit isn't positive.
+     * @throws IllegalArgumentException if the lifetime is negative.
+     */
+    public MemoryUploadCache(int maxEntries, long timeToLive) {
+        if(maxEntries <= 0)
+            throw new IllegalArgumentException("The entries limit must be positive!");
+        
+        if(timeToLive < 0)
+            throw new IllegalArgumentException("The entry lifetime cannot be negative!");
+        
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > MemoryUploadCache.this.maxEntries;
+            }
+        };
+    }
+    
+    @Override
+    public synchronized ResponseModelData get(String contentHash) {
+        CacheEntry entry = entries.get(contentHash);
+        if(entry == null)
+            return null;
+        
+        if(timeToLive > 0 && System.currentTimeMillis() - entry.createdAt >= timeToLive) {
+            entries.remove(contentHash);
+            return null;
+        }
+        
+        return entry.data;
+    }
+    
+    @Override
+    public synchronized void put(String contentHash, ResponseModelData data) {
+        entries.put(contentHash, new CacheEntry(data, System.currentTimeMillis()));
+    }
+    
+    @Override
+    public synchronized void remove(String contentHash) {
+        entries.remove(contentHash);
+    }
+    
+    /**
+     * Returns the current amount of entries including not yet removed expired ones.
+     * @return The entries amount.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    private static final class CacheEntry {
+        
+        private final ResponseModelData data;
+        private final long createdAt;
+        
+        private CacheEntry(ResponseModelData data, long createdAt) {
+            this.data = data;
+            this.createdAt = createdAt;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,317 @@
+package ru.soknight.imgbb.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import ru.soknight.imgbb.response.ResponseDataCodec;
+import ru.soknight.imgbb.response.ResponseModelData;
+
+/**
+ * A bounded in-memory index of the uploaded images, which finds the response data
+ * by the image ID, by the image content hash or by the original local file path.
+ * <p>
+ * The entries are kept in the compact binary form (see {@link ResponseDataCodec}), one byte array per entry,
+ * and the keys are indexed by their 64-bit hashes in the primitive hash tables, so the index has
+ * no per-entry objects except the encoded bytes. The found entries are verified against the full key.
+ * <p>
+ * An entry is expired when its URLs expire ({@link ResponseModelData#getExpirationTimestamp()}),
+ * the expired entries aren't returned and are purged while adding the new ones. When the index is full,
+ * the oldest entry is evicted. The index is thread-safe, lookups don't block each other.
+ * <p>
+ * It's an {@link UploadCache} keyed by the content hash, so it may be used by the {@link DeduplicatingUploader}.
+ */
+public class ResponseIndex implements UploadCache {
+
+    private static final int ID = 0;
+    private static final int CONTENT_HASH = 1;
+    private static final int PATH = 2;
+    
+    private final int maxEntries;
+    private final byte[][] records;
+    private final long[] expiresAt;
+    private final LongIntHashTable[] tables;
+    private final ReadWriteLock lock;
+    
+    // the slots are taken in the ring order, so the slot under the hand is the oldest one
+    private int hand;
+    private int size;
+    
+    /**
+     * Creates a new empty index.
+     * @param maxEntries the maximal amount of entries, the oldest entry is evicted above it.
+     * 
+     * @throws IllegalArgumentException if the entries limit isn't positive.
+     */
+    public ResponseIndex(int maxEntries) {
+        if(maxEntries <= 0)
+            throw new IllegalArgumentException("The entries limit must be positive!");
+        
+        this.maxEntries = maxEntries;
+        this.records = new byte[maxEntries][];
+        this.expiresAt = new long[maxEntries];
+        this.tables = new LongIntHashTable[] {
+                new LongIntHashTable(maxEntries),
+                new LongIntHashTable(maxEntries),
+                new LongIntHashTable(maxEntries)
+        };
+        this.lock = new ReentrantReadWriteLock();
+    }
+    
+    /**
+     * Adds the response data of the uploaded image, the entries with the same keys are replaced.
+     * @param contentHash the image content hash, may be null.
+     * @param path the original image file path, may be null.
+     * @param data the response data to add.
+     * 
+     * @throws IllegalArgumentException if received data or its image ID is null.
+     * @see ContentHash
+     */
+    public void put(String contentHash, Path path, ResponseModelData data) {
+        if(data == null || data.getID() == null)
+            throw new IllegalArgumentException("Specified response data or its image ID is null!");
+        
+        String[] keys = { data.getID(), contentHash, path != null ? pathKey(path) : null };
+        byte[] record = encode(keys, data);
+        
+        lock.writeLock().lock();
+        try {
+            for(int kind = 0; kind < keys.length; kind++)
+                if(keys[kind] != null)
+                    removeSlot(find(kind, keys[kind]));
+            
+            int slot = takeSlot();
+            records[slot] = record;
+            expiresAt[slot] = data.getExpirationTimestamp();
+            for(int kind = 0; kind < keys.length; kind++)
+                if(keys[kind] != null)
+                    tables[kind].put(LongIntHashTable.hash(keys[kind]), slot);
+            
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Finds the response data by the image ID on website.
+     * @param id the image ID.
+     * @return The response data or null if it's absent or expired.
+     */
+    public ResponseModelData getById(String id) {
+        return lookup(ID, id);
+    }
+    
+    /**
+     * Finds the response data by the original image file path.
+     * @param path the image file path, it's compared in the absolute normalized form.
+     * @return The response data or null if it's absent or expired.
+     */
+    public ResponseModelData getByPath(Path path) {
+        return path != null ? lookup(PATH, pathKey(path)) : null;
+    }
+    
+    @Override
+    public ResponseModelData get(String contentHash) {
+        return lookup(CONTENT_HASH, contentHash);
+    }
+    
+    @Override
+    public void put(String contentHash, ResponseModelData data) {
+        put(contentHash, null, data);
+    }
+    
+    @Override
+    public void remove(String contentHash) {
+        remove(CONTENT_HASH, contentHash);
+    }
+    
+    /**
+     * Removes the entry by the image ID, for example after the image was deleted from website.
+     * @param id the image ID.
+     */
+    public void removeById(String id) {
+        remove(ID, id);
+    }
+    
+    /**
+     * Removes all the expired entries.
+     * @return The removed entries amount.
+     */
+    public int purgeExpired() {
+        long now = System.currentTimeMillis() / 1000L;
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for(int slot = 0; slot < maxEntries; slot++) {
+                if(records[slot] != null && isExpired(slot, now)) {
+                    removeSlot(slot);
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Returns the current amount of entries including not yet purged expired ones.
+     * @return The entries amount.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private ResponseModelData lookup(int kind, String key) {
+        if(key == null)
+            return null;
+        
+        byte[] record;
+        lock.readLock().lock();
+        try {
+            int slot = find(kind, key);
+            if(slot < 0 || isExpired(slot, System.currentTimeMillis() / 1000L))
+                return null;
+            
+            record = records[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+            skipKeys(input);
+            return ResponseDataCodec.read(input);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("I/O exception was catched while try to decode an index entry!", ex);
+        }
+    }
+    
+    private void remove(int kind, String key) {
+        if(key == null)
+            return;
+        
+        lock.writeLock().lock();
+        try {
+            removeSlot(find(kind, key));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // must be called under the lock, returns -1 if the key isn't found
+    private int find(int kind, String key) {
+        int slot = tables[kind].get(LongIntHashTable.hash(key));
+        if(slot < 0 || records[slot] == null)
+            return -1;
+        
+        // the 64-bit hashes may collide, so the stored key is compared too
+        return key.equals(readKey(records[slot], kind)) ? slot : -1;
+    }
+    
+    private int takeSlot() {
+        long now = System.currentTimeMillis() / 1000L;
+        for(int i = 0; i < maxEntries; i++) {
+            int slot = hand;
+            hand = (hand + 1) % maxEntries;
+            if(records[slot] == null)
+                return slot;
+            
+            if(isExpired(slot, now)) {
+                removeSlot(slot);
+                return slot;
+            }
+            
+            if(size < maxEntries)
+                continue;
+            
+            // the index is full, so the oldest entry is evicted
+            removeSlot(slot);
+            return slot;
+        }
+        throw new IllegalStateException("The index has no free slots!");
+    }
+    
+    private void removeSlot(int slot) {
+        if(slot < 0 || records[slot] == null)
+            return;
+        
+        for(int kind = 0; kind < tables.length; kind++) {
+            String key = readKey(records[slot], kind);
+            if(key != null)
+                tables[kind].remove(LongIntHashTable.hash(key), slot);
+        }
+        
+        records[slot] = null;
+        expiresAt[slot] = 0L;
+        size--;
+    }
+    
+    private boolean isExpired(int slot, long now) {
+        return expiresAt[slot] > 0L && expiresAt[slot] <= now;
+    }
+    
+    private static String pathKey(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+    
+    /*
+     * RECORDS
+     * 
+     * [key ID][key content hash][key path][response data], each key is a nullable UTF string
+     */
+    
+    private static byte[] encode(String[] keys, ResponseModelData data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(384);
+        try(DataOutputStream output = new DataOutputStream(bytes)) {
+            for(String key : keys) {
+                output.writeBoolean(key != null);
+                if(key != null)
+                    output.writeUTF(key);
+            }
+            ResponseDataCodec.write(output, data);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("I/O exception was catched while try to encode an index entry!", ex);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static String readKey(byte[] record, int kind) {
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+            for(int i = 0; i < kind; i++)
+                if(input.readBoolean())
+                    input.readUTF();
+            
+            return input.readBoolean() ? input.readUTF() : null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("I/O exception was catched while try to decode an index entry!", ex);
+        }
+    }
+    
+    private static void skipKeys(DataInputStream input) throws IOException {
+        for(int kind = 0; kind <= PATH; kind++)
+            if(input.readBoolean())
+                input.readUTF();
+    }
+    
+    @Override
+    public String toString() {
+        return "ResponseIndex{"
+                + "maxEntries=" + maxEntries + ", "
+                + "size=" + size() + "}";
+    }
+    
+}
@@ -0,0 +1,55 @@
+package ru.soknight.imgbb.cache;
+
+import ru.soknight.imgbb.response.ResponseModelData;
+
+/**
+ * A two-tier {@link UploadCache}: a fast in-memory tier in front of a persistent one.
+ * <p>
+ * Entries found in the persistent tier are promoted to the memory tier, new entries are written to both tiers.
+ */
+public class TieredUploadCache implements UploadCache {
+
+    private final UploadCache memoryTier;
+    private final UploadCache persistentTier;
+    
+    /**
+     * Creates a new two-tier cache.
+     * @param memoryTier the fast tier which is asked first.
+     * @param persistentTier the slow tier which is asked on the fast tier miss.
+     * 
+     * @throws IllegalArgumentException if any tier is null.
+     */
+    public TieredUploadCache(UploadCache memoryTier, UploadCache persistentTier) {
+        if(memoryTier == null || persistentTier == null)
+            throw new IllegalArgumentException("Specified cache tier is null!");
+        
+        this.memoryTier = memoryTier;
+        this.persistentTier = persistentTier;
+    }
+    
+    @Override
+    public ResponseModelData get(String contentHash) {
+        ResponseModelData data = memoryTier.get(contentHash);
+        if(data != null)
+            return data;
+        
+        data = persistentTier.get(contentHash);
+        if(data != null)
+            memoryTier.put(contentHash, data);
+        
+        return data;
+    }
+    
+    @Override
+    public void put(String contentHash, ResponseModelData data) {
+        memoryTier.put(contentHash, data);
+        persistentTier.put(contentHash, data);
+    }
+    
+    @Override
+    public void remove(String contentHash) {
+        memoryTier.remove(contentHash);
+        persistentTier.remove(contentHash);
+    }
+    
+}
@@ -0,0 +1,37 @@
+package ru.soknight.imgbb.cache;
+
+import ru.soknight.imgbb.response.ResponseModelData;
+
+/**
+ * A storage of previously received response data keyed by the image content hash
+ * (combined with the upload parameters by the {@link DeduplicatingUploader}).
+ * <p>
+ * Implement it to plug a persistent storage (a file, a database etc.) into the {@link TieredUploadCache}.
+ * Implementations must be thread-safe.
+ * 
+ * @see MemoryUploadCache
+ * @see ContentHash
+ */
+public interface UploadCache {
+
+    /**
+     * Returns the response data of previously uploaded image with the same content.
+     * @param contentHash the image content hash.
+     * @return The cached response data or null if it's absent.
+     */
+    ResponseModelData get(String contentHash);
+    
+    /**
+     * Saves the response data of uploaded image.
+     * @param contentHash the image content hash.
+     * @param data the response data to save.
+     */
+    void put(String contentHash, ResponseModelData data);
+    
+    /**
+     * Removes the response data, for example when it's expired.
+     * @param contentHash the image content hash.
+     */
+    void remove(String contentHash);
+    
+}
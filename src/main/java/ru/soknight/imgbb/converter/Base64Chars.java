@@ -0,0 +1,72 @@
+package ru.soknight.imgbb.converter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A base64 encoded payload as character sequence, which is backed by the buffer with encoded bytes.
+ * <p>
+ * The base64 alphabet is ASCII, so each byte is a character and no conversion is needed
+ * until {@link Base64Chars#toString()} is called.
+ * 
+ * @see ParallelBase64Encoder#encodeToChars(ByteBuffer)
+ */
+public final class Base64Chars implements CharSequence {
+
+    private final ByteBuffer bytes;
+    
+    /**
+     * Wraps the remaining bytes of received buffer, the buffer isn't copied.
+     * @param bytes the buffer with base64 encoded bytes.
+     * 
+     * @throws IllegalArgumentException if received buffer is null.
+     */
+    public Base64Chars(ByteBuffer bytes) {
+        if(bytes == null)
+            throw new IllegalArgumentException("Specified buffer is null!");
+        
+        this.bytes = bytes.slice();
+    }
+    
+    /**
+     * Returns the encoded bytes as read-only buffer, it shares the content with this sequence.
+     * @return The buffer with encoded bytes, ready to be read.
+     */
+    public ByteBuffer asByteBuffer() {
+        return bytes.asReadOnlyBuffer();
+    }
+    
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+    
+    @Override
+    public char charAt(int index) {
+        if(index < 0 || index >= bytes.limit())
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for length " + bytes.limit() + "!");
+        
+        return (char) (bytes.get(index) & 0xFF);
+    }
+    
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(start < 0 || end > bytes.limit() || start > end)
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") is out of bounds for length " + bytes.limit() + "!");
+        
+        ByteBuffer range = bytes.duplicate();
+        range.position(start).limit(end);
+        return new Base64Chars(range);
+    }
+    
+    @Override
+    public String toString() {
+        if(bytes.hasArray())
+            return new String(bytes.array(), bytes.arrayOffset(), bytes.limit(), StandardCharsets.ISO_8859_1);
+        
+        byte[] content = new byte[bytes.limit()];
+        bytes.duplicate().get(content);
+        return new String(content, StandardCharsets.ISO_8859_1);
+    }
+    
+}
@@ -1,13 +1,17 @@
 package ru.soknight.imgbb.converter;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.Base64;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import javax.imageio.ImageIO;
 
+import ru.soknight.imgbb.source.ImageFormat;
+
 public class ImageBase64Converters {
 
     /*
@@ -35,10 +39,26 @@ public class ImageBase64Converters {
      * @throws RuntimeException when anyone I/O exception catches.
      */
     public static String fromBufferedImage(BufferedImage bufferedImage, String formatName) {
+        return fromBufferedImageToChars(bufferedImage, formatName).toString();
+    }
+    
+    /**
+     * Encodes a buffered image to base64 character sequence using specifed image format.
+     * <p>
+     * The written image isn't copied and large images are encoded in parallel,
+     * the result is backed by the buffer with encoded bytes.
+     * @param bufferedImage a buffered image to encode.
+     * @param formatName a name of the image format (png, jpeg etc.)
+     * @return The encoded base64 character sequence from received buffered image.
+     * 
+     * @throws RuntimeException when anyone I/O exception catches.
+     * @see ParallelBase64Encoder
+     */
+    public static Base64Chars fromBufferedImageToChars(BufferedImage bufferedImage, String formatName) {
         try {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ImageOutput output = new ImageOutput();
             ImageIO.write(bufferedImage, formatName, output);
-            return Base64.getEncoder().encodeToString(output.toByteArray());
+            return ParallelBase64Encoder.encodeToChars(output.asByteBuffer());
         } catch (IOException ex) {
             throw new RuntimeException("I/O exception was catched during encoding a buffered image!", ex);
         }
@@ -80,4 +100,83 @@ public class ImageBase64Converters {
         }
     }
     
+    /**
+     * Encodes an image file bytes to base64 string as is, without decoding and re-encoding of the image.
+     * <p>
+     * The image format is recognized by the file signature and the file is read as memory-mapped,
+     * so it's much cheaper than {@link ImageBase64Converters#fromImageFile(File)} and keeps the original quality.
+     * @param file an image file from the system.
+     * @return The encoded base64 string from received image file bytes.
+     * 
+     * @throws IllegalArgumentException if received file parameter is null.
+     * @throws IllegalArgumentException if received file is not exists.
+     * @throws IllegalArgumentException if received file isn't an image in supported format.
+     * 
+     * @throws RuntimeException when anyone I/O exception catches.
+     * @see ImageFormat#sniff(ByteBuffer)
+     */
+    public static String fromImageFileDirect(File file) {
+        if(file == null)
+            throw new IllegalArgumentException("Specified file is null!");
+        
+        if(!file.isFile())
+            throw new IllegalArgumentException("Specified file isn't exists in your system!");
+        
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE / 4 * 3)
+                throw new IllegalArgumentException("Specified file is too large to encode it to a string!");
+            
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if(ImageFormat.sniff(bytes) == null)
+                throw new IllegalArgumentException("Specified file isn't an image in supported format!");
+            
+            return ParallelBase64Encoder.encodeToChars(bytes).toString();
+        } catch (IOException ex) {
+            throw new RuntimeException("I/O exception was catched during encoding an image file!", ex);
+        }
+    }
+    
+    /**
+     * Encodes an image file bytes as is to base64 into a buffer, without decoding and re-encoding of the image.
+     * <p>
+     * The file is read as memory-mapped and large files are encoded in parallel, no string is created.
+     * @param file an image file from the system.
+     * @param destination the buffer to write the encoded bytes to or null to allocate a new heap buffer.
+     * @return The buffer with encoded bytes, ready to be read.
+     * 
+     * @throws IllegalArgumentException if received file parameter is null.
+     * @throws IllegalArgumentException if received file is not exists.
+     * @throws IllegalArgumentException if received file isn't an image in supported format.
+     * @throws IllegalArgumentException if received destination buffer is too small.
+     * 
+     * @throws RuntimeException when anyone I/O exception catches.
+     * @see ParallelBase64Encoder#encodedLength(long)
+     */
+    public static ByteBuffer fromImageFileToBuffer(File file, ByteBuffer destination) {
+        if(file == null)
+            throw new IllegalArgumentException("Specified file is null!");
+        
+        if(!file.isFile())
+            throw new IllegalArgumentException("Specified file isn't exists in your system!");
+        
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer target = destination != null ? destination : ByteBuffer.allocate(ParallelBase64Encoder.encodedLength(size));
+            
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if(ImageFormat.sniff(bytes) == null)
+                throw new IllegalArgumentException("Specified file isn't an image in supported format!");
+            
+            int start = target.position();
+            ParallelBase64Encoder.encode(bytes, target);
+            
+            ByteBuffer encoded = target.duplicate();
+            encoded.position(start).limit(target.position());
+            return encoded.slice();
+        } catch (IOException ex) {
+            throw new RuntimeException("I/O exception was catched during encoding an image file!", ex);
+        }
+    }
+    
 }
@@ -0,0 +1,26 @@
+package ru.soknight.imgbb.converter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream for the encoded images which exposes the written bytes without copying.
+ */
+public final class ImageOutput extends ByteArrayOutputStream {
+
+    /**
+     * Creates a new output with the initial capacity enough for a small image.
+     */
+    public ImageOutput() {
+        super(64 * 1024);
+    }
+    
+    /**
+     * Wraps the written bytes, the buffer is valid until the next write to this output.
+     * @return The buffer backed by the inner array of this output.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+    
+}
@@ -0,0 +1,230 @@
+package ru.soknight.imgbb.converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A base64 encoder of large payloads, which writes the encoded bytes into a {@link ByteBuffer}.
+ * <p>
+ * The payload is split into chunks aligned to 3 bytes, so each chunk is encoded to the own part
+ * of the destination without padding, and the chunks are encoded in parallel by a fork-join pool.
+ * Small payloads are encoded by the calling thread.
+ * <p>
+ * The chunks are encoded by the JDK encoder block by block, so the vectorized intrinsic
+ * of the JDK is used when it's available. The encoded bytes are ASCII, so the result may be
+ * used as a {@link CharSequence} without conversion to a string.
+ * 
+ * @see ParallelBase64Encoder#encode(ByteBuffer, ByteBuffer)
+ * @see ParallelBase64Encoder#encodeToChars(ByteBuffer)
+ */
+public final class ParallelBase64Encoder {
+
+    /**
+     * Minimal size of the chunk which is encoded by one task, smaller payloads aren't split.
+     * <p>
+     * Value is <b>{@value}</b>.
+     */
+    public static final int MIN_CHUNK_SIZE = 3 * 256 * 1024;
+    
+    // the block size to copy an off-heap source by, aligned to 3 bytes
+    private static final int BLOCK_SIZE = 3 * 16 * 1024;
+    
+    private ParallelBase64Encoder() {}
+    
+    /**
+     * Returns a length of the base64 encoded (with padding) payload.
+     * @param length the payload length in bytes.
+     * @return The encoded payload length in bytes.
+     * 
+     * @throws IllegalArgumentException if the encoded length is larger than a buffer may be.
+     */
+    public static int encodedLength(long length) {
+        long encoded = (length + 2) / 3 * 4;
+        if(length < 0 || encoded > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Specified payload is too large to encode it to a buffer!");
+        
+        return (int) encoded;
+    }
+    
+    /**
+     * Encodes the remaining source bytes to a new heap buffer using the common fork-join pool.
+     * @param source the payload to encode, its position is moved to the limit.
+     * @return The new buffer with the encoded bytes, ready to be read.
+     * 
+     * @see ParallelBase64Encoder#encode(ByteBuffer, ByteBuffer, ForkJoinPool)
+     */
+    public static ByteBuffer encode(ByteBuffer source) {
+        ByteBuffer destination = ByteBuffer.allocate(encodedLength(source.remaining()));
+        return encode(source, destination, ForkJoinPool.commonPool()).flip();
+    }
+    
+    /**
+     * Encodes the remaining source bytes to a caller-supplied buffer using the common fork-join pool.
+     * @param source the payload to encode, its position is moved to the limit.
+     * @param destination the buffer to write the encoded bytes from its position to, heap or direct.
+     * @return The destination buffer, its position is moved after the encoded bytes.
+     * 
+     * @see ParallelBase64Encoder#encode(ByteBuffer, ByteBuffer, ForkJoinPool)
+     */
+    public static ByteBuffer encode(ByteBuffer source, ByteBuffer destination) {
+        return encode(source, destination, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Encodes the remaining source bytes to a caller-supplied buffer.
+     * @param source the payload to encode, its position is moved to the limit.
+     * @param destination the buffer to write the encoded bytes from its position to, heap or direct.
+     * @param pool the pool to encode the chunks of large payloads by.
+     * @return The destination buffer, its position is moved after the encoded bytes.
+     * 
+     * @throws IllegalArgumentException if any of received parameters is null.
+     * @throws IllegalArgumentException if the destination buffer has less remaining bytes than required.
+     * @see ParallelBase64Encoder#encodedLength(long)
+     */
+    public static ByteBuffer encode(ByteBuffer source, ByteBuffer destination, ForkJoinPool pool) {
+        if(source == null)
+            throw new IllegalArgumentException("Specified source buffer is null!");
+        
+        if(destination == null)
+            throw new IllegalArgumentException("Specified destination buffer is null!");
+        
+        if(pool == null)
+            throw new IllegalArgumentException("Specified pool is null!");
+        
+        int length = source.remaining();
+        int encodedLength = encodedLength(length);
+        if(destination.remaining() < encodedLength)
+            throw new IllegalArgumentException("Specified destination buffer is too small, " + encodedLength + " bytes are required!");
+        
+        // a few chunks per worker to balance the load
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, alignToBlock(length / (pool.getParallelism() * 4)));
+        int chunks = (length + chunkSize - 1) / chunkSize;
+        
+        EncodeTask task = new EncodeTask(source, destination, chunkSize, 0, chunks);
+        if(chunks <= 1)
+            task.compute();
+        else
+            pool.invoke(task);
+        
+        source.position(source.limit());
+        destination.position(destination.position() + encodedLength);
+        return destination;
+    }
+    
+    /**
+     * Encodes the remaining source bytes to a character sequence using the common fork-join pool.
+     * @param source the payload to encode, its position is moved to the limit.
+     * @return The encoded payload as character sequence, which is backed by a heap buffer.
+     * 
+     * @see Base64Chars#asByteBuffer()
+     */
+    public static Base64Chars encodeToChars(ByteBuffer source) {
+        return new Base64Chars(encode(source));
+    }
+    
+    private static int alignToBlock(int length) {
+        return (length + 2) / 3 * 3;
+    }
+    
+    private static void encodeChunk(ByteBuffer source, int offset, int length, ByteBuffer destination, int destinationOffset) throws IOException {
+        ByteBuffer target = destination.duplicate();
+        target.position(destinationOffset);
+        
+        // the stream encoder encodes the array ranges in place, without copying them into a new array
+        try(OutputStream output = Base64.getEncoder().wrap(new BufferOutputStream(target))) {
+            if(source.hasArray()) {
+                output.write(source.array(), source.arrayOffset() + offset, length);
+                return;
+            }
+            
+            ByteBuffer input = source.duplicate();
+            input.position(offset).limit(offset + length);
+            byte[] block = new byte[Math.min(BLOCK_SIZE, length)];
+            while(input.hasRemaining()) {
+                int read = Math.min(block.length, input.remaining());
+                input.get(block, 0, read);
+                output.write(block, 0, read);
+            }
+        }
+    }
+    
+    /*
+     * Encodes the chunks in range [from; to), splits the range in halves while it has more than one chunk.
+     */
+    @SuppressWarnings("serial")
+    private static final class EncodeTask extends RecursiveAction {
+        
+        private final ByteBuffer source;
+        private final ByteBuffer destination;
+        private final int chunkSize;
+        private final int from;
+        private final int to;
+        
+        private EncodeTask(ByteBuffer source, ByteBuffer destination, int chunkSize, int from, int to) {
+            this.source = source;
+            this.destination = destination;
+            this.chunkSize = chunkSize;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if(to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new EncodeTask(source, destination, chunkSize, from, middle),
+                        new EncodeTask(source, destination, chunkSize, middle, to)
+                );
+                return;
+            }
+            
+            long start = (long) from * chunkSize;
+            int length = (int) Math.min(chunkSize, source.remaining() - start);
+            if(length <= 0)
+                return;
+            
+            try {
+                // chunks are aligned to 3 bytes, so each one takes exactly 4/3 of its length
+                encodeChunk(
+                        source,
+                        source.position() + (int) start,
+                        length,
+                        destination,
+                        destination.position() + (int) (start / 3 * 4)
+                );
+            } catch (IOException ex) {
+                throw new RuntimeException("I/O exception was catched during encoding a payload chunk!", ex);
+            }
+        }
+        
+    }
+    
+    /*
+     * An output stream which puts the bytes into a buffer.
+     */
+    private static final class BufferOutputStream extends OutputStream {
+        
+        private final ByteBuffer target;
+        
+        private BufferOutputStream(ByteBuffer target) {
+            this.target = target;
+        }
+        
+        @Override
+        public void write(int b) {
+            target.put((byte) b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target.put(b, off, len);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,83 @@
+package ru.soknight.imgbb.delete;
+
+/**
+ * Represents a result of one image deletion.
+ */
+public class DeleteResult {
+
+    /**
+     * A status of the image deletion.
+     */
+    public enum Status {
+        
+        /** The image was deleted by this request. */
+        DELETED,
+        /** The image doesn't exist, it was already deleted or expired. */
+        NOT_FOUND,
+        /** The image wasn't deleted, see the message for the reason. */
+        FAILED;
+        
+    }
+    
+    private final String deleteUrl;
+    private final Status status;
+    private final int statusCode;
+    private final String message;
+    
+    DeleteResult(String deleteUrl, Status status, int statusCode, String message) {
+        this.deleteUrl = deleteUrl;
+        this.status = status;
+        this.statusCode = statusCode;
+        this.message = message;
+    }
+    
+    /**
+     * Returns the delete URL which was used.
+     * @return The delete URL.
+     */
+    public String getDeleteUrl() {
+        return deleteUrl;
+    }
+    
+    /**
+     * Returns the deletion status.
+     * @return The deletion status.
+     */
+    public Status getStatus() {
+        return status;
+    }
+    
+    /**
+     * Checks if the image doesn't exist anymore, so there is nothing to delete.
+     * @return 'true' if the image was deleted now or before.
+     */
+    public boolean isGone() {
+        return status != Status.FAILED;
+    }
+    
+    /**
+     * Returns the status code of the last response.
+     * @return The response status code or -1 if there is no response.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
+    /**
+     * Returns the failure description.
+     * @return The failure message or null if there is no failure.
+     */
+    public String getMessage() {
+        return message;
+    }
+    
+    @Override
+    public String toString() {
+        return "DeleteResult{"
+                + "deleteUrl=" + deleteUrl + ", "
+                + "status=" + status + ", "
+                + "statusCode=" + statusCode + ", "
+                + "message=" + message + "}";
+    }
+    
+}
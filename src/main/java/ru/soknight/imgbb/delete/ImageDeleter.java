@@ -0,0 +1,424 @@
+package ru.soknight.imgbb.delete;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ru.soknight.imgbb.ratelimit.RateLimiter;
+import ru.soknight.imgbb.response.ResponseModelData;
+
+/**
+ * A deleter of the uploaded images by their delete URLs.
+ * <p>
+ * The API has no deletion method, so the deletion is done like on the website: the delete URL page
+ * is loaded to get the session authentication token, then the deletion is confirmed by the request
+ * to the website JSON endpoint. Each deletion keeps its own website session: the session cookies received
+ * with the page are sent with the confirmation explicitly, so the simultaneous deletions don't mix
+ * their sessions and tokens.
+ * <p>
+ * Bulk deletions are done asynchronously with a concurrency limit, each image has its own {@link DeleteResult},
+ * a failure of one image doesn't stop the others.
+ * <p>
+ * You must use the {@link ImageDeleter.Builder} to build a new deleter instance.
+ */
+public class ImageDeleter {
+
+    private static final String USER_AGENT = "Imgbb Java SDK";
+    private static final int TIMEOUT = 10000;
+    private static final Pattern AUTH_TOKEN = Pattern.compile("auth_token\\s*=\\s*[\"']([^\"']+)[\"']");
+    private static final Pattern STATUS_CODE = Pattern.compile("\"status_code\"\\s*:\\s*(\\d+)");
+    private static final Pattern MESSAGE = Pattern.compile("\"message\"\\s*:\\s*\"([^\"]*)\"");
+    
+    private final HttpClient httpClient;
+    private final String userAgent;
+    private final Duration timeout;
+    private final int maxConcurrentDeletes;
+    private final RateLimiter rateLimiter;
+    
+    private ImageDeleter(Builder builder) {
+        this.httpClient = builder.httpClient != null ? builder.httpClient : HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(builder.timeout))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.userAgent = builder.userAgent;
+        this.timeout = Duration.ofMillis(builder.timeout);
+        this.maxConcurrentDeletes = builder.maxConcurrentDeletes;
+        this.rateLimiter = builder.rateLimiter;
+    }
+    
+    /**
+     * Deletes the uploaded image.
+     * @param data the response data of the uploaded image.
+     * @return The deletion result.
+     * 
+     * @throws RuntimeException when the calling thread was interrupted.
+     * @see ImageDeleter#delete(String)
+     */
+    public DeleteResult delete(ResponseModelData data) {
+        return delete(data != null ? data.getDeleteUrl() : null);
+    }
+    
+    /**
+     * Deletes the image by its delete URL.
+     * @param deleteUrl the delete URL of the image (https://ibb.co/{id}/{hash}).
+     * @return The deletion result.
+     * 
+     * @throws RuntimeException when the calling thread was interrupted.
+     */
+    public DeleteResult delete(String deleteUrl) {
+        CompletableFuture<DeleteResult> future = deleteAsync(deleteUrl);
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted while try to delete image!", ex);
+        } catch (ExecutionException ex) {
+            // the deletion future is never failed, but it must be handled anyway
+            return failed(deleteUrl, -1, ex.getCause());
+        }
+    }
+    
+    /**
+     * Deletes the image by its delete URL asynchronously.
+     * @param deleteUrl the delete URL of the image (https://ibb.co/{id}/{hash}).
+     * @return The future which will be completed by the deletion result, it's never completed exceptionally.
+     */
+    public CompletableFuture<DeleteResult> deleteAsync(String deleteUrl) {
+        URI page;
+        try {
+            page = parseDeleteUrl(deleteUrl);
+        } catch (IllegalArgumentException ex) {
+            return CompletableFuture.completedFuture(new DeleteResult(deleteUrl, DeleteResult.Status.FAILED, -1, ex.getMessage()));
+        }
+        
+        return throttle()
+                .thenCompose(ignored -> httpClient.sendAsync(newRequest(page).GET().build(), BodyHandlers.ofString()))
+                .thenCompose(response -> confirm(deleteUrl, page, response))
+                .exceptionally(throwable -> failed(deleteUrl, -1, throwable));
+    }
+    
+    /**
+     * Deletes the uploaded images with the concurrency limit.
+     * @param images the response data of the uploaded images, for example from an upload journal or index.
+     * @return The future which will be completed by the deletion results in the completion order.
+     * 
+     * @see ImageDeleter#deleteAll(Iterator)
+     */
+    public CompletableFuture<List<DeleteResult>> deleteUploaded(Iterable<ResponseModelData> images) {
+        Iterator<ResponseModelData> iterator = images.iterator();
+        return deleteAll(new MappingIterator<>(iterator, ResponseModelData::getDeleteUrl));
+    }
+    
+    /**
+     * Deletes the images by their delete URLs with the concurrency limit.
+     * @param deleteUrls the delete URLs of the images.
+     * @return The future which will be completed by the deletion results in the completion order.
+     * 
+     * @see ImageDeleter#deleteAll(Iterator)
+     */
+    public CompletableFuture<List<DeleteResult>> deleteAll(Iterable<String> deleteUrls) {
+        return deleteAll(deleteUrls.iterator());
+    }
+    
+    /**
+     * Deletes the images by their delete URLs with the concurrency limit.
+     * <p>
+     * The URLs are pulled from the iterator only when there is a free slot, so it may be lazy and very long.
+     * @param deleteUrls the delete URLs of the images.
+     * @return The future which will be completed by the deletion results in the completion order.
+     */
+    public CompletableFuture<List<DeleteResult>> deleteAll(Iterator<String> deleteUrls) {
+        List<DeleteResult> results = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[maxConcurrentDeletes];
+        for(int i = 0; i < workers.length; i++)
+            workers[i] = runWorker(deleteUrls, results);
+        
+        return CompletableFuture.allOf(workers).thenApply(ignored -> results);
+    }
+    
+    private CompletableFuture<Void> runWorker(Iterator<String> deleteUrls, List<DeleteResult> results) {
+        String deleteUrl;
+        synchronized (deleteUrls) {
+            if(!deleteUrls.hasNext())
+                return CompletableFuture.completedFuture(null);
+            
+            deleteUrl = deleteUrls.next();
+        }
+        
+        // the next URL is taken asynchronously, so the failed ones don't grow the stack
+        return deleteAsync(deleteUrl)
+                .thenAccept(results::add)
+                .thenComposeAsync(ignored -> runWorker(deleteUrls, results));
+    }
+    
+    private CompletableFuture<DeleteResult> confirm(String deleteUrl, URI page, HttpResponse<String> response) {
+        int statusCode = response.statusCode();
+        if(statusCode == 404)
+            return CompletableFuture.completedFuture(new DeleteResult(deleteUrl, DeleteResult.Status.NOT_FOUND, statusCode, null));
+        
+        if(statusCode != 200)
+            return CompletableFuture.completedFuture(failed(deleteUrl, statusCode, "the delete page isn't available"));
+        
+        Matcher token = AUTH_TOKEN.matcher(response.body());
+        if(!token.find())
+            return CompletableFuture.completedFuture(failed(deleteUrl, statusCode, "the authentication token isn't found"));
+        
+        String[] segments = page.getPath().split("/");
+        String form = "auth_token=" + encode(token.group(1))
+                + "&pathname=" + encode(page.getPath())
+                + "&action=delete"
+                + "&delete=image"
+                + "&from=resource"
+                + "&deleting%5Bid%5D=" + encode(segments[1])
+                + "&deleting%5Bhash%5D=" + encode(segments[2]);
+        
+        HttpRequest.Builder request = newRequest(page.resolve("/json"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Referer", page.toString())
+                .POST(BodyPublishers.ofString(form));
+        
+        String cookies = getSessionCookies(response);
+        if(!cookies.isEmpty())
+            request.header("Cookie", cookies);
+        
+        HttpRequest confirmation = request.build();
+        
+        return throttle()
+                .thenCompose(ignored -> httpClient.sendAsync(confirmation, BodyHandlers.ofString()))
+                .thenApply(result -> readResult(deleteUrl, result));
+    }
+    
+    // the cookies of the redirects are collected as well, the later ones override the earlier ones
+    private static String getSessionCookies(HttpResponse<String> response) {
+        List<HttpResponse<String>> chain = new ArrayList<>();
+        for(Optional<HttpResponse<String>> current = Optional.of(response); current.isPresent(); current = current.get().previousResponse())
+            chain.add(0, current.get());
+        
+        Map<String, String> cookies = new LinkedHashMap<>();
+        for(HttpResponse<String> step : chain) {
+            for(String header : step.headers().allValues("Set-Cookie")) {
+                int end = header.indexOf(';');
+                String pair = (end >= 0 ? header.substring(0, end) : header).trim();
+                int separator = pair.indexOf('=');
+                if(separator > 0)
+                    cookies.put(pair.substring(0, separator), pair.substring(separator + 1));
+            }
+        }
+        
+        StringBuilder result = new StringBuilder();
+        cookies.forEach((name, value) -> {
+            if(result.length() > 0)
+                result.append("; ");
+            
+            result.append(name).append('=').append(value);
+        });
+        return result.toString();
+    }
+    
+    private static DeleteResult readResult(String deleteUrl, HttpResponse<String> response) {
+        Matcher code = STATUS_CODE.matcher(response.body());
+        int statusCode = code.find() ? Integer.parseInt(code.group(1)) : response.statusCode();
+        if(statusCode == 200)
+            return new DeleteResult(deleteUrl, DeleteResult.Status.DELETED, statusCode, null);
+        
+        if(statusCode == 404)
+            return new DeleteResult(deleteUrl, DeleteResult.Status.NOT_FOUND, statusCode, null);
+        
+        Matcher message = MESSAGE.matcher(response.body());
+        return failed(deleteUrl, statusCode, message.find() ? message.group(1) : "the deletion wasn't confirmed");
+    }
+    
+    private CompletableFuture<Void> throttle() {
+        long delay = rateLimiter != null ? rateLimiter.reserve() : 0L;
+        if(delay <= 0)
+            return CompletableFuture.completedFuture(null);
+        
+        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS));
+    }
+    
+    private HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("User-Agent", userAgent);
+    }
+    
+    private static URI parseDeleteUrl(String deleteUrl) {
+        if(deleteUrl == null)
+            throw new IllegalArgumentException("the delete URL is null");
+        
+        URI uri;
+        try {
+            uri = URI.create(deleteUrl);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("the delete URL is malformed");
+        }
+        
+        String path = uri.getPath();
+        if(uri.getHost() == null || path == null || path.split("/").length != 3)
+            throw new IllegalArgumentException("the delete URL must look like https://ibb.co/{id}/{hash}");
+        
+        return uri;
+    }
+    
+    private static DeleteResult failed(String deleteUrl, int statusCode, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String message = cause instanceof IOException
+                ? "I/O exception was catched while try to delete image: " + cause.getMessage()
+                : String.valueOf(cause);
+        return failed(deleteUrl, statusCode, message);
+    }
+    
+    private static DeleteResult failed(String deleteUrl, int statusCode, String message) {
+        return new DeleteResult(deleteUrl, DeleteResult.Status.FAILED, statusCode, message);
+    }
+    
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public String toString() {
+        return "ImageDeleter{"
+                + "timeout=" + timeout.toMillis() + ", "
+                + "maxConcurrentDeletes=" + maxConcurrentDeletes + "}";
+    }
+    
+    private static final class MappingIterator<T> implements Iterator<String> {
+        
+        private final Iterator<T> delegate;
+        private final Function<T, String> mapper;
+        
+        private MappingIterator(Iterator<T> delegate, Function<T, String> mapper) {
+            this.delegate = delegate;
+            this.mapper = mapper;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+        
+        @Override
+        public String next() {
+            T next = delegate.next();
+            return next != null ? mapper.apply(next) : null;
+        }
+        
+    }
+    
+    /**
+     * A builder for the {@link ImageDeleter}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private String userAgent = USER_AGENT;
+        private int timeout = TIMEOUT;
+        private int maxConcurrentDeletes = 8;
+        private RateLimiter rateLimiter;
+        private HttpClient httpClient;
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the 'User-Agent' header value of the requests.
+         * @param value the user agent to use.
+         * @return Current builder instance.
+         */
+        public Builder userAgent(String value) {
+            if(value == null || value.isEmpty())
+                throw new IllegalArgumentException("The user agent cannot be null or empty!");
+            
+            this.userAgent = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the connect and the request timeout <b>in milliseconds</b>, the default is 10000.
+         * @param value the timeout.
+         * @return Current builder instance.
+         */
+        public Builder timeout(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The timeout must be positive!");
+            
+            this.timeout = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of simultaneous deletions of the bulk operations, the default is 8.
+         * @param value the concurrency limit.
+         * @return Current builder instance.
+         */
+        public Builder maxConcurrentDeletes(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The concurrency limit must be positive!");
+            
+            this.maxConcurrentDeletes = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the rate limiter of the website requests, each deletion takes two tokens. There is no limit by default.
+         * @param value the rate limiter to use.
+         * @return Current builder instance.
+         */
+        public Builder rateLimiter(RateLimiter value) {
+            this.rateLimiter = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the HTTP client to send requests with, it shouldn't have a cookie handler, since the website
+         * session cookies are passed by each deletion itself.
+         * <p>
+         * The connect timeout setting is ignored if the HTTP client is specified.
+         * @param value the HTTP client to use.
+         * @return Current builder instance.
+         */
+        public Builder httpClient(HttpClient value) {
+            this.httpClient = value;
+            return this;
+        }
+        
+        /**
+         * Finishes a deleter building and returns builded deleter.
+         * @return Builded image deleter instance.
+         */
+        public ImageDeleter build() {
+            return new ImageDeleter(this);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,303 @@
+package ru.soknight.imgbb.directory;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ru.soknight.imgbb.batch.BatchResult;
+import ru.soknight.imgbb.source.ImageFormat;
+
+/*
+ * One running directory upload: the scanner thread counts the totals, the walker thread walks the tree
+ * again and filters the candidates for the batch feeder, the results are consumed by the iterator
+ * which reports the progress.
+ * 
+ * The scan only reads the directory entries, so it finishes long before the uploads and gives the ETA.
+ * Both walks skip the unreadable directories and the link loops, so they see the same tree.
+ */
+final class DirectoryExecution implements Iterator<BatchResult<Path>> {
+
+    private static final Object END = new Object();
+    private static final int WALK_QUEUE_CAPACITY = 64;
+
+    private final Path root;
+    private final int maxDepth;
+    private final Set<FileVisitOption> visitOptions;
+    private final long minSize;
+    private final long maxSize;
+    private final Set<ImageFormat> formats;
+    private final Consumer<UploadProgress> listener;
+    private final long reportInterval;
+    
+    // sizes of the files in the pipeline, they're removed when the results are consumed
+    private final Map<Path, Long> sizes;
+    private final AtomicLong filesFound;
+    private final AtomicLong bytesFound;
+    private final AtomicLong filesSkipped;
+    private final AtomicLong bytesSkipped;
+    private final BlockingQueue<Object> candidates;
+    private final Thread walker;
+    private final Thread scanner;
+    private volatile boolean scanFinished;
+    private volatile boolean cancelled;
+    
+    // these are changed by the consuming thread only
+    private Iterator<BatchResult<Path>> results;
+    private long filesUploaded;
+    private long filesFailed;
+    private long bytesProcessed;
+    private long startedAt;
+    private long reportedAt;
+    private boolean finished;
+    
+    DirectoryExecution(
+            Path root,
+            int maxDepth,
+            boolean followLinks,
+            long minSize,
+            long maxSize,
+            Set<ImageFormat> formats,
+            Consumer<UploadProgress> listener,
+            long reportInterval
+    ) {
+        this.root = root;
+        this.maxDepth = maxDepth;
+        this.visitOptions = followLinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.formats = formats;
+        this.listener = listener;
+        this.reportInterval = reportInterval;
+        
+        this.sizes = new ConcurrentHashMap<>();
+        this.filesFound = new AtomicLong();
+        this.bytesFound = new AtomicLong();
+        this.filesSkipped = new AtomicLong();
+        this.bytesSkipped = new AtomicLong();
+        
+        this.candidates = new ArrayBlockingQueue<>(WALK_QUEUE_CAPACITY);
+        this.walker = new Thread(this::feedCandidates, "imgbb-directory-walker");
+        this.walker.setDaemon(true);
+        this.scanner = new Thread(this::scan, "imgbb-directory-scanner");
+        this.scanner.setDaemon(true);
+    }
+    
+    Stream<Path> walk() {
+        walker.start();
+        Spliterator<Path> spliterator = Spliterators.spliteratorUnknownSize(
+                new CandidateIterator(), Spliterator.NONNULL | Spliterator.ORDERED
+        );
+        return StreamSupport.stream(spliterator, false);
+    }
+    
+    void start(Iterator<BatchResult<Path>> results) {
+        this.results = results;
+        this.startedAt = System.nanoTime();
+        this.reportedAt = startedAt;
+        scanner.start();
+    }
+    
+    void cancel() {
+        this.cancelled = true;
+        walker.interrupt();
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if(results.hasNext())
+            return true;
+        
+        if(!finished) {
+            this.finished = true;
+            report();
+        }
+        return false;
+    }
+    
+    @Override
+    public BatchResult<Path> next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+        
+        BatchResult<Path> result = results.next();
+        Long size = sizes.remove(result.getItem());
+        if(result.isSuccess() && result.getResponse().statusCode() == 200)
+            filesUploaded++;
+        else
+            filesFailed++;
+        
+        bytesProcessed += size != null ? size : 0L;
+        
+        long now = System.nanoTime();
+        if(now - reportedAt >= reportInterval * 1_000_000L)
+            report();
+        
+        return result;
+    }
+    
+    private boolean accept(Path file, BasicFileAttributes attributes) {
+        if(!matches(attributes))
+            return false;
+        
+        ImageFormat format;
+        try {
+            format = ImageFormat.sniff(file);
+        } catch (IOException ignored) {
+            // it's unreadable, so it cannot be uploaded anyway
+            format = null;
+        }
+        
+        if(format == null || !formats.contains(format)) {
+            filesSkipped.incrementAndGet();
+            bytesSkipped.addAndGet(attributes.size());
+            return false;
+        }
+        
+        sizes.put(file, attributes.size());
+        return true;
+    }
+    
+    private boolean matches(BasicFileAttributes attributes) {
+        return attributes.isRegularFile() && attributes.size() >= minSize && attributes.size() <= maxSize;
+    }
+    
+    private void scan() {
+        try {
+            walkTree((file, attributes) -> {
+                if(matches(attributes)) {
+                    filesFound.incrementAndGet();
+                    bytesFound.addAndGet(attributes.size());
+                }
+            });
+        } finally {
+            this.scanFinished = true;
+        }
+    }
+    
+    private void feedCandidates() {
+        try {
+            walkTree((file, attributes) -> {
+                if(!accept(file, attributes))
+                    return;
+                
+                try {
+                    candidates.put(file);
+                } catch (InterruptedException ex) {
+                    this.cancelled = true;
+                }
+            });
+        } finally {
+            // the feeder is interrupted by the batch on cancellation, so it doesn't wait for the end
+            try {
+                if(!cancelled)
+                    candidates.put(END);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+    
+    // the unreadable entries are skipped, so the walk never fails in the middle
+    private void walkTree(BiConsumer<Path, BasicFileAttributes> visitor) {
+        try {
+            Files.walkFileTree(root, visitOptions, maxDepth, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if(cancelled)
+                        return FileVisitResult.TERMINATE;
+                    
+                    visitor.accept(file, attributes);
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ignored) {
+            // the visitor doesn't throw, the failed entries are skipped
+        }
+    }
+    
+    private void report() {
+        long now = System.nanoTime();
+        this.reportedAt = now;
+        if(listener == null)
+            return;
+        
+        try {
+            listener.accept(snapshot(now));
+        } catch (RuntimeException ignored) {
+            // the broken listener mustn't stop the uploading
+        }
+    }
+    
+    private UploadProgress snapshot(long now) {
+        long skipped = filesSkipped.get();
+        long skippedBytes = bytesSkipped.get();
+        
+        // the uploading walk may overtake the scan
+        long processed = filesUploaded + filesFailed;
+        long files = Math.max(filesFound.get(), processed + skipped);
+        long bytes = Math.max(bytesFound.get(), bytesProcessed + skippedBytes);
+        long remaining = bytes - skippedBytes - bytesProcessed;
+        
+        return new UploadProgress(
+                files, bytes, scanFinished, filesUploaded, filesFailed, skipped,
+                bytesProcessed, remaining, (now - startedAt) / 1_000_000L
+        );
+    }
+    
+    /*
+     * Takes the accepted files from the walker thread, the interrupted feeder ends the input.
+     */
+    private final class CandidateIterator implements Iterator<Path> {
+        
+        private Object next;
+        
+        @Override
+        public boolean hasNext() {
+            if(next == null) {
+                try {
+                    next = candidates.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                    next = END;
+                }
+            }
+            return next != END;
+        }
+        
+        @Override
+        public Path next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+            
+            Path file = (Path) next;
+            next = null;
+            return file;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,366 @@
+package ru.soknight.imgbb.directory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ru.soknight.imgbb.ImgbbUploadClient;
+import ru.soknight.imgbb.batch.BatchResult;
+import ru.soknight.imgbb.batch.BatchUploader;
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.parameter.UploadTemplate;
+import ru.soknight.imgbb.source.ImageFormat;
+import ru.soknight.imgbb.source.ImageSource;
+
+/**
+ * An uploader of the image files from a directory tree, for example a camera dump.
+ * <p>
+ * The tree is walked lazily and the files are filtered by the size and by the format recognized from
+ * their signature, so the files with a wrong or missing extension are uploaded as well and the other files
+ * are skipped without decoding. The images are streamed from the files as is by the bounded pipeline of
+ * the {@link BatchUploader}, so the tree is never placed in memory entirely.
+ * <p>
+ * The progress (files and bytes rates, estimated remaining time) is reported to the listener while
+ * the results are consumed, the totals are counted by a separate fast walk of the tree.
+ * <p>
+ * You must use the {@link DirectoryUploader.Builder} to build a new uploader instance.
+ */
+public class DirectoryUploader implements AutoCloseable {
+
+    private final BatchUploader batchUploader;
+    private final UploadTemplate template;
+    private final Function<Path, String> imageName;
+    private final int maxDepth;
+    private final boolean followLinks;
+    private final long minSize;
+    private final long maxSize;
+    private final Set<ImageFormat> formats;
+    private final Consumer<UploadProgress> listener;
+    private final long reportInterval;
+    
+    private DirectoryUploader(Builder builder) {
+        this.batchUploader = new BatchUploader.Builder(builder.client)
+                .encodingThreads(builder.encodingThreads)
+                .maxConcurrentUploads(builder.maxConcurrentUploads)
+                .queueCapacity(builder.queueCapacity)
+                .build();
+        this.template = builder.template;
+        this.imageName = builder.imageName;
+        this.maxDepth = builder.maxDepth;
+        this.followLinks = builder.followLinks;
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.formats = EnumSet.copyOf(builder.formats);
+        this.listener = builder.listener;
+        this.reportInterval = builder.reportInterval;
+    }
+    
+    /**
+     * Uploads the accepted image files from the directory tree.
+     * <p>
+     * The files are uploaded while the returned stream is consumed, the progress listener is called
+     * from the consuming thread after the results and once more after the last one.
+     * @param directory a root directory of the tree.
+     * @return The lazy stream of file results in the completion order, closing of it cancels the uploading.
+     * 
+     * @throws IllegalArgumentException if received directory parameter is null.
+     * @throws IllegalArgumentException if received directory is not exists.
+     * @throws IllegalStateException when this uploader is already closed.
+     */
+    public Stream<BatchResult<Path>> upload(Path directory) {
+        if(directory == null)
+            throw new IllegalArgumentException("Specified directory is null!");
+        
+        if(!Files.isDirectory(directory))
+            throw new IllegalArgumentException("Specified directory isn't exists in your system!");
+        
+        DirectoryExecution execution = new DirectoryExecution(
+                directory, maxDepth, followLinks, minSize, maxSize, formats, listener, reportInterval
+        );
+        
+        Stream<BatchResult<Path>> results = batchUploader.upload(execution.walk(), this::createParameters);
+        execution.start(results.iterator());
+        
+        Spliterator<BatchResult<Path>> spliterator = Spliterators.spliteratorUnknownSize(
+                execution, Spliterator.NONNULL | Spliterator.ORDERED
+        );
+        return StreamSupport.stream(spliterator, false)
+                .onClose(execution::cancel)
+                .onClose(results::close);
+    }
+    
+    private UploadParameters createParameters(Path file) {
+        return new UploadParameters.Builder(template)
+                .imageSource(ImageSource.of(file))
+                .imageName(imageName != null ? imageName.apply(file) : null)
+                .build();
+    }
+    
+    /**
+     * Stops the encoding workers of the inner batch uploader, started uploads will fail to process remaining files.
+     */
+    @Override
+    public void close() {
+        batchUploader.close();
+    }
+    
+    private static String stripExtension(Path file) {
+        String filename = file.getFileName().toString();
+        int dot = filename.lastIndexOf('.');
+        return dot > 0 ? filename.substring(0, dot) : filename;
+    }
+    
+    /**
+     * A builder for the {@link DirectoryUploader}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private final ImgbbUploadClient client;
+        private UploadTemplate template;
+        private Function<Path, String> imageName;
+        private int maxDepth;
+        private boolean followLinks;
+        private long minSize;
+        private long maxSize;
+        private Set<ImageFormat> formats;
+        private Consumer<UploadProgress> listener;
+        private long reportInterval;
+        private int encodingThreads;
+        private int maxConcurrentUploads;
+        private int queueCapacity;
+        
+        /**
+         * Building of uploader starts from this step.
+         * @param client the client to upload images by.
+         * 
+         * @throws IllegalArgumentException if received client is null.
+         */
+        public Builder(ImgbbUploadClient client) {
+            if(client == null)
+                throw new IllegalArgumentException("Specified client is null!");
+            
+            this.client = client;
+            this.imageName = DirectoryUploader::stripExtension;
+            this.maxDepth = Integer.MAX_VALUE;
+            this.minSize = 1L;
+            this.maxSize = 32L * 1024 * 1024;
+            this.formats = EnumSet.allOf(ImageFormat.class);
+            this.reportInterval = 1000L;
+            this.encodingThreads = Runtime.getRuntime().availableProcessors();
+            this.maxConcurrentUploads = 16;
+            this.queueCapacity = 32;
+        }
+        
+        /**
+         * <b>[REQUIRED]</b>
+         * <p>
+         * Sets the template of the upload parameters (API key and expiration time) of the files.
+         * <p>
+         * It may be omitted if the client has a key pool.
+         * @param value the upload template.
+         * @return Current builder instance.
+         */
+        public Builder template(UploadTemplate value) {
+            if(value == null)
+                throw new IllegalArgumentException("The template cannot be null!");
+            
+            this.template = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the function which names the image by its file, the default is the file name without the extension.
+         * @param value the naming function, the images aren't named if it's null.
+         * @return Current builder instance.
+         */
+        public Builder imageName(Function<Path, String> value) {
+            this.imageName = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal depth of the walked directories, the default is unlimited.
+         * <p>
+         * The depth 1 means the files of the root directory only.
+         * @param value the walk depth.
+         * @return Current builder instance.
+         */
+        public Builder maxDepth(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The walk depth must be positive!");
+            
+            this.maxDepth = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets whether the symbolic links are followed, the default is 'false'.
+         * @param value 'true' to follow the links.
+         * @return Current builder instance.
+         */
+        public Builder followLinks(boolean value) {
+            this.followLinks = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the minimal size of the uploaded files <b>in bytes</b>, the default is 1.
+         * @param value the minimal file size.
+         * @return Current builder instance.
+         */
+        public Builder minSize(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The minimal file size cannot be negative!");
+            
+            this.minSize = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal size of the uploaded files <b>in bytes</b>, the default is 32 MiB (the site limit).
+         * @param value the maximal file size.
+         * @return Current builder instance.
+         */
+        public Builder maxSize(long value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The maximal file size must be positive!");
+            
+            this.maxSize = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the accepted image formats, the default is all the {@link ImageFormat} values.
+         * @param value the accepted formats.
+         * @return Current builder instance.
+         */
+        public Builder formats(ImageFormat... value) {
+            if(value == null || value.length == 0)
+                throw new IllegalArgumentException("The accepted formats cannot be empty!");
+            
+            this.formats = EnumSet.noneOf(ImageFormat.class);
+            for(ImageFormat format : value)
+                formats.add(format);
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the progress listener, which is called by the thread consuming the results.
+         * @param value the progress listener, may be null.
+         * @return Current builder instance.
+         */
+        public Builder listener(Consumer<UploadProgress> value) {
+            this.listener = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the minimal interval between the progress reports <b>in milliseconds</b>, the default is 1000.
+         * @param value the report interval.
+         * @return Current builder instance.
+         */
+        public Builder reportInterval(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The report interval cannot be negative!");
+            
+            this.reportInterval = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the amount of the workers to prepare the uploads, the default is the available processors amount.
+         * @param value the encoding threads amount.
+         * @return Current builder instance.
+         * 
+         * @see BatchUploader.Builder#encodingThreads(int)
+         */
+        public Builder encodingThreads(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The encoding threads amount must be positive!");
+            
+            this.encodingThreads = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of simultaneous uploads per directory, the default is 16.
+         * @param value the concurrent uploads limit.
+         * @return Current builder instance.
+         * 
+         * @see BatchUploader.Builder#maxConcurrentUploads(int)
+         */
+        public Builder maxConcurrentUploads(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The concurrent uploads limit must be positive!");
+            
+            this.maxConcurrentUploads = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the capacity of the queue between the preparing and the uploading stages, the default is 32.
+         * @param value the queue capacity.
+         * @return Current builder instance.
+         * 
+         * @see BatchUploader.Builder#queueCapacity(int)
+         */
+        public Builder queueCapacity(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The queue capacity must be positive!");
+            
+            this.queueCapacity = value;
+            return this;
+        }
+        
+        /**
+         * Finishes an uploader building and returns builded uploader.
+         * @return Builded directory uploader instance.
+         * 
+         * @throws IllegalArgumentException when the minimal file size is greater than the maximal one.
+         * @throws IllegalArgumentException if the template has no API key and the client has no key pool.
+         */
+        public DirectoryUploader build() {
+            if(minSize > maxSize)
+                throw new IllegalArgumentException("The minimal file size is greater than the maximal one!");
+            
+            if(template == null && client.hasApiKeyPool())
+                this.template = new UploadTemplate.Builder().build();
+            
+            if(template == null || template.getApiKey() == null && !client.hasApiKeyPool())
+                throw new IllegalArgumentException("The required template with API key isn't specified!");
+            
+            return new DirectoryUploader(this);
+        }
+        
+    }
+    
+}
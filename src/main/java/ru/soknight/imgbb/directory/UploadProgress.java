@@ -0,0 +1,177 @@
+package ru.soknight.imgbb.directory;
+
+/**
+ * An immutable snapshot of the directory uploading progress.
+ * <p>
+ * The totals are counted by a separate walk of the tree, which is usually much faster than the uploading,
+ * so they're growing until {@link UploadProgress#isScanFinished()} returns 'true'. The files which are
+ * found by the size, but then skipped as not images, are subtracted from the remaining amounts.
+ * The rates are averaged since the uploading start.
+ */
+public final class UploadProgress {
+
+    private final long filesFound;
+    private final long bytesFound;
+    private final boolean scanFinished;
+    private final long filesUploaded;
+    private final long filesFailed;
+    private final long filesSkipped;
+    private final long bytesProcessed;
+    private final long bytesRemaining;
+    private final long elapsedTime;
+    
+    UploadProgress(
+            long filesFound,
+            long bytesFound,
+            boolean scanFinished,
+            long filesUploaded,
+            long filesFailed,
+            long filesSkipped,
+            long bytesProcessed,
+            long bytesRemaining,
+            long elapsedTime
+    ) {
+        this.filesFound = filesFound;
+        this.bytesFound = bytesFound;
+        this.scanFinished = scanFinished;
+        this.filesUploaded = filesUploaded;
+        this.filesFailed = filesFailed;
+        this.filesSkipped = filesSkipped;
+        this.bytesProcessed = bytesProcessed;
+        this.bytesRemaining = bytesRemaining;
+        this.elapsedTime = elapsedTime;
+    }
+    
+    /**
+     * Returns the amount of the files which match the size limits found in the tree so far.
+     * @return The found files amount.
+     */
+    public long getFilesFound() {
+        return filesFound;
+    }
+    
+    /**
+     * Returns the whole size of the files which match the size limits found in the tree so far.
+     * @return The found files size in bytes.
+     */
+    public long getBytesFound() {
+        return bytesFound;
+    }
+    
+    /**
+     * Checks if the whole tree was walked, so the totals are final.
+     * @return 'true' if the totals are final or 'false' if they're still growing.
+     */
+    public boolean isScanFinished() {
+        return scanFinished;
+    }
+    
+    /**
+     * Returns the amount of the files which were uploaded with 200 status code.
+     * @return The uploaded files amount.
+     */
+    public long getFilesUploaded() {
+        return filesUploaded;
+    }
+    
+    /**
+     * Returns the amount of the files which were failed to upload.
+     * @return The failed files amount.
+     */
+    public long getFilesFailed() {
+        return filesFailed;
+    }
+    
+    /**
+     * Returns the amount of the files which were skipped as not images in accepted format.
+     * @return The skipped files amount.
+     */
+    public long getFilesSkipped() {
+        return filesSkipped;
+    }
+    
+    /**
+     * Returns the amount of the files which weren't processed yet.
+     * @return The remaining files amount.
+     */
+    public long getFilesRemaining() {
+        return Math.max(0L, filesFound - filesUploaded - filesFailed - filesSkipped);
+    }
+    
+    /**
+     * Returns the whole size of the uploaded and the failed files.
+     * @return The processed files size in bytes.
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+    
+    /**
+     * Returns the whole size of the files which weren't processed yet.
+     * @return The remaining files size in bytes.
+     */
+    public long getBytesRemaining() {
+        return bytesRemaining;
+    }
+    
+    /**
+     * Returns the time since the uploading start <b>in milliseconds</b>.
+     * @return The elapsed time.
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+    
+    /**
+     * Returns the average amount of the processed files per second.
+     * @return The files rate.
+     */
+    public double getFilesPerSecond() {
+        return elapsedTime > 0 ? (filesUploaded + filesFailed) * 1000D / elapsedTime : 0D;
+    }
+    
+    /**
+     * Returns the average amount of the processed bytes per second.
+     * @return The bytes rate.
+     */
+    public double getBytesPerSecond() {
+        return elapsedTime > 0 ? bytesProcessed * 1000D / elapsedTime : 0D;
+    }
+    
+    /**
+     * Estimates the time to process the remaining bytes with the current bytes rate.
+     * <p>
+     * It's a lower bound while the scan isn't finished.
+     * @return The estimated remaining time <b>in milliseconds</b> or -1 if nothing was processed yet.
+     */
+    public long getEstimatedTimeRemaining() {
+        double bytesPerSecond = getBytesPerSecond();
+        if(bytesPerSecond <= 0D)
+            return -1L;
+        
+        return Math.round(bytesRemaining * 1000D / bytesPerSecond);
+    }
+    
+    /**
+     * Checks if all the found files were processed and the scan is finished.
+     * @return 'true' if the uploading is done or 'false' otherwise.
+     */
+    public boolean isDone() {
+        return scanFinished && getFilesRemaining() == 0;
+    }
+    
+    @Override
+    public String toString() {
+        return "UploadProgress{"
+                + "filesFound=" + filesFound + ", "
+                + "bytesFound=" + bytesFound + ", "
+                + "scanFinished=" + scanFinished + ", "
+                + "filesUploaded=" + filesUploaded + ", "
+                + "filesFailed=" + filesFailed + ", "
+                + "filesSkipped=" + filesSkipped + ", "
+                + "bytesProcessed=" + bytesProcessed + ", "
+                + "bytesRemaining=" + bytesRemaining + ", "
+                + "elapsedTime=" + elapsedTime + "}";
+    }
+    
+}
@@ -0,0 +1,417 @@
+package ru.soknight.imgbb.expiry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+import ru.soknight.imgbb.ImgbbUploadClient;
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.response.OptionalResponse;
+import ru.soknight.imgbb.response.ResponseModel;
+import ru.soknight.imgbb.response.ResponseModelData;
+
+/**
+ * A background scheduler which re-uploads the images or notifies the listener before their URLs expire.
+ * <p>
+ * The tracked images are kept in one priority queue ordered by the due time (the URLs expiration
+ * minus the lead time), and the only scheduler thread sleeps until the nearest due time,
+ * so millions of images don't need millions of timers. The due images are taken in batches
+ * and re-uploaded by the client asynchronously with a concurrency limit, so the client
+ * rate limiter and retry policy are applied as usual. An image stays tracked while it's re-uploaded,
+ * so it may be untracked meanwhile, then the new image isn't tracked.
+ * <p>
+ * The images which never expire aren't tracked.
+ * <p>
+ * You must use the {@link ExpirationScheduler.Builder} to build a new scheduler instance.
+ */
+public class ExpirationScheduler implements AutoCloseable {
+
+    private final ImgbbUploadClient client;
+    private final long leadTime;
+    private final long retryDelay;
+    private final int batchSize;
+    private final Listener listener;
+    private final Semaphore permits;
+    
+    private final PriorityQueue<TrackedImage> queue;
+    private final Map<String, TrackedImage> tracked;
+    private final Thread worker;
+    private volatile boolean running;
+    
+    private ExpirationScheduler(Builder builder) {
+        this.client = builder.client;
+        this.leadTime = builder.leadTime;
+        this.retryDelay = builder.retryDelay;
+        this.batchSize = builder.batchSize;
+        this.listener = builder.listener;
+        this.permits = new Semaphore(builder.maxConcurrentUploads);
+        
+        this.queue = new PriorityQueue<>();
+        this.tracked = new HashMap<>();
+        this.worker = new Thread(this::run, "imgbb-expiration-scheduler");
+        this.worker.setDaemon(true);
+    }
+    
+    /**
+     * Starts the scheduler thread.
+     * @return Current scheduler instance.
+     * 
+     * @throws IllegalStateException when this scheduler is already started.
+     */
+    public synchronized ExpirationScheduler start() {
+        if(worker.getState() != Thread.State.NEW)
+            throw new IllegalStateException("This scheduler is already started!");
+        
+        this.running = true;
+        worker.start();
+        return this;
+    }
+    
+    /**
+     * Tracks the uploaded image to notify the listener before its URLs expire.
+     * @param data the response data of the uploaded image.
+     * @return 'true' if the image is tracked or 'false' if its URLs never expire.
+     * 
+     * @see ExpirationScheduler#track(ResponseModelData, UploadParameters)
+     */
+    public boolean track(ResponseModelData data) {
+        return track(data, null);
+    }
+    
+    /**
+     * Tracks the uploaded image to re-upload it before its URLs expire.
+     * <p>
+     * The image is tracked by its ID, so the previous tracking of the same image is replaced.
+     * @param data the response data of the uploaded image.
+     * @param parameters the parameters to upload the image again, may be null to notify the listener only.
+     * @return 'true' if the image is tracked or 'false' if its URLs never expire.
+     * 
+     * @throws IllegalArgumentException if received data or its image ID is null.
+     * @throws IllegalArgumentException if received parameters cannot be uploaded again.
+     */
+    public boolean track(ResponseModelData data, UploadParameters parameters) {
+        if(data == null || data.getID() == null)
+            throw new IllegalArgumentException("Specified response data or its image ID is null!");
+        
+        if(parameters != null && !parameters.isReplayable())
+            throw new IllegalArgumentException("Specified parameters have an image which cannot be read again!");
+        
+        TrackedImage image = newTrackedImage(data, parameters);
+        if(image == null)
+            return false;
+        
+        schedule(image);
+        return true;
+    }
+    
+    /**
+     * Stops tracking of the image, for example after it was deleted from website.
+     * @param id the image ID.
+     * @return 'true' if the image was tracked.
+     */
+    public synchronized boolean untrack(String id) {
+        TrackedImage image = tracked.remove(id);
+        if(image == null)
+            return false;
+        
+        // the queue removal is linear, so the image is skipped when it's taken instead
+        image.cancelled = true;
+        return true;
+    }
+    
+    /**
+     * Returns the amount of the tracked images.
+     * @return The tracked images amount.
+     */
+    public synchronized int getTrackedCount() {
+        return tracked.size();
+    }
+    
+    /**
+     * Stops the scheduler thread, the re-uploads in flight are completed in the background.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        worker.interrupt();
+    }
+    
+    // returns null if the image URLs never expire
+    private TrackedImage newTrackedImage(ResponseModelData data, UploadParameters parameters) {
+        long expiresAt = data.getExpirationTimestamp() * 1000L;
+        return expiresAt > 0L ? new TrackedImage(data, parameters, expiresAt - leadTime) : null;
+    }
+    
+    private synchronized void schedule(TrackedImage image) {
+        TrackedImage previous = tracked.put(image.data.getID(), image);
+        if(previous != null)
+            previous.cancelled = true;
+        
+        queue.add(image);
+        // the scheduler thread may sleep until the later time
+        if(queue.peek() == image)
+            notifyAll();
+    }
+    
+    private void run() {
+        try {
+            while(running) {
+                for(TrackedImage image : takeDueBatch())
+                    process(image);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+    
+    private synchronized List<TrackedImage> takeDueBatch() throws InterruptedException {
+        while(true) {
+            TrackedImage head = queue.peek();
+            if(head != null && head.cancelled) {
+                queue.poll();
+                continue;
+            }
+            
+            long now = System.currentTimeMillis();
+            if(head != null && head.dueAt <= now)
+                break;
+            
+            wait(head != null ? head.dueAt - now : 0L);
+        }
+        
+        long now = System.currentTimeMillis();
+        List<TrackedImage> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+        while(batch.size() < batchSize && !queue.isEmpty() && queue.peek().dueAt <= now) {
+            TrackedImage image = queue.poll();
+            if(image.cancelled)
+                continue;
+            
+            // the re-uploaded image stays tracked until its re-upload is finished
+            if(image.parameters == null)
+                tracked.remove(image.data.getID(), image);
+            
+            batch.add(image);
+        }
+        return batch;
+    }
+    
+    private void process(TrackedImage image) throws InterruptedException {
+        if(image.parameters == null) {
+            notifyListener(() -> listener.expiring(image.data));
+            return;
+        }
+        
+        permits.acquire();
+        client.uploadAsync(image.parameters).whenComplete((response, throwable) -> {
+            permits.release();
+            Throwable error = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            ResponseModel model = response != null && response.isPresent() ? response.get() : null;
+            if(model != null && model.isUploadedSuccess() && model.getResponseData() != null) {
+                ResponseModelData current = model.getResponseData();
+                finish(image, current.getID() != null ? newTrackedImage(current, image.parameters) : null);
+                notifyListener(() -> listener.reuploaded(image.data, current));
+                return;
+            }
+            
+            // the old URLs are still alive, so the image is repeated later
+            long retryAt = System.currentTimeMillis() + retryDelay;
+            finish(image, retryAt < image.data.getExpirationTimestamp() * 1000L ? new TrackedImage(image.data, image.parameters, retryAt) : null);
+            notifyListener(() -> listener.reuploadFailed(image.data, response, error));
+        });
+    }
+    
+    // the next image isn't scheduled if the re-uploaded one was untracked or replaced meanwhile
+    private synchronized void finish(TrackedImage image, TrackedImage next) {
+        if(image.cancelled)
+            return;
+        
+        tracked.remove(image.data.getID(), image);
+        if(next != null)
+            schedule(next);
+    }
+    
+    private void notifyListener(Runnable notification) {
+        try {
+            notification.run();
+        } catch (RuntimeException ignored) {
+            // the broken listener mustn't stop the scheduler
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "ExpirationScheduler{"
+                + "leadTime=" + leadTime + ", "
+                + "batchSize=" + batchSize + ", "
+                + "tracked=" + getTrackedCount() + "}";
+    }
+    
+    /**
+     * A listener of the expiration events, all the methods are called by the scheduler or the client threads.
+     */
+    public interface Listener {
+        
+        /**
+         * Called when the URLs of the image tracked without parameters will expire within the lead time.
+         * @param data the response data of the image.
+         */
+        default void expiring(ResponseModelData data) {}
+        
+        /**
+         * Called when the image was uploaded again, the new image is tracked instead of the previous one
+         * unless the previous one was untracked while it was uploaded.
+         * @param previous the response data of the previous upload.
+         * @param current the response data of the new upload.
+         */
+        default void reuploaded(ResponseModelData previous, ResponseModelData current) {}
+        
+        /**
+         * Called when the image cannot be uploaded again, it's repeated after the retry delay if
+         * the previous URLs are still alive and it wasn't untracked while it was uploaded.
+         * @param previous the response data of the previous upload.
+         * @param response the failed response or null if it wasn't received.
+         * @param error the exception which was thrown or null if the response was received.
+         */
+        default void reuploadFailed(ResponseModelData previous, OptionalResponse response, Throwable error) {}
+        
+    }
+    
+    private static final class TrackedImage implements Comparable<TrackedImage> {
+        
+        private final ResponseModelData data;
+        private final UploadParameters parameters;
+        private final long dueAt;
+        private volatile boolean cancelled;
+        
+        private TrackedImage(ResponseModelData data, UploadParameters parameters, long dueAt) {
+            this.data = data;
+            this.parameters = parameters;
+            this.dueAt = dueAt;
+        }
+        
+        @Override
+        public int compareTo(TrackedImage other) {
+            return Long.compare(dueAt, other.dueAt);
+        }
+        
+    }
+    
+    /**
+     * A builder for the {@link ExpirationScheduler}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private final ImgbbUploadClient client;
+        private long leadTime;
+        private long retryDelay;
+        private int batchSize;
+        private int maxConcurrentUploads;
+        private Listener listener;
+        
+        /**
+         * Building of scheduler starts from this step.
+         * @param client the client to upload images by.
+         * 
+         * @throws IllegalArgumentException if received client is null.
+         */
+        public Builder(ImgbbUploadClient client) {
+            if(client == null)
+                throw new IllegalArgumentException("Specified client is null!");
+            
+            this.client = client;
+            this.leadTime = 3_600_000L;
+            this.retryDelay = 60_000L;
+            this.batchSize = 64;
+            this.maxConcurrentUploads = 8;
+            this.listener = new Listener() {};
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the time <b>in milliseconds</b> before the URLs expiration to process the image, the default is 3600000.
+         * @param value the lead time.
+         * @return Current builder instance.
+         */
+        public Builder leadTime(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The lead time cannot be negative!");
+            
+            this.leadTime = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the delay <b>in milliseconds</b> before the failed re-upload is repeated, the default is 60000.
+         * @param value the retry delay.
+         * @return Current builder instance.
+         */
+        public Builder retryDelay(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The retry delay cannot be negative!");
+            
+            this.retryDelay = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of the due images which are taken from the queue at once, the default is 64.
+         * @param value the batch size.
+         * @return Current builder instance.
+         */
+        public Builder batchSize(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The batch size must be positive!");
+            
+            this.batchSize = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of simultaneous re-uploads, the default is 8.
+         * @param value the concurrency limit.
+         * @return Current builder instance.
+         */
+        public Builder maxConcurrentUploads(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The concurrency limit must be positive!");
+            
+            this.maxConcurrentUploads = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the listener of the expiration events.
+         * @param value the listener to notify.
+         * @return Current builder instance.
+         */
+        public Builder listener(Listener value) {
+            if(value == null)
+                throw new IllegalArgumentException("The listener cannot be null!");
+            
+            this.listener = value;
+            return this;
+        }
+        
+        /**
+         * Finishes a scheduler building and returns builded scheduler.
+         * @return Builded expiration scheduler instance, it must be {@link ExpirationScheduler#start() started}.
+         */
+        public ExpirationScheduler build() {
+            return new ExpirationScheduler(this);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,137 @@
+package ru.soknight.imgbb.flow;
+
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+import ru.soknight.imgbb.ImgbbUploadClient;
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.parameter.UploadTemplate;
+import ru.soknight.imgbb.response.OptionalResponse;
+import ru.soknight.imgbb.source.ImageSource;
+
+/**
+ * An uploader with the {@link Flow} API, which may be bridged to any Reactive Streams library.
+ * <p>
+ * The returned publisher subscribes to the input publisher for each own subscriber and uploads its items
+ * asynchronously by the client. The input items are requested only when there is a free upload slot
+ * and the downstream demand for their results, so the items in flight and the not delivered results
+ * never exceed the concurrency limit. The results are published in the completion order.
+ * <p>
+ * Cancellation of the subscription cancels the input subscription and aborts the uploads in flight.
+ * An exception of any upload or the input error terminates the results with {@code onError}.
+ * <p>
+ * You must use the {@link FlowUploader.Builder} to build a new uploader instance.
+ */
+public class FlowUploader {
+
+    private final ImgbbUploadClient client;
+    private final int maxConcurrentUploads;
+    
+    private FlowUploader(Builder builder) {
+        this.client = builder.client;
+        this.maxConcurrentUploads = builder.maxConcurrentUploads;
+    }
+    
+    /**
+     * Uploads already prepared parameters.
+     * @param parameters the publisher of parameters to upload.
+     * @return The publisher of upload responses.
+     * 
+     * @see FlowUploader#upload(Flow.Publisher, Function)
+     */
+    public Flow.Publisher<OptionalResponse> upload(Flow.Publisher<UploadParameters> parameters) {
+        return upload(parameters, Function.identity());
+    }
+    
+    /**
+     * Uploads the images from the publisher with the same template parameters.
+     * @param images the publisher of images to upload.
+     * @param template the template of the upload parameters.
+     * @return The publisher of upload responses.
+     * 
+     * @throws IllegalArgumentException if received template is null.
+     * @see FlowUploader#upload(Flow.Publisher, Function)
+     */
+    public Flow.Publisher<OptionalResponse> upload(Flow.Publisher<? extends ImageSource> images, UploadTemplate template) {
+        if(template == null)
+            throw new IllegalArgumentException("Specified template is null!");
+        
+        return upload(images, template::withImage);
+    }
+    
+    /**
+     * Creates parameters from the publisher items and uploads them.
+     * @param <T> the type of the input items.
+     * @param items the publisher of items to upload.
+     * @param encoder a function to create parameters from the item, it's called by the input publisher thread.
+     * @return The publisher of upload responses.
+     * 
+     * @throws IllegalArgumentException if any of received parameters is null.
+     */
+    public <T> Flow.Publisher<OptionalResponse> upload(Flow.Publisher<T> items, Function<? super T, UploadParameters> encoder) {
+        if(items == null || encoder == null)
+            throw new IllegalArgumentException("Specified publisher or encoder is null!");
+        
+        return subscriber -> {
+            if(subscriber == null)
+                throw new NullPointerException("Specified subscriber is null!");
+            
+            UploadSubscription<T> subscription = new UploadSubscription<>(client, encoder, maxConcurrentUploads, subscriber);
+            subscriber.onSubscribe(subscription);
+            items.subscribe(subscription);
+        };
+    }
+    
+    @Override
+    public String toString() {
+        return "FlowUploader{maxConcurrentUploads=" + maxConcurrentUploads + "}";
+    }
+    
+    /**
+     * A builder for the {@link FlowUploader}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private final ImgbbUploadClient client;
+        private int maxConcurrentUploads;
+        
+        /**
+         * Building of uploader starts from this step.
+         * @param client the client to upload images by.
+         * 
+         * @throws IllegalArgumentException if received client is null.
+         */
+        public Builder(ImgbbUploadClient client) {
+            if(client == null)
+                throw new IllegalArgumentException("Specified client is null!");
+            
+            this.client = client;
+            this.maxConcurrentUploads = 16;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of simultaneous uploads per subscription, the default is 16.
+         * @param value the concurrency limit.
+         * @return Current builder instance.
+         */
+        public Builder maxConcurrentUploads(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The concurrency limit must be positive!");
+            
+            this.maxConcurrentUploads = value;
+            return this;
+        }
+        
+        /**
+         * Finishes an uploader building and returns builded uploader.
+         * @return Builded flow uploader instance.
+         */
+        public FlowUploader build() {
+            return new FlowUploader(this);
+        }
+        
+    }
+    
+}
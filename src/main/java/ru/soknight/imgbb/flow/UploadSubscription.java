@@ -0,0 +1,258 @@
+package ru.soknight.imgbb.flow;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+import ru.soknight.imgbb.ImgbbUploadClient;
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.response.OptionalResponse;
+
+/*
+ * One subscription of the flow uploader: the subscriber of the input items and
+ * the subscription of the downstream results at the same time.
+ * 
+ * The items requested from the input, the uploads in flight and the buffered results
+ * are counted together and kept within the smaller of the concurrency limit and the
+ * downstream demand. All the signals go through the drain loop, which is executed
+ * by one thread at a time, so the downstream signals and the upstream requests and
+ * cancellation are serialized.
+ */
+final class UploadSubscription<T> implements Flow.Subscriber<T>, Flow.Subscription {
+
+    private final ImgbbUploadClient client;
+    private final Function<? super T, UploadParameters> encoder;
+    private final int maxConcurrentUploads;
+    private final Flow.Subscriber<? super OptionalResponse> downstream;
+    
+    private final Queue<OptionalResponse> results;
+    private final Set<CompletableFuture<OptionalResponse>> uploads;
+    private Flow.Subscription upstream;
+    private long demand;
+    private long requested;
+    private boolean inputDone;
+    private Throwable error;
+    private boolean terminated;
+    private boolean inputCancelled;
+    
+    private boolean draining;
+    private boolean missed;
+    
+    UploadSubscription(
+            ImgbbUploadClient client,
+            Function<? super T, UploadParameters> encoder,
+            int maxConcurrentUploads,
+            Flow.Subscriber<? super OptionalResponse> downstream
+    ) {
+        this.client = client;
+        this.encoder = encoder;
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.downstream = downstream;
+        this.results = new ArrayDeque<>();
+        this.uploads = new HashSet<>();
+    }
+    
+    /*
+     * INPUT
+     */
+    
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        boolean accepted;
+        synchronized (this) {
+            accepted = upstream == null && !terminated;
+            if(accepted)
+                this.upstream = subscription;
+        }
+        
+        if(!accepted) {
+            subscription.cancel();
+            return;
+        }
+        drain();
+    }
+    
+    @Override
+    public void onNext(T item) {
+        synchronized (this) {
+            if(terminated)
+                return;
+            
+            requested--;
+        }
+        
+        CompletableFuture<OptionalResponse> upload;
+        try {
+            upload = client.uploadAsync(encoder.apply(item));
+        } catch (RuntimeException ex) {
+            upload = CompletableFuture.failedFuture(ex);
+        }
+        
+        synchronized (this) {
+            if(terminated) {
+                upload.cancel(true);
+                return;
+            }
+            uploads.add(upload);
+        }
+        
+        CompletableFuture<OptionalResponse> future = upload;
+        future.whenComplete((response, throwable) -> {
+            synchronized (this) {
+                if(!uploads.remove(future))
+                    return;
+                
+                if(throwable == null)
+                    results.add(response);
+                else if(error == null)
+                    error = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            }
+            drain();
+        });
+    }
+    
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this) {
+            if(error == null)
+                this.error = throwable;
+        }
+        drain();
+    }
+    
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            this.inputDone = true;
+        }
+        drain();
+    }
+    
+    /*
+     * OUTPUT
+     */
+    
+    @Override
+    public void request(long n) {
+        synchronized (this) {
+            if(n <= 0) {
+                if(error == null)
+                    this.error = new IllegalArgumentException("The requested amount must be positive!");
+            } else {
+                long total = demand + n;
+                this.demand = total < 0 ? Long.MAX_VALUE : total;
+            }
+        }
+        drain();
+    }
+    
+    @Override
+    public void cancel() {
+        terminate();
+    }
+    
+    /*
+     * DRAINING
+     */
+    
+    private void drain() {
+        synchronized (this) {
+            if(draining) {
+                this.missed = true;
+                return;
+            }
+            this.draining = true;
+        }
+        
+        while(true) {
+            OptionalResponse next = null;
+            Throwable failure = null;
+            boolean complete = false;
+            long toRequest = 0L;
+            boolean cancel = false;
+            Flow.Subscription input;
+            
+            synchronized (this) {
+                input = upstream;
+                if(terminated) {
+                    cancel = input != null && !inputCancelled;
+                    this.inputCancelled = input != null;
+                    this.draining = false;
+                    if(!cancel)
+                        return;
+                } else if(error != null) {
+                    failure = error;
+                } else if(!results.isEmpty() && demand > 0) {
+                    next = results.poll();
+                    if(demand != Long.MAX_VALUE)
+                        demand--;
+                } else if(inputDone && uploads.isEmpty() && results.isEmpty()) {
+                    complete = true;
+                } else if(input != null && !inputDone) {
+                    long pipeline = requested + uploads.size() + results.size();
+                    toRequest = Math.max(0L, Math.min(maxConcurrentUploads, demand) - pipeline);
+                    this.requested += toRequest;
+                }
+            }
+                    
+            // the upstream is signalled by the drain owner only, so its calls are serialized
+            if(cancel) {
+                input.cancel();
+                return;
+            }
+            
+            if(failure != null) {
+                terminate();
+                downstream.onError(failure);
+                continue;
+            }
+            
+            if(complete) {
+                terminate();
+                downstream.onComplete();
+                continue;
+            }
+            
+            if(next != null) {
+                downstream.onNext(next);
+                continue;
+            }
+            
+            if(toRequest > 0)
+                input.request(toRequest);
+            
+            synchronized (this) {
+                if(!missed) {
+                    this.draining = false;
+                    return;
+                }
+                this.missed = false;
+            }
+        }
+    }
+    
+    // the upstream is cancelled by the drain loop
+    private void terminate() {
+        List<CompletableFuture<OptionalResponse>> running;
+        synchronized (this) {
+            if(terminated)
+                return;
+            
+            this.terminated = true;
+            running = new ArrayList<>(uploads);
+            uploads.clear();
+            results.clear();
+        }
+        
+        running.forEach(upload -> upload.cancel(true));
+        drain();
+    }
+    
+}
@@ -0,0 +1,25 @@
+package ru.soknight.imgbb.hedge;
+
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.response.OptionalResponse;
+
+/**
+ * A listener of the duplicated images which were uploaded by the losing hedged requests.
+ * <p>
+ * The losing request is cancelled, but it may be completed successfully anyway, then its image stays
+ * on the site. It's called by the client executor with the parsed response of such request, so the image
+ * may be deleted by its delete URL, e.g. using the {@link ru.soknight.imgbb.delete.ImageDeleter}.
+ * 
+ * @see HedgingPolicy.Builder#duplicateListener(DuplicateListener)
+ */
+@FunctionalInterface
+public interface DuplicateListener {
+
+    /**
+     * Called with the successful response of the losing hedged request.
+     * @param parameters the parameters of the uploaded image.
+     * @param response the response of the duplicated upload.
+     */
+    void duplicated(UploadParameters parameters, OptionalResponse response);
+    
+}
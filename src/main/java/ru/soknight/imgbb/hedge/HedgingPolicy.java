@@ -0,0 +1,286 @@
+package ru.soknight.imgbb.hedge;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A policy of the request hedging and the adaptive request timeouts, both are based on the observed latencies.
+ * <p>
+ * When an attempt isn't responded within the hedge percentile of the recent latencies, the same request
+ * is sent once more and the first successful response is taken, the other request is cancelled.
+ * The request timeout is the timeout percentile of the recent latencies multiplied by the timeout multiplier,
+ * but not more than the client read timeout.
+ * <p>
+ * Note that an upload isn't an idempotent operation, so a hedged upload may lead to the duplicated image
+ * on the site when both requests are completed. Only the replayable images are hedged, and the responses
+ * of the duplicated uploads are passed to the {@link DuplicateListener}, so they may be deleted.
+ * Until the enough samples are collected, neither hedging nor adaptive timeouts are applied.
+ * <p>
+ * You must use the {@link HedgingPolicy.Builder} to build a new policy instance.
+ */
+public class HedgingPolicy {
+
+    private final int maxHedges;
+    private final double hedgePercentile;
+    private final long minHedgeDelay;
+    private final boolean adaptiveTimeout;
+    private final double timeoutPercentile;
+    private final double timeoutMultiplier;
+    private final long minTimeout;
+    private final long minSamples;
+    private final long window;
+    private final DuplicateListener duplicateListener;
+    
+    private HedgingPolicy(Builder builder) {
+        this.maxHedges = builder.maxHedges;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.minHedgeDelay = builder.minHedgeDelay;
+        this.adaptiveTimeout = builder.adaptiveTimeout;
+        this.timeoutPercentile = builder.timeoutPercentile;
+        this.timeoutMultiplier = builder.timeoutMultiplier;
+        this.minTimeout = builder.minTimeout;
+        this.minSamples = builder.minSamples;
+        this.window = builder.window;
+        this.duplicateListener = builder.duplicateListener;
+    }
+    
+    /**
+     * Creates a new latency histogram with the window of this policy.
+     * @return The new histogram instance.
+     */
+    public LatencyHistogram newHistogram() {
+        return new LatencyHistogram(window);
+    }
+    
+    /**
+     * Returns the maximal amount of the additional requests per attempt.
+     * @return The hedges limit.
+     */
+    public int getMaxHedges() {
+        return maxHedges;
+    }
+    
+    /**
+     * Returns the listener of the duplicated images uploaded by the losing requests.
+     * @return The duplicate listener, may be null.
+     */
+    public DuplicateListener getDuplicateListener() {
+        return duplicateListener;
+    }
+    
+    /**
+     * Calculates a delay before the additional request from the observed latencies.
+     * @param latencies the observed latencies.
+     * @return The delay <b>in milliseconds</b> or -1 if the request mustn't be hedged.
+     */
+    public long getHedgeDelay(LatencyHistogram latencies) {
+        if(maxHedges == 0 || latencies.getCount() < minSamples)
+            return -1L;
+        
+        long percentile = TimeUnit.NANOSECONDS.toMillis(latencies.getPercentile(hedgePercentile));
+        return Math.max(minHedgeDelay, percentile);
+    }
+    
+    /**
+     * Calculates a request timeout from the observed latencies.
+     * @param latencies the observed latencies.
+     * @param maxTimeout the maximal timeout <b>in milliseconds</b>, it's used when there are not enough samples.
+     * @return The request timeout <b>in milliseconds</b>.
+     */
+    public long getTimeout(LatencyHistogram latencies, long maxTimeout) {
+        if(!adaptiveTimeout || latencies.getCount() < minSamples)
+            return maxTimeout;
+        
+        long percentile = TimeUnit.NANOSECONDS.toMillis(latencies.getPercentile(timeoutPercentile));
+        long timeout = (long) Math.ceil(percentile * timeoutMultiplier);
+        return Math.min(maxTimeout, Math.max(minTimeout, timeout));
+    }
+    
+    @Override
+    public String toString() {
+        return "HedgingPolicy{"
+                + "maxHedges=" + maxHedges + ", "
+                + "hedgePercentile=" + hedgePercentile + ", "
+                + "minHedgeDelay=" + minHedgeDelay + ", "
+                + "adaptiveTimeout=" + adaptiveTimeout + ", "
+                + "timeoutPercentile=" + timeoutPercentile + ", "
+                + "timeoutMultiplier=" + timeoutMultiplier + ", "
+                + "minTimeout=" + minTimeout + ", "
+                + "minSamples=" + minSamples + ", "
+                + "window=" + window + "}";
+    }
+    
+    /**
+     * A builder for the {@link HedgingPolicy}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private int maxHedges = 1;
+        private double hedgePercentile = 0.95D;
+        private long minHedgeDelay = 50L;
+        private boolean adaptiveTimeout = true;
+        private double timeoutPercentile = 0.99D;
+        private double timeoutMultiplier = 3D;
+        private long minTimeout = 1000L;
+        private long minSamples = 50L;
+        private long window = 60_000L;
+        private DuplicateListener duplicateListener;
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of the additional requests per attempt, the default is 1.
+         * <p>
+         * Use 0 to have the adaptive timeouts without hedging.
+         * @param value the hedges limit.
+         * @return Current builder instance.
+         */
+        public Builder maxHedges(int value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The hedges limit cannot be negative!");
+            
+            this.maxHedges = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the latency percentile (from 0 to 1) to send the additional request after, the default is 0.95.
+         * @param value the hedge percentile.
+         * @return Current builder instance.
+         */
+        public Builder hedgePercentile(double value) {
+            if(value <= 0D || value > 1D)
+                throw new IllegalArgumentException("The hedge percentile must be between 0 and 1!");
+            
+            this.hedgePercentile = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the minimal delay <b>in milliseconds</b> before the additional request, the default is 50.
+         * @param value the minimal hedge delay.
+         * @return Current builder instance.
+         */
+        public Builder minHedgeDelay(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The minimal hedge delay cannot be negative!");
+            
+            this.minHedgeDelay = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets whether the request timeout is calculated from the observed latencies, the default is 'true'.
+         * @param value 'true' to adapt the request timeout.
+         * @return Current builder instance.
+         */
+        public Builder adaptiveTimeout(boolean value) {
+            this.adaptiveTimeout = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the latency percentile (from 0 to 1) which the adaptive timeout is based on, the default is 0.99.
+         * @param value the timeout percentile.
+         * @return Current builder instance.
+         */
+        public Builder timeoutPercentile(double value) {
+            if(value <= 0D || value > 1D)
+                throw new IllegalArgumentException("The timeout percentile must be between 0 and 1!");
+            
+            this.timeoutPercentile = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the multiplier of the timeout percentile latency, the default is 3.
+         * @param value the timeout multiplier.
+         * @return Current builder instance.
+         */
+        public Builder timeoutMultiplier(double value) {
+            if(value < 1D)
+                throw new IllegalArgumentException("The timeout multiplier must be at least 1!");
+            
+            this.timeoutMultiplier = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the minimal adaptive timeout <b>in milliseconds</b>, the default is 1000.
+         * @param value the minimal timeout.
+         * @return Current builder instance.
+         */
+        public Builder minTimeout(long value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The minimal timeout must be positive!");
+            
+            this.minTimeout = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the amount of samples within the window which is required to apply the policy, the default is 50.
+         * @param value the minimal samples amount.
+         * @return Current builder instance.
+         */
+        public Builder minSamples(long value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The minimal samples amount must be positive!");
+            
+            this.minSamples = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the time window <b>in milliseconds</b> of the observed latencies, the default is 60000.
+         * @param value the latencies window.
+         * @return Current builder instance.
+         */
+        public Builder window(long value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The window must be positive!");
+            
+            this.window = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the listener of the duplicated images which were uploaded by the losing requests.
+         * <p>
+         * Without the listener the responses of such requests are discarded and the duplicated images stay on the site.
+         * @param value the duplicate listener, may be null.
+         * @return Current builder instance.
+         */
+        public Builder duplicateListener(DuplicateListener value) {
+            this.duplicateListener = value;
+            return this;
+        }
+        
+        /**
+         * Finishes a policy building and returns builded policy.
+         * @return Builded hedging policy instance.
+         */
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+        
+    }
+    
+}
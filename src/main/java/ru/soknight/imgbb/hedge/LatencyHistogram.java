@@ -0,0 +1,124 @@
+package ru.soknight.imgbb.hedge;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A rolling histogram of the response latencies with logarithmic buckets.
+ * <p>
+ * The window is divided into several slices, the samples are recorded into the current slice
+ * and the oldest slice is cleared when the window moves, so the percentiles follow the recent latencies
+ * only. Each bucket is 10% wider than the previous one, so a percentile is accurate within 10%
+ * in the range from 1 microsecond to about 3 minutes.
+ */
+public class LatencyHistogram {
+
+    private static final int SLICES = 6;
+    private static final int BUCKETS = 200;
+    private static final double LOG_BASE = Math.log(1.1D);
+    
+    private final long sliceDuration;
+    private final long[][] counts;
+    private final long[] totals;
+    private long sliceStart;
+    private int current;
+    
+    /**
+     * Creates a new empty histogram.
+     * @param window the time window <b>in milliseconds</b> to keep the samples.
+     * 
+     * @throws IllegalArgumentException if the window isn't positive.
+     */
+    public LatencyHistogram(long window) {
+        if(window <= 0)
+            throw new IllegalArgumentException("The window must be positive!");
+        
+        this.sliceDuration = Math.max(1L, TimeUnit.MILLISECONDS.toNanos(window) / SLICES);
+        this.counts = new long[SLICES][BUCKETS];
+        this.totals = new long[SLICES];
+        this.sliceStart = System.nanoTime();
+    }
+    
+    /**
+     * Records the latency sample.
+     * @param nanos the latency <b>in nanoseconds</b>.
+     */
+    public synchronized void record(long nanos) {
+        rotate();
+        counts[current][bucket(nanos)]++;
+        totals[current]++;
+    }
+    
+    /**
+     * Returns the amount of samples within the window.
+     * @return The samples amount.
+     */
+    public synchronized long getCount() {
+        rotate();
+        long count = 0L;
+        for(long total : totals)
+            count += total;
+        
+        return count;
+    }
+    
+    /**
+     * Returns the latency which isn't exceeded by the specified part of samples within the window.
+     * @param percentile the part of samples (from 0 to 1), 0.95 for example.
+     * @return The upper bound of the percentile bucket <b>in nanoseconds</b> or -1 if there are no samples.
+     * 
+     * @throws IllegalArgumentException if the percentile is out of range.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if(percentile < 0D || percentile > 1D)
+            throw new IllegalArgumentException("The percentile must be between 0 and 1!");
+        
+        long count = getCount();
+        if(count == 0L)
+            return -1L;
+        
+        long rank = Math.max(1L, (long) Math.ceil(count * percentile));
+        long seen = 0L;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            for(int slice = 0; slice < SLICES; slice++)
+                seen += counts[slice][bucket];
+            
+            if(seen >= rank)
+                return upperBound(bucket);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+    
+    private void rotate() {
+        long now = System.nanoTime();
+        long passed = (now - sliceStart) / sliceDuration;
+        if(passed <= 0)
+            return;
+        
+        for(int i = 0; i < Math.min(passed, SLICES); i++) {
+            current = (current + 1) % SLICES;
+            Arrays.fill(counts[current], 0L);
+            totals[current] = 0L;
+        }
+        sliceStart += passed * sliceDuration;
+    }
+    
+    private static int bucket(long nanos) {
+        double micros = Math.max(1D, nanos / 1000D);
+        return Math.min(BUCKETS - 1, (int) (Math.log(micros) / LOG_BASE));
+    }
+    
+    private static long upperBound(int bucket) {
+        return (long) (Math.pow(1.1D, bucket + 1) * 1000D);
+    }
+    
+    @Override
+    public String toString() {
+        return "LatencyHistogram{"
+                + "count=" + getCount() + ", "
+                + "p50=" + getPercentile(0.5D) + ", "
+                + "p95=" + getPercentile(0.95D) + ", "
+                + "p99=" + getPercentile(0.99D) + "}";
+    }
+    
+}
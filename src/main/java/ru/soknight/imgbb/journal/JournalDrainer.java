@@ -0,0 +1,348 @@
+package ru.soknight.imgbb.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import ru.soknight.imgbb.ImgbbUploadClient;
+import ru.soknight.imgbb.parameter.UploadParameters;
+import ru.soknight.imgbb.parameter.UploadTemplate;
+import ru.soknight.imgbb.response.OptionalResponse;
+import ru.soknight.imgbb.response.ResponseModel;
+import ru.soknight.imgbb.response.ResponseModelData;
+import ru.soknight.imgbb.source.ImageSource;
+
+/**
+ * A background drainer of the {@link UploadJournal}, which uploads the pending entries by the client.
+ * <p>
+ * The entries are taken by the dispatcher thread and uploaded asynchronously with a concurrency limit.
+ * The successful uploads are completed in the journal with their response data. The uploads which cannot
+ * succeed (4xx status codes, missing files) are failed in the journal. The other failures (408, 429, 5xx
+ * status codes, I/O and encoding errors) are recorded in the journal as failed attempts and returned
+ * to the queue after the requeue delay, in addition to the client retry policy. The entry is failed
+ * when its attempts limit is reached.
+ * <p>
+ * An entry is acknowledged only after its response was received, so the uploads which were in flight
+ * while the process died are repeated after restart. The successful upload is never repeated because
+ * of the failed acknowledgement, only the journal write is repeated after the requeue delay.
+ * <p>
+ * The drainer stops when the journal is closed.
+ * <p>
+ * You must use the {@link JournalDrainer.Builder} to build a new drainer instance.
+ */
+public class JournalDrainer implements AutoCloseable {
+
+    private final ImgbbUploadClient client;
+    private final UploadJournal journal;
+    private final UploadTemplate template;
+    private final long requeueDelay;
+    private final int maxAttempts;
+    private final BiConsumer<JournalEntry, OptionalResponse> listener;
+    private final int maxConcurrentUploads;
+    private final Semaphore permits;
+    private final Thread dispatcher;
+    private volatile boolean running;
+    
+    private JournalDrainer(Builder builder) {
+        this.client = builder.client;
+        this.journal = builder.journal;
+        this.template = builder.template;
+        this.requeueDelay = builder.requeueDelay;
+        this.maxAttempts = builder.maxAttempts;
+        this.listener = builder.listener;
+        this.maxConcurrentUploads = builder.maxConcurrentUploads;
+        this.permits = new Semaphore(maxConcurrentUploads);
+        this.dispatcher = new Thread(this::dispatch, "imgbb-journal-drainer");
+        this.dispatcher.setDaemon(true);
+    }
+    
+    /**
+     * Starts the dispatcher thread which drains the journal until this drainer is closed.
+     * @return Current drainer instance.
+     * 
+     * @throws IllegalStateException when this drainer is already started.
+     */
+    public synchronized JournalDrainer start() {
+        if(dispatcher.getState() != Thread.State.NEW)
+            throw new IllegalStateException("This drainer is already started!");
+        
+        this.running = true;
+        dispatcher.start();
+        return this;
+    }
+    
+    /**
+     * Returns the amount of the uploads which are in flight right now.
+     * @return The in-flight uploads amount.
+     */
+    public int getInFlightUploads() {
+        return maxConcurrentUploads - permits.availablePermits();
+    }
+    
+    /**
+     * Stops taking of the new entries, the uploads in flight are completed in the background.
+     * <p>
+     * The journal isn't closed by this method.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        dispatcher.interrupt();
+    }
+    
+    private void dispatch() {
+        while(running) {
+            JournalEntry entry;
+            try {
+                permits.acquire();
+                entry = journal.poll(1L, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            
+            if(entry == null) {
+                permits.release();
+                if(journal.isClosed())
+                    return;
+                
+                continue;
+            }
+            
+            upload(entry).whenComplete((response, throwable) -> {
+                permits.release();
+                if(throwable != null)
+                    handleError(entry, throwable instanceof CompletionException ? throwable.getCause() : throwable);
+                else
+                    handleResponse(entry, response);
+            });
+        }
+    }
+    
+    private CompletableFuture<OptionalResponse> upload(JournalEntry entry) {
+        if(!Files.isRegularFile(entry.getPath()))
+            return CompletableFuture.failedFuture(new NoSuchFileException(entry.getPath().toString()));
+        
+        try {
+            UploadParameters parameters = new UploadParameters.Builder(template)
+                    .imageSource(ImageSource.of(entry.getPath()))
+                    .imageName(entry.getImageName())
+                    .build();
+            return client.uploadAsync(parameters);
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+    
+    private void handleResponse(JournalEntry entry, OptionalResponse response) {
+        int statusCode = response.statusCode();
+        ResponseModel model = response.isPresent() ? response.get() : null;
+        if(model != null && model.isUploadedSuccess() && model.getResponseData() != null) {
+            acknowledgeCompleted(entry, model.getResponseData(), response);
+            return;
+        }
+        
+        try {
+            if(!isTransient(statusCode)) {
+                journal.fail(entry, statusCode, response.statusMessage());
+            } else if(!retryLater(entry, statusCode, response.statusMessage())) {
+                return;
+            }
+        } catch (IOException ignored) {
+            // the entry stays pending, so it's taken again
+            requeueLater(entry);
+            return;
+        }
+        
+        if(listener != null)
+            listener.accept(entry, response);
+    }
+    
+    // the image is uploaded already, so only the journal write is repeated
+    private void acknowledgeCompleted(JournalEntry entry, ResponseModelData data, OptionalResponse response) {
+        try {
+            journal.complete(entry, data);
+        } catch (IOException ignored) {
+            // the entry of the closed journal stays pending in the file, so it's uploaded again after restart
+            if(!journal.isClosed()) {
+                CompletableFuture.delayedExecutor(requeueDelay, TimeUnit.MILLISECONDS)
+                        .execute(() -> acknowledgeCompleted(entry, data, response));
+            }
+            return;
+        }
+        
+        if(listener != null)
+            listener.accept(entry, response);
+    }
+    
+    private void handleError(JournalEntry entry, Throwable error) {
+        try {
+            // the file is checked before the upload, so the other errors may be transient
+            if(error instanceof NoSuchFileException)
+                journal.fail(entry, -1, "Specified file isn't exists in your system!");
+            else
+                retryLater(entry, -1, error.getMessage());
+        } catch (IOException ignored) {
+            // the entry stays pending, so it's taken again
+            requeueLater(entry);
+        }
+    }
+    
+    // returns 'true' if the entry was failed by the attempts limit
+    private boolean retryLater(JournalEntry entry, int statusCode, String message) throws IOException {
+        if(journal.recordAttempt(entry) >= maxAttempts) {
+            journal.fail(entry, statusCode, "Attempts limit reached: " + message);
+            return true;
+        }
+        
+        requeueLater(entry);
+        return false;
+    }
+    
+    private void requeueLater(JournalEntry entry) {
+        CompletableFuture.delayedExecutor(requeueDelay, TimeUnit.MILLISECONDS).execute(() -> journal.requeue(entry));
+    }
+    
+    private static boolean isTransient(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+    
+    @Override
+    public String toString() {
+        return "JournalDrainer{"
+                + "journal=" + journal + ", "
+                + "requeueDelay=" + requeueDelay + ", "
+                + "maxAttempts=" + maxAttempts + ", "
+                + "running=" + running + "}";
+    }
+    
+    /**
+     * A builder for the {@link JournalDrainer}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private final ImgbbUploadClient client;
+        private final UploadJournal journal;
+        private UploadTemplate template;
+        private int maxConcurrentUploads;
+        private long requeueDelay;
+        private int maxAttempts;
+        private BiConsumer<JournalEntry, OptionalResponse> listener;
+        
+        /**
+         * Building of drainer starts from this step.
+         * @param client the client to upload images by.
+         * @param journal the journal to drain.
+         * 
+         * @throws IllegalArgumentException if any of received parameters is null.
+         */
+        public Builder(ImgbbUploadClient client, UploadJournal journal) {
+            if(client == null || journal == null)
+                throw new IllegalArgumentException("Specified client or journal is null!");
+            
+            this.client = client;
+            this.journal = journal;
+            this.maxConcurrentUploads = 16;
+            this.requeueDelay = 60_000L;
+            this.maxAttempts = 10;
+        }
+        
+        /**
+         * <b>[REQUIRED]</b>
+         * <p>
+         * Sets the template of the upload parameters (API key and expiration time) of the journaled images.
+         * <p>
+         * It may be omitted if the client has a key pool.
+         * @param value the upload template.
+         * @return Current builder instance.
+         */
+        public Builder template(UploadTemplate value) {
+            if(value == null)
+                throw new IllegalArgumentException("The template cannot be null!");
+            
+            this.template = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of the uploads in flight, the default is 16.
+         * @param value the concurrency limit.
+         * @return Current builder instance.
+         */
+        public Builder maxConcurrentUploads(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The concurrency limit must be positive!");
+            
+            this.maxConcurrentUploads = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the delay <b>in milliseconds</b> before the transiently failed entry is taken again, the default is 60000.
+         * @param value the requeue delay.
+         * @return Current builder instance.
+         */
+        public Builder requeueDelay(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The requeue delay cannot be negative!");
+            
+            this.requeueDelay = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of the failed attempts of an entry, the entry is failed after them, the default is 10.
+         * <p>
+         * Each attempt is uploaded according to the client retry policy, so it may consist of several requests.
+         * @param value the attempts limit.
+         * @return Current builder instance.
+         */
+        public Builder maxAttempts(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The attempts limit must be positive!");
+            
+            this.maxAttempts = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the listener which is called after the entry response was acknowledged in the journal.
+         * @param value the response listener, may be null.
+         * @return Current builder instance.
+         */
+        public Builder listener(BiConsumer<JournalEntry, OptionalResponse> value) {
+            this.listener = value;
+            return this;
+        }
+        
+        /**
+         * Finishes a drainer building and returns builded drainer.
+         * @return Builded journal drainer instance, it must be {@link JournalDrainer#start() started}.
+         * 
+         * @throws IllegalArgumentException if the template has no API key and the client has no key pool.
+         */
+        public JournalDrainer build() {
+            if(template == null && client.hasApiKeyPool())
+                this.template = new UploadTemplate.Builder().build();
+            
+            if(template == null || template.getApiKey() == null && !client.hasApiKeyPool())
+                throw new IllegalArgumentException("The required template with API key isn't specified!");
+            
+            return new JournalDrainer(this);
+        }
+        
+    }
+    
+}
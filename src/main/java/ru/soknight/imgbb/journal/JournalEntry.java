@@ -0,0 +1,66 @@
+package ru.soknight.imgbb.journal;
+
+import java.nio.file.Path;
+
+/**
+ * An image upload which was written into the {@link UploadJournal}.
+ */
+public final class JournalEntry {
+
+    private final long sequence;
+    private final Path path;
+    private final String imageName;
+    private volatile int attempts;
+    
+    JournalEntry(long sequence, Path path, String imageName) {
+        this.sequence = sequence;
+        this.path = path;
+        this.imageName = imageName;
+    }
+    
+    /**
+     * Returns the journal sequence number of this upload, it's unique within the journal.
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    
+    /**
+     * Returns the path of the image file to upload.
+     * @return The image file path.
+     */
+    public Path getPath() {
+        return path;
+    }
+    
+    /**
+     * Returns the name of the image on website.
+     * @return The image name or null if it isn't specified.
+     */
+    public String getImageName() {
+        return imageName;
+    }
+    
+    /**
+     * Returns the amount of the failed upload attempts which were recorded in the journal.
+     * @return The failed attempts amount.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+    
+    @Override
+    public String toString() {
+        return "JournalEntry{"
+                + "sequence=" + sequence + ", "
+                + "path=" + path + ", "
+                + "imageName=" + imageName + ", "
+                + "attempts=" + attempts + "}";
+    }
+    
+}
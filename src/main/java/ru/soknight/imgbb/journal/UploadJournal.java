@@ -0,0 +1,474 @@
+package ru.soknight.imgbb.journal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+import ru.soknight.imgbb.response.ResponseDataCodec;
+import ru.soknight.imgbb.response.ResponseModelData;
+
+/**
+ * A durable append-only journal of the image uploads, which survives the process restarts.
+ * <p>
+ * Each enqueued image, each completed upload with its response data, each failed upload
+ * and each failed attempt is appended to the file as a record with a checksum. When the journal is opened, the file is replayed
+ * and the uploads without a result become pending again. A torn record at the end of the file,
+ * which was being written while the process died, is cut off. The record which failed to be written
+ * is cut off at once, and if it cannot be done, nothing more is appended after it.
+ * <p>
+ * The images are journaled as file paths, so they must stay in place until they're uploaded.
+ * The journal is thread-safe.
+ * 
+ * @see JournalDrainer
+ */
+public class UploadJournal implements AutoCloseable {
+
+    private static final byte RECORD_ENQUEUED = 1;
+    private static final byte RECORD_COMPLETED = 2;
+    private static final byte RECORD_FAILED = 3;
+    private static final byte RECORD_ATTEMPTED = 4;
+    
+    // length and checksum around the record body
+    private static final int RECORD_OVERHEAD = 8;
+    private static final int MAX_RECORD_LENGTH = 1024 * 1024;
+    
+    private final Path file;
+    private final FileChannel channel;
+    private final boolean syncOnWrite;
+    
+    private final Map<Long, JournalEntry> pending;
+    private final Deque<JournalEntry> queue;
+    private long nextSequence;
+    private long completedCount;
+    private long failedCount;
+    private boolean closed;
+    private boolean broken;
+    
+    private UploadJournal(Path file, FileChannel channel, boolean syncOnWrite) {
+        this.file = file;
+        this.channel = channel;
+        this.syncOnWrite = syncOnWrite;
+        this.pending = new LinkedHashMap<>();
+        this.queue = new ArrayDeque<>();
+        this.nextSequence = 1L;
+    }
+    
+    /**
+     * Opens the journal file, creates it if needed, and replays it.
+     * <p>
+     * Each record is forced to the storage device before the method which wrote it returns.
+     * @param file the journal file path.
+     * @return The opened journal.
+     * 
+     * @throws IOException when the file cannot be opened or read.
+     * @see UploadJournal#open(Path, boolean)
+     */
+    public static UploadJournal open(Path file) throws IOException {
+        return open(file, true);
+    }
+    
+    /**
+     * Opens the journal file, creates it if needed, and replays it.
+     * @param file the journal file path.
+     * @param syncOnWrite whether each record is forced to the storage device, otherwise
+     * the last records may be lost on the system crash (but not on the process crash).
+     * @return The opened journal.
+     * 
+     * @throws IllegalArgumentException if received file is null.
+     * @throws IOException when the file cannot be opened or read.
+     */
+    public static UploadJournal open(Path file, boolean syncOnWrite) throws IOException {
+        if(file == null)
+            throw new IllegalArgumentException("Specified journal file is null!");
+        
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        UploadJournal journal = new UploadJournal(file, channel, syncOnWrite);
+        try {
+            journal.replay();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        return journal;
+    }
+    
+    /**
+     * Appends the image file to upload.
+     * @param path the image file path.
+     * @param imageName the name of the image on website, may be null.
+     * @return The journaled entry.
+     * 
+     * @throws IllegalArgumentException if received path is null.
+     * @throws IOException when the record cannot be written.
+     */
+    public synchronized JournalEntry enqueue(Path path, String imageName) throws IOException {
+        if(path == null)
+            throw new IllegalArgumentException("Specified path is null!");
+        
+        JournalEntry entry = new JournalEntry(nextSequence, path.toAbsolutePath(), imageName);
+        append(RECORD_ENQUEUED, entry.getSequence(), output -> {
+            output.writeUTF(entry.getPath().toString());
+            output.writeBoolean(imageName != null);
+            if(imageName != null)
+                output.writeUTF(imageName);
+        });
+        
+        nextSequence++;
+        pending.put(entry.getSequence(), entry);
+        queue.addLast(entry);
+        notifyAll();
+        return entry;
+    }
+    
+    /**
+     * Acknowledges the successful upload and writes its response data.
+     * @param entry the uploaded entry.
+     * @param data the response data of the upload.
+     * 
+     * @throws IllegalArgumentException if any of received parameters is null.
+     * @throws IOException when the record cannot be written.
+     */
+    public synchronized void complete(JournalEntry entry, ResponseModelData data) throws IOException {
+        if(entry == null || data == null)
+            throw new IllegalArgumentException("Specified entry or response data is null!");
+        
+        if(!pending.containsKey(entry.getSequence()))
+            return;
+        
+        append(RECORD_COMPLETED, entry.getSequence(), output -> ResponseDataCodec.write(output, data));
+        pending.remove(entry.getSequence());
+        completedCount++;
+    }
+    
+    /**
+     * Acknowledges the upload which cannot be done, it won't be repeated after restart.
+     * @param entry the failed entry.
+     * @param statusCode the response status code or -1 if there is no response.
+     * @param message the failure description, may be null.
+     * 
+     * @throws IllegalArgumentException if received entry is null.
+     * @throws IOException when the record cannot be written.
+     */
+    public synchronized void fail(JournalEntry entry, int statusCode, String message) throws IOException {
+        if(entry == null)
+            throw new IllegalArgumentException("Specified entry is null!");
+        
+        if(!pending.containsKey(entry.getSequence()))
+            return;
+        
+        append(RECORD_FAILED, entry.getSequence(), output -> {
+            output.writeInt(statusCode);
+            output.writeUTF(message != null ? message : "");
+        });
+        pending.remove(entry.getSequence());
+        failedCount++;
+    }
+    
+    /**
+     * Records the failed upload attempt of the pending entry, the attempts are counted after restart as well.
+     * @param entry the pending entry.
+     * @return The amount of the failed attempts of the entry including this one.
+     * 
+     * @throws IllegalArgumentException if received entry is null.
+     * @throws IOException when the record cannot be written.
+     */
+    public synchronized int recordAttempt(JournalEntry entry) throws IOException {
+        if(entry == null)
+            throw new IllegalArgumentException("Specified entry is null!");
+        
+        if(!pending.containsKey(entry.getSequence()))
+            return entry.getAttempts();
+        
+        append(RECORD_ATTEMPTED, entry.getSequence(), output -> {});
+        entry.setAttempts(entry.getAttempts() + 1);
+        return entry.getAttempts();
+    }
+    
+    /**
+     * Returns the pending entry back to the queue, so it will be taken again.
+     * @param entry the pending entry.
+     */
+    public synchronized void requeue(JournalEntry entry) {
+        if(entry != null && pending.containsKey(entry.getSequence())) {
+            queue.addLast(entry);
+            notifyAll();
+        }
+    }
+    
+    /**
+     * Takes the next pending entry to upload, waiting for it if the queue is empty.
+     * <p>
+     * The entry stays pending until it's completed or failed.
+     * @param timeout the maximal time to wait.
+     * @param unit the time unit of the timeout.
+     * @return The next entry or null if the time is out or the journal is closed.
+     * 
+     * @throws InterruptedException when the calling thread was interrupted while waiting.
+     */
+    public synchronized JournalEntry poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(queue.isEmpty() && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0)
+                return null;
+            
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        
+        // the result of the closed journal's entry cannot be written anyway
+        return closed ? null : queue.pollFirst();
+    }
+    
+    /**
+     * Returns the snapshot of the pending entries in the enqueue order.
+     * @return The pending entries.
+     */
+    public synchronized List<JournalEntry> getPending() {
+        return new ArrayList<>(pending.values());
+    }
+    
+    /**
+     * Returns the amount of the entries without a result.
+     * @return The pending entries amount.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+    
+    /**
+     * Returns the amount of the completed entries.
+     * @return The completed entries amount.
+     */
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+    
+    /**
+     * Returns the amount of the failed entries.
+     * @return The failed entries amount.
+     */
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+    
+    /**
+     * Reads the journal file and passes each completed upload with its response data to the consumer.
+     * <p>
+     * The response data isn't kept in memory, so it's read from the file on each call.
+     * @param consumer the consumer of the completed uploads.
+     * 
+     * @throws IOException when the file cannot be read.
+     */
+    public void forEachCompleted(BiConsumer<JournalEntry, ResponseModelData> consumer) throws IOException {
+        Map<Long, JournalEntry> entries = new HashMap<>();
+        long end;
+        synchronized(this) {
+            end = channel.size();
+        }
+        
+        try(FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+            readRecords(reader, end, (type, sequence, body) -> {
+                if(type == RECORD_ENQUEUED) {
+                    entries.put(sequence, readEntry(sequence, body));
+                } else if(type == RECORD_COMPLETED) {
+                    JournalEntry entry = entries.remove(sequence);
+                    if(entry != null)
+                        consumer.accept(entry, ResponseDataCodec.read(body));
+                } else if(type == RECORD_FAILED) {
+                    entries.remove(sequence);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Checks if the journal is closed, so the entries cannot be taken or acknowledged anymore.
+     * @return 'true' if the journal is closed or 'false' otherwise.
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+    
+    /**
+     * Returns the journal file path.
+     * @return The journal file.
+     */
+    public Path getFile() {
+        return file;
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if(closed)
+            return;
+        
+        this.closed = true;
+        notifyAll();
+        channel.close();
+    }
+    
+    /*
+     * RECORDS
+     * 
+     * [int length][byte type][long sequence][body][int crc32 of type, sequence and body]
+     */
+    
+    private void append(byte type, long sequence, RecordWriter writer) throws IOException {
+        if(closed)
+            throw new IOException("The journal is closed!");
+        
+        if(broken)
+            throw new IOException("The journal is broken by the failed write!");
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(0);
+        output.writeByte(type);
+        output.writeLong(sequence);
+        writer.write(output);
+        output.writeInt(0);
+        
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.capacity() - RECORD_OVERHEAD;
+        CRC32 checksum = new CRC32();
+        checksum.update(record.array(), 4, length);
+        record.putInt(0, length);
+        record.putInt(record.capacity() - 4, (int) checksum.getValue());
+        
+        long position = channel.position();
+        try {
+            while(record.hasRemaining())
+                channel.write(record);
+        
+            if(syncOnWrite)
+                channel.force(false);
+        } catch (IOException ex) {
+            rollback(position, ex);
+            throw ex;
+        }
+    }
+    
+    // the torn record is cut off, otherwise the next records would be lost on replay
+    private void rollback(long position, IOException error) {
+        try {
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException ex) {
+            error.addSuppressed(ex);
+            this.broken = true;
+        }
+    }
+    
+    private void replay() throws IOException {
+        long valid = readRecords(channel, channel.size(), (type, sequence, body) -> {
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if(type == RECORD_ENQUEUED) {
+                pending.put(sequence, readEntry(sequence, body));
+            } else if(type == RECORD_ATTEMPTED) {
+                JournalEntry entry = pending.get(sequence);
+                if(entry != null)
+                    entry.setAttempts(entry.getAttempts() + 1);
+            } else if(pending.remove(sequence) != null) {
+                if(type == RECORD_COMPLETED)
+                    completedCount++;
+                else
+                    failedCount++;
+            }
+        });
+        
+        // the torn tail is cut off, so the next records are appended after the valid ones
+        if(valid < channel.size())
+            channel.truncate(valid);
+        
+        channel.position(valid);
+        queue.addAll(pending.values());
+    }
+    
+    private static JournalEntry readEntry(long sequence, DataInputStream body) throws IOException {
+        Path path = Paths.get(body.readUTF());
+        String imageName = body.readBoolean() ? body.readUTF() : null;
+        return new JournalEntry(sequence, path, imageName);
+    }
+    
+    // returns the position after the last valid record
+    private static long readRecords(FileChannel channel, long end, RecordReader reader) throws IOException {
+        InputStream stream = new BufferedInputStream(Channels.newInputStream(channel.position(0)), 64 * 1024);
+        DataInputStream input = new DataInputStream(stream);
+        CRC32 checksum = new CRC32();
+        long position = 0L;
+        
+        while(position + RECORD_OVERHEAD <= end) {
+            int length;
+            byte[] body;
+            int expected;
+            try {
+                length = input.readInt();
+                if(length < 9 || length > MAX_RECORD_LENGTH || position + RECORD_OVERHEAD + length > end)
+                    break;
+                
+                body = new byte[length];
+                input.readFully(body);
+                expected = input.readInt();
+            } catch (EOFException ex) {
+                break;
+            }
+            
+            checksum.reset();
+            checksum.update(body);
+            if((int) checksum.getValue() != expected)
+                break;
+            
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+            byte type = record.readByte();
+            long sequence = record.readLong();
+            reader.read(type, sequence, record);
+            position += RECORD_OVERHEAD + length;
+        }
+        return position;
+    }
+    
+    @Override
+    public String toString() {
+        return "UploadJournal{"
+                + "file=" + file + ", "
+                + "pending=" + getPendingCount() + ", "
+                + "completed=" + getCompletedCount() + ", "
+                + "failed=" + getFailedCount() + "}";
+    }
+    
+    @FunctionalInterface
+    private interface RecordWriter {
+        
+        void write(DataOutputStream output) throws IOException;
+        
+    }
+    
+    @FunctionalInterface
+    private interface RecordReader {
+        
+        void read(byte type, long sequence, DataInputStream body) throws IOException;
+        
+    }
+    
+}
@@ -0,0 +1,373 @@
+package ru.soknight.imgbb.keypool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ru.soknight.imgbb.ratelimit.RateLimiter;
+import ru.soknight.imgbb.retry.RetryPolicy;
+
+/**
+ * A pool of API keys to spread the uploads over them, since the quota is enforced per key.
+ * <p>
+ * Each upload attempt leases a key, which is chosen round-robin or as the least loaded one.
+ * Each key may have its own rate limiter. A key which got a rate limit response (429) or
+ * an authorization error is benched for a while, so the load shifts to the other keys.
+ * When all the keys are benched, the key which returns first is leased with a delay.
+ * <p>
+ * You must use the {@link ApiKeyPool.Builder} to build a new pool instance.
+ * 
+ * @see ApiKeyPool#lease()
+ */
+public class ApiKeyPool {
+
+    /**
+     * A strategy of choosing the key for the next upload.
+     */
+    public enum Strategy {
+        
+        /**
+         * The keys are used in turn.
+         */
+        ROUND_ROBIN,
+        /**
+         * The key with the least amount of in-flight uploads is used.
+         */
+        LEAST_LOADED;
+        
+    }
+    
+    private final KeyState[] keys;
+    private final Strategy strategy;
+    private final long benchDuration;
+    private final long authBenchDuration;
+    private final int[] authStatuses;
+    private final AtomicInteger cursor;
+    
+    private ApiKeyPool(Builder builder) {
+        this.keys = new KeyState[builder.apiKeys.size()];
+        for(int i = 0; i < keys.length; i++)
+            keys[i] = new KeyState(builder.apiKeys.get(i), builder.rateLimiters.get(i));
+        
+        this.strategy = builder.strategy;
+        this.benchDuration = TimeUnit.MILLISECONDS.toNanos(builder.benchDuration);
+        this.authBenchDuration = TimeUnit.MILLISECONDS.toNanos(builder.authBenchDuration);
+        this.authStatuses = builder.authStatuses.clone();
+        this.cursor = new AtomicInteger();
+        
+        Arrays.sort(authStatuses);
+    }
+    
+    /**
+     * Leases a key for one upload attempt, the lease must be released when the attempt is finished.
+     * <p>
+     * The rate limiter permit of the key is reserved as well.
+     * @return The lease of the chosen key.
+     * 
+     * @see Lease#getDelay()
+     */
+    public Lease lease() {
+        long now = System.nanoTime();
+        KeyState chosen = choose(now);
+        
+        // all the keys are benched, so the first returning one is used
+        if(chosen == null) {
+            chosen = keys[0];
+            for(KeyState key : keys)
+                if(key.benchedUntil - chosen.benchedUntil < 0)
+                    chosen = key;
+        }
+        
+        chosen.inFlight.incrementAndGet();
+        long delay = Math.max(0L, chosen.benchedUntil - now);
+        if(chosen.rateLimiter != null)
+            delay = Math.max(delay, chosen.rateLimiter.reserve());
+        
+        return new Lease(chosen, delay);
+    }
+    
+    /**
+     * Leases a key only if it may be used right now: it isn't benched and its rate limiter has a free permit.
+     * <p>
+     * It's used for the optional requests (for example, the hedged ones) which mustn't wait for a key.
+     * @return The lease of the chosen key without delay or null if there is no such key now.
+     */
+    public Lease tryLease() {
+        KeyState chosen = choose(System.nanoTime());
+        if(chosen == null || chosen.rateLimiter != null && !chosen.rateLimiter.tryAcquire())
+            return null;
+        
+        chosen.inFlight.incrementAndGet();
+        return new Lease(chosen, 0L);
+    }
+    
+    // returns null if all the keys are benched
+    private KeyState choose(long now) {
+        int start = Math.floorMod(cursor.getAndIncrement(), keys.length);
+        
+        KeyState chosen = null;
+        for(int i = 0; i < keys.length; i++) {
+            KeyState key = keys[(start + i) % keys.length];
+            if(key.isBenched(now))
+                continue;
+            
+            if(strategy == Strategy.ROUND_ROBIN)
+                return key;
+            
+            if(chosen == null || key.inFlight.get() < chosen.inFlight.get())
+                chosen = key;
+        }
+        return chosen;
+    }
+    
+    /**
+     * Returns the amount of keys in the pool.
+     * @return The keys amount.
+     */
+    public int size() {
+        return keys.length;
+    }
+    
+    /**
+     * Returns the amount of keys which aren't benched now.
+     * @return The available keys amount.
+     */
+    public int getAvailableKeys() {
+        long now = System.nanoTime();
+        int available = 0;
+        for(KeyState key : keys)
+            if(!key.isBenched(now))
+                available++;
+        
+        return available;
+    }
+    
+    private void onResponse(KeyState key, int statusCode, String retryAfter) {
+        if(statusCode == 429) {
+            long requested = retryAfter != null ? TimeUnit.MILLISECONDS.toNanos(RetryPolicy.parseRetryAfter(retryAfter)) : 0L;
+            key.bench(Math.max(benchDuration, requested));
+        } else if(Arrays.binarySearch(authStatuses, statusCode) >= 0) {
+            key.bench(authBenchDuration);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "ApiKeyPool{"
+                + "size=" + keys.length + ", "
+                + "strategy=" + strategy + ", "
+                + "availableKeys=" + getAvailableKeys() + "}";
+    }
+    
+    /**
+     * A key leased for one upload attempt.
+     */
+    public final class Lease {
+        
+        private final KeyState key;
+        private final long delay;
+        private boolean released;
+        
+        private Lease(KeyState key, long delay) {
+            this.key = key;
+            this.delay = delay;
+        }
+        
+        /**
+         * Returns the leased API key.
+         * @return The API key to upload with.
+         */
+        public String getApiKey() {
+            return key.apiKey;
+        }
+        
+        /**
+         * Returns the time to wait before the upload, when the key is benched or its rate is limited.
+         * @return The delay <b>in nanoseconds</b>, 0 if the upload may be sent immediately.
+         */
+        public long getDelay() {
+            return delay;
+        }
+        
+        /**
+         * Releases the lease after the response was received, the key is benched if the response requires.
+         * @param statusCode the response status code.
+         * @param retryAfter the 'Retry-After' header value, may be null.
+         */
+        public void release(int statusCode, String retryAfter) {
+            if(release())
+                onResponse(key, statusCode, retryAfter);
+        }
+        
+        /**
+         * Releases the lease when no response was received.
+         */
+        public void cancel() {
+            release();
+        }
+        
+        private boolean release() {
+            if(released)
+                return false;
+            
+            this.released = true;
+            key.inFlight.decrementAndGet();
+            return true;
+        }
+        
+        @Override
+        public String toString() {
+            return "Lease{delay=" + delay + ", released=" + released + "}";
+        }
+        
+    }
+    
+    /*
+     * A key with its load and health state.
+     */
+    private static final class KeyState {
+        
+        private final String apiKey;
+        private final RateLimiter rateLimiter;
+        private final AtomicInteger inFlight;
+        private volatile long benchedUntil;
+        
+        private KeyState(String apiKey, RateLimiter rateLimiter) {
+            this.apiKey = apiKey;
+            this.rateLimiter = rateLimiter;
+            this.inFlight = new AtomicInteger();
+            this.benchedUntil = System.nanoTime();
+        }
+        
+        private boolean isBenched(long now) {
+            return benchedUntil - now > 0;
+        }
+        
+        private synchronized void bench(long duration) {
+            long until = System.nanoTime() + duration;
+            if(until - benchedUntil > 0)
+                this.benchedUntil = until;
+        }
+        
+    }
+    
+    /**
+     * A builder for the {@link ApiKeyPool}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private final List<String> apiKeys = new ArrayList<>();
+        private final List<RateLimiter> rateLimiters = new ArrayList<>();
+        private Strategy strategy = Strategy.ROUND_ROBIN;
+        private long benchDuration = 60_000L;
+        private long authBenchDuration = 600_000L;
+        private int[] authStatuses = { 401, 403 };
+        
+        /**
+         * <b>[REQUIRED]</b>
+         * <p>
+         * Adds an API key to the pool without its own rate limit.
+         * @param apiKey the API key to add.
+         * @return Current builder instance.
+         */
+        public Builder key(String apiKey) {
+            return key(apiKey, null);
+        }
+        
+        /**
+         * <b>[REQUIRED]</b>
+         * <p>
+         * Adds an API key to the pool with its own rate limiter.
+         * @param apiKey the API key to add.
+         * @param rateLimiter the rate limiter of this key, may be null.
+         * @return Current builder instance.
+         */
+        public Builder key(String apiKey, RateLimiter rateLimiter) {
+            if(apiKey == null || apiKey.isEmpty())
+                throw new IllegalArgumentException("The API key cannot be null or empty!");
+            
+            apiKeys.add(apiKey);
+            rateLimiters.add(rateLimiter);
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the strategy of choosing the key, the default is {@link Strategy#ROUND_ROBIN}.
+         * @param value the strategy to use.
+         * @return Current builder instance.
+         */
+        public Builder strategy(Strategy value) {
+            if(value == null)
+                throw new IllegalArgumentException("The strategy cannot be null!");
+            
+            this.strategy = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets how long the key isn't used after the rate limit response <b>in milliseconds</b>, the default is 60000.
+         * <p>
+         * A longer delay requested via 'Retry-After' header is respected.
+         * @param value the bench duration.
+         * @return Current builder instance.
+         */
+        public Builder benchDuration(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The bench duration cannot be negative!");
+            
+            this.benchDuration = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets how long the key isn't used after the authorization error <b>in milliseconds</b>, the default is 600000.
+         * @param value the bench duration.
+         * @return Current builder instance.
+         */
+        public Builder authBenchDuration(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The bench duration cannot be negative!");
+            
+            this.authBenchDuration = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the response status codes which mean the key authorization error, the default is 401, 403.
+         * @param value the authorization error status codes.
+         * @return Current builder instance.
+         */
+        public Builder authStatuses(int... value) {
+            if(value == null)
+                throw new IllegalArgumentException("The authorization error statuses cannot be null!");
+            
+            this.authStatuses = value.clone();
+            return this;
+        }
+        
+        /**
+         * Finishes a pool building and returns builded pool.
+         * @return Builded API key pool instance.
+         * 
+         * @throws IllegalArgumentException if no keys were added.
+         */
+        public ApiKeyPool build() {
+            if(apiKeys.isEmpty())
+                throw new IllegalArgumentException("The pool must have at least one key!");
+            
+            return new ApiKeyPool(this);
+        }
+        
+    }
+    
+}
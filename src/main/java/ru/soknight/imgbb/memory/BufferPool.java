@@ -0,0 +1,114 @@
+package ru.soknight.imgbb.memory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of reusable byte buffers for the upload bodies.
+ * <p>
+ * The buffers are grouped by the power of two size classes starting with 4 KiB, so a buffer is
+ * up to twice larger than requested. The pool keeps the released buffers until their total size
+ * reaches the retention limit, the others are left to the garbage collector.
+ * The buffers are direct or heap ones depending on the pool settings. The pool is thread-safe.
+ */
+public class BufferPool {
+
+    private static final int MIN_SIZE_CLASS = 12;
+    private static final int MAX_SIZE_CLASS = 30;
+    
+    private final long maxRetained;
+    private final boolean direct;
+    private final ArrayDeque<ByteBuffer>[] classes;
+    private long retained;
+    
+    /**
+     * Creates a new empty pool.
+     * @param maxRetained the maximal total size <b>in bytes</b> of the buffers kept in the pool.
+     * @param direct 'true' to allocate the direct buffers or 'false' to allocate the heap ones.
+     * 
+     * @throws IllegalArgumentException if the retention limit is negative.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public BufferPool(long maxRetained, boolean direct) {
+        if(maxRetained < 0)
+            throw new IllegalArgumentException("The retention limit cannot be negative!");
+        
+        this.maxRetained = maxRetained;
+        this.direct = direct;
+        this.classes = new ArrayDeque[MAX_SIZE_CLASS + 1];
+        for(int i = MIN_SIZE_CLASS; i <= MAX_SIZE_CLASS; i++)
+            classes[i] = new ArrayDeque<>();
+    }
+    
+    /**
+     * Takes a buffer from the pool or allocates a new one.
+     * @param size the required buffer size in bytes.
+     * @return The cleared buffer with the limit set to the required size.
+     * 
+     * @throws IllegalArgumentException if the size is negative or exceeds 1 GiB.
+     */
+    public ByteBuffer acquire(int size) {
+        if(size < 0 || size > 1 << MAX_SIZE_CLASS)
+            throw new IllegalArgumentException("The buffer size must be between 0 and 1 GiB!");
+        
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = classes[sizeClass].poll();
+            if(buffer != null)
+                retained -= buffer.capacity();
+        }
+        
+        if(buffer == null)
+            buffer = direct ? ByteBuffer.allocateDirect(1 << sizeClass) : ByteBuffer.allocate(1 << sizeClass);
+        
+        buffer.clear().limit(size);
+        return buffer;
+    }
+    
+    /**
+     * Returns the buffer to the pool, it mustn't be used after that.
+     * @param buffer the buffer which was taken from this pool.
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if(buffer.isDirect() != direct || Integer.bitCount(capacity) != 1)
+            return;
+        
+        int sizeClass = Integer.numberOfTrailingZeros(capacity);
+        if(sizeClass < MIN_SIZE_CLASS || sizeClass > MAX_SIZE_CLASS)
+            return;
+        
+        synchronized (this) {
+            if(retained + capacity > maxRetained)
+                return;
+            
+            classes[sizeClass].push(buffer);
+            retained += capacity;
+        }
+    }
+    
+    /**
+     * Returns the total size of the buffers kept in the pool.
+     * @return The retained bytes amount.
+     */
+    public synchronized long getRetained() {
+        return retained;
+    }
+    
+    private static int sizeClass(int size) {
+        if(size <= 1 << MIN_SIZE_CLASS)
+            return MIN_SIZE_CLASS;
+        
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+    
+    @Override
+    public String toString() {
+        return "BufferPool{"
+                + "maxRetained=" + maxRetained + ", "
+                + "direct=" + direct + ", "
+                + "retained=" + getRetained() + "}";
+    }
+    
+}
@@ -0,0 +1,154 @@
+package ru.soknight.imgbb.memory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A budget of memory for the upload bodies which is shared by the concurrent uploads.
+ * <p>
+ * An upload reserves the estimated size of its body before it's prepared and releases it when it's finished.
+ * When the budget is exhausted, the new uploads wait for the released memory in the reservation order
+ * instead of allocating it, asynchronous uploads wait as futures without holding a thread.
+ * A reservation larger than the whole budget takes the whole budget, so it's executed alone.
+ */
+public class MemoryBudget {
+
+    private final long capacity;
+    private final Queue<Reservation> waiters;
+    private long available;
+    
+    /**
+     * Creates a new budget.
+     * @param capacity the budget size <b>in bytes</b>.
+     * 
+     * @throws IllegalArgumentException if the budget size isn't positive.
+     */
+    public MemoryBudget(long capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("The budget size must be positive!");
+        
+        this.capacity = capacity;
+        this.available = capacity;
+        this.waiters = new ArrayDeque<>();
+    }
+    
+    /**
+     * Reserves the memory, waiting for it asynchronously if it isn't available.
+     * @param bytes the amount of bytes to reserve, it's limited by the budget size.
+     * @return The future which will be completed by the reserved amount, it must be released later.
+     */
+    public CompletableFuture<Long> reserve(long bytes) {
+        long amount = Math.max(0L, Math.min(bytes, capacity));
+        synchronized (this) {
+            // the waiters are served in order, so a large reservation isn't starved by the small ones
+            if(waiters.isEmpty() && amount <= available) {
+                available -= amount;
+                return CompletableFuture.completedFuture(amount);
+            }
+            
+            Reservation reservation = new Reservation(amount);
+            waiters.add(reservation);
+            return reservation.future;
+        }
+    }
+    
+    /**
+     * Reserves the memory, waiting for it in the calling thread if it isn't available.
+     * @param bytes the amount of bytes to reserve, it's limited by the budget size.
+     * @return The reserved amount, it must be released later.
+     * 
+     * @throws InterruptedException when the calling thread was interrupted while waiting.
+     */
+    public long reserveBlocking(long bytes) throws InterruptedException {
+        CompletableFuture<Long> reservation = reserve(bytes);
+        try {
+            return reservation.get();
+        } catch (InterruptedException ex) {
+            // the memory may be granted concurrently, so it must be returned back
+            if(!reservation.cancel(false))
+                release(reservation.join());
+            throw ex;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+    
+    /**
+     * Returns the reserved memory back to the budget.
+     * @param bytes the reserved amount.
+     */
+    public void release(long bytes) {
+        List<Reservation> granted = new ArrayList<>();
+        synchronized (this) {
+            available = Math.min(capacity, available + bytes);
+            while(!waiters.isEmpty()) {
+                Reservation next = waiters.peek();
+                if(next.future.isDone()) {
+                    waiters.poll();
+                    continue;
+                }
+                
+                if(next.amount > available)
+                    break;
+                
+                waiters.poll();
+                available -= next.amount;
+                granted.add(next);
+            }
+        }
+        
+        // the futures are completed outside of the lock, the cancelled ones return their memory
+        for(Reservation reservation : granted)
+            if(!reservation.future.complete(reservation.amount))
+                release(reservation.amount);
+    }
+    
+    /**
+     * Returns the budget size.
+     * @return The budget size in bytes.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Returns the currently available memory.
+     * @return The available memory in bytes.
+     */
+    public synchronized long getAvailable() {
+        return available;
+    }
+    
+    /**
+     * Returns the amount of uploads which wait for the memory.
+     * @return The waiting uploads amount.
+     */
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+    
+    @Override
+    public String toString() {
+        return "MemoryBudget{"
+                + "capacity=" + capacity + ", "
+                + "available=" + getAvailable() + ", "
+                + "waiting=" + getWaiting() + "}";
+    }
+    
+    private static final class Reservation {
+        
+        private final long amount;
+        private final CompletableFuture<Long> future;
+        
+        private Reservation(long amount) {
+            this.amount = amount;
+            this.future = new CompletableFuture<>();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,17 @@
+package ru.soknight.imgbb.metrics;
+
+/*
+ * The metrics which ignore everything, the client recognizes this instance and skips the measuring.
+ */
+final class NoopUploadMetrics implements UploadMetrics {
+
+    static final NoopUploadMetrics INSTANCE = new NoopUploadMetrics();
+    
+    private NoopUploadMetrics() {}
+    
+    @Override
+    public String toString() {
+        return "UploadMetrics.noop()";
+    }
+    
+}
@@ -0,0 +1,103 @@
+package ru.soknight.imgbb.metrics;
+
+import java.util.function.IntSupplier;
+
+/**
+ * An instrumentation hook of the upload client, receives timings, sizes and outcomes of the uploads.
+ * <p>
+ * All the methods do nothing by default, so an implementation overrides only the needed ones.
+ * The methods are called by the threads which execute the uploads, so they must be thread-safe and fast.
+ * <p>
+ * An upload consists of the phases which are reported in this order:
+ * <ul>
+ * <li><b>prepare</b> - serialization of the parameters and building of the request, once per upload;</li>
+ * <li><b>permit wait</b> - waiting for the rate limiter permit and for a free connection slot;</li>
+ * <li><b>request write</b> - from the request sending till the last body byte is taken by the HTTP client.
+ * It includes the connection establishing and the TLS handshake when a new connection is opened,
+ * the JDK HTTP client doesn't expose them separately;</li>
+ * <li><b>server wait</b> - from the request write end till the response headers are received;</li>
+ * <li><b>parse</b> - reading and parsing of the response body, once per upload.</li>
+ * </ul>
+ * The permit wait, request write and server wait phases are repeated for each attempt.
+ * 
+ * @see UploadMetrics#noop()
+ */
+public interface UploadMetrics {
+
+    /**
+     * Returns the metrics which ignore everything, the client doesn't measure anything with them.
+     * @return The no-op metrics instance.
+     */
+    static UploadMetrics noop() {
+        return NoopUploadMetrics.INSTANCE;
+    }
+    
+    /**
+     * Called once when the client is created with these metrics.
+     * @param inFlightUploads the supplier of the currently executed uploads amount, may be used as a gauge.
+     */
+    default void bindInFlightUploads(IntSupplier inFlightUploads) {}
+    
+    /**
+     * Called when the request is built.
+     * @param nanos the prepare phase duration <b>in nanoseconds</b>.
+     */
+    default void requestPrepared(long nanos) {}
+    
+    /**
+     * Called when the attempt got the permits and the request is going to be sent.
+     * @param nanos the permit wait phase duration <b>in nanoseconds</b>.
+     */
+    default void permitWaited(long nanos) {}
+    
+    /**
+     * Called when the whole request body was written.
+     * @param nanos the request write phase duration <b>in nanoseconds</b>.
+     * @param bytes the request body size in bytes.
+     */
+    default void requestWritten(long nanos, long bytes) {}
+    
+    /**
+     * Called when the response headers were received.
+     * @param nanos the server wait phase duration <b>in nanoseconds</b>.
+     * @param statusCode the response status code.
+     */
+    default void responseReceived(long nanos, int statusCode) {}
+    
+    /**
+     * Called when the attempt failed by an exception, no response was received.
+     * @param error the exception which was thrown while the attempt.
+     */
+    default void requestFailed(Throwable error) {}
+    
+    /**
+     * Called when the failed attempt is going to be repeated.
+     * @param attempt the number of the failed attempt starting with 1.
+     * @param delayMillis the delay before the next attempt <b>in milliseconds</b>.
+     */
+    default void uploadRetried(int attempt, long delayMillis) {}
+    
+    /**
+     * Called when the final response was read and parsed.
+     * @param nanos the parse phase duration <b>in nanoseconds</b>, includes the body receiving.
+     * @param bytes the response body size in bytes.
+     */
+    default void responseParsed(long nanos, long bytes) {}
+    
+    /**
+     * Called when the upload is finished by a response, the upload may be unsuccessful anyway.
+     * @param statusCode the final response status code.
+     * @param attempts the amount of made attempts.
+     * @param nanos the whole upload duration <b>in nanoseconds</b>.
+     */
+    default void uploadFinished(int statusCode, int attempts, long nanos) {}
+    
+    /**
+     * Called when the upload is failed by an exception.
+     * @param error the exception which was thrown.
+     * @param attempts the amount of made attempts.
+     * @param nanos the whole upload duration <b>in nanoseconds</b>.
+     */
+    default void uploadFailed(Throwable error, int attempts, long nanos) {}
+    
+}
@@ -0,0 +1,250 @@
+package ru.soknight.imgbb.multipart;
+
+import java.io.IOException;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.soknight.imgbb.source.ImageSource;
+
+/**
+ * A 'multipart/form-data' request body which streams the image bytes from an {@link ImageSource}.
+ * <p>
+ * The image is read in fixed-size chunks only when the HTTP client requests them,
+ * so the whole image is never placed in the heap and isn't Base64 encoded at all.
+ * <p>
+ * The images which are already in a buffer (direct, mapped or heap one, see {@link ImageSource#getBuffer()})
+ * aren't copied at all, the chunks are emitted as read-only slices of that buffer.
+ */
+public class MultipartBodyPublisher implements BodyPublisher {
+
+    /**
+     * Size of the chunks which the image bytes are read by.
+     * <p>
+     * Value is <b>{@value}</b>.
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+    
+    private static final String CRLF = "\r\n";
+    
+    private final String boundary;
+    private final ImageSource imageSource;
+    
+    private final byte[] preamble;
+    private final byte[] trailer;
+    private final long contentLength;
+    
+    /**
+     * Creates a new multipart body with received text fields and the image part.
+     * @param fields a text fields to send before the image (API key, name etc.)
+     * @param imageSource an image source to stream as 'image' field.
+     * 
+     * @throws IllegalArgumentException if received image source is null.
+     */
+    public MultipartBodyPublisher(Map<String, String> fields, ImageSource imageSource) {
+        if(imageSource == null)
+            throw new IllegalArgumentException("Specified image source is null!");
+        
+        this.boundary = "ImgbbJavaSdk" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        this.imageSource = imageSource;
+        
+        this.preamble = createPreamble(fields, imageSource.getFilename());
+        this.trailer = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        
+        long imageLength = imageSource.getContentLength();
+        this.contentLength = imageLength < 0 ? -1L : preamble.length + imageLength + trailer.length;
+    }
+    
+    /**
+     * Returns a value of the 'Content-Type' header for this body.
+     * @return The content type with the used boundary.
+     */
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+    
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new ChunkSubscription(subscriber));
+    }
+    
+    /**
+     * Cuts the next read-only chunk of at most {@link MultipartBodyPublisher#CHUNK_SIZE} bytes from the buffer
+     * without copying and advances the buffer position after it.
+     * @param buffer a buffer with remaining bytes.
+     * @return The chunk which shares the content of the buffer.
+     */
+    public static ByteBuffer nextSlice(ByteBuffer buffer) {
+        int length = Math.min(CHUNK_SIZE, buffer.remaining());
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+    
+    private byte[] createPreamble(Map<String, String> fields, String filename) {
+        StringBuilder builder = new StringBuilder();
+        for(Map.Entry<String, String> field : fields.entrySet()) {
+            builder.append("--").append(boundary).append(CRLF)
+                    .append("Content-Disposition: form-data; name=\"").append(escape(field.getKey())).append('"').append(CRLF)
+                    .append(CRLF)
+                    .append(field.getValue()).append(CRLF);
+        }
+        
+        builder.append("--").append(boundary).append(CRLF)
+                .append("Content-Disposition: form-data; name=\"image\"; filename=\"")
+                .append(escape(filename != null ? filename : "image")).append('"').append(CRLF)
+                .append("Content-Type: application/octet-stream").append(CRLF)
+                .append(CRLF);
+        
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static String escape(String value) {
+        return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+    
+    /*
+     * Emits the preamble, the image chunks and the trailer one by one on demand.
+     */
+    private final class ChunkSubscription implements Flow.Subscription {
+        
+        private static final int STAGE_PREAMBLE = 0;
+        private static final int STAGE_IMAGE = 1;
+        private static final int STAGE_TRAILER = 2;
+        private static final int STAGE_DONE = 3;
+        
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand;
+        private final AtomicInteger drains;
+        
+        private volatile boolean cancelled;
+        private ReadableByteChannel channel;
+        private ByteBuffer buffer;
+        private int stage;
+        
+        private ChunkSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+            this.demand = new AtomicLong();
+            this.drains = new AtomicInteger();
+        }
+        
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                cancelled = true;
+                drain();
+                subscriber.onError(new IllegalArgumentException("Requested items amount must be positive!"));
+                return;
+            }
+            
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+        
+        private void drain() {
+            if(drains.getAndIncrement() != 0)
+                return;
+            
+            do {
+                while(!cancelled && (demand.get() > 0 || stage == STAGE_DONE)) {
+                    ByteBuffer chunk;
+                    try {
+                        chunk = nextChunk();
+                    } catch (IOException ex) {
+                        cancelled = true;
+                        closeChannel();
+                        subscriber.onError(ex);
+                        return;
+                    }
+                    
+                    if(chunk == null) {
+                        closeChannel();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    
+                    demand.decrementAndGet();
+                    subscriber.onNext(chunk);
+                }
+                
+                if(cancelled)
+                    closeChannel();
+            } while(drains.decrementAndGet() != 0);
+        }
+        
+        private ByteBuffer nextChunk() throws IOException {
+            switch(stage) {
+                case STAGE_PREAMBLE:
+                    stage = STAGE_IMAGE;
+                    buffer = imageSource.getBuffer();
+                    if(buffer == null)
+                        channel = imageSource.openChannel();
+                    return ByteBuffer.wrap(preamble);
+                case STAGE_IMAGE:
+                    if(buffer != null)
+                        return nextSlice();
+                    
+                    ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+                    while(chunk.hasRemaining()) {
+                        if(channel.read(chunk) < 0) {
+                            closeChannel();
+                            stage = STAGE_TRAILER;
+                            break;
+                        }
+                    }
+                    
+                    if(chunk.position() != 0)
+                        return chunk.flip();
+                    
+                    return nextChunk();
+                case STAGE_TRAILER:
+                    stage = STAGE_DONE;
+                    return ByteBuffer.wrap(trailer);
+                default:
+                    return null;
+            }
+        }
+        
+        private ByteBuffer nextSlice() throws IOException {
+            if(!buffer.hasRemaining()) {
+                buffer = null;
+                stage = STAGE_TRAILER;
+                return nextChunk();
+            }
+            
+            return MultipartBodyPublisher.nextSlice(buffer);
+        }
+        
+        private void closeChannel() {
+            if(channel == null)
+                return;
+            
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            } finally {
+                channel = null;
+            }
+        }
+        
+    }
+    
+}
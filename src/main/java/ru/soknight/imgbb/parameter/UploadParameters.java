@@ -1,69 +1,241 @@
 package ru.soknight.imgbb.parameter;
 
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.NoArgsConstructor;
+import ru.soknight.imgbb.source.ImageSource;
 
 /**
- * A wrapper for upload POST-request parameters.
+ * An immutable wrapper for upload POST-request parameters.
  * <p>
- * You must use the {@link UploadParameters.Builder} to build a new parameters instance.
+ * The parameters are validated when they're built, the instance is thread-safe.
+ * You must use the {@link UploadParameters.Builder} or the {@link UploadTemplate} to build a new parameters instance.
  */
 @Getter
-@NoArgsConstructor
-public class UploadParameters {
+public final class UploadParameters {
+
+    private final UploadTemplate template;
 
     // required parameters
-    private String apiKey;
-    private String imageBase64;
+    private final String imageBase64;
+    private final ImageSource imageSource;
     
     // optional parameters
-    private String imageName;
-    private ExpirationTime expirationTime;
+    private final String imageName;
+    
+    @Getter(AccessLevel.NONE)
+    private volatile Map<String, String> serialized;
+    
+    private UploadParameters(UploadTemplate template, String imageBase64, ImageSource imageSource, String imageName) {
+        this.template = template;
+        this.imageBase64 = imageBase64;
+        this.imageSource = imageSource;
+        this.imageName = imageName;
+    }
+    
+    /**
+     * Returns the API key parameter.
+     * @return The API key or null if the key is taken from the client key pool.
+     */
+    public String getApiKey() {
+        return template.getApiKey();
+    }
+    
+    /**
+     * Returns the expiration time parameter.
+     * @return The expiration time or null if the image never expires.
+     */
+    public ExpirationTime getExpirationTime() {
+        return template.getExpirationTime();
+    }
     
     /**
-     * Serializes current parameters instance to {@link LinkedHashMap} to use it in the POST-request.
+     * Serializes current parameters instance to an unmodifiable {@link LinkedHashMap} to use it in the POST-request.
      * <p>
-     * This method don't add a image parameter value, because it must be in a POST-request body.
-     * @return Serialized parameters as {@link LinkedHashMap}.
-     * 
-     * @throws RuntimeException when the required API key parameter is invalid.
-     * @throws RuntimeException when the required image parameter is invalid.
+     * This method don't add a image parameter value when the image is specified as {@link ImageSource},
+     * because it must be streamed in a multipart POST-request body.
+     * <p>
+     * The map is created once and then the same instance is returned.
+     * @return Serialized parameters as unmodifiable {@link LinkedHashMap}.
      */
     public Map<String, String> toMap() {
-        // api key validation
-        if(apiKey == null || apiKey.isEmpty())
-            throw new RuntimeException("The required API key parameter is invalid!");
+        // the race is benign, the instance is immutable
+        Map<String, String> serialized = this.serialized;
+        if(serialized == null)
+            this.serialized = serialized = serialize();
         
-        // api key validation
-        if(imageBase64 == null || imageBase64.isEmpty())
-            throw new RuntimeException("The required image parameter is invalid!");
+        return serialized;
+    }
         
+    private Map<String, String> serialize() {
         Map<String, String> parameters = new LinkedHashMap<>();
         
         // required API key & image parameter
-        parameters.put("key", apiKey);
-        parameters.put("image", imageBase64);
+        String apiKey = getApiKey();
+        if(apiKey != null)
+            parameters.put("key", apiKey);
+        
+        if(imageSource == null)
+            parameters.put("image", imageBase64);
         
         // optional image name parameter
-        if(imageName != null && !imageName.isEmpty())
+        if(imageName != null)
             parameters.put("name", imageName);
         
         // optional expiration time parameter
+        ExpirationTime expirationTime = getExpirationTime();
         if(expirationTime != null)
             parameters.put("expiration", expirationTime.getAsString());
         
-        return parameters;
+        return Collections.unmodifiableMap(parameters);
+    }
+    
+    /**
+     * Serializes current parameters instance to the 'application/x-www-form-urlencoded' request body.
+     * <p>
+     * The template parameters are serialized in advance, so only the image and its name are encoded here.
+     * Base64 alphabet has only three characters to escape, so the image is escaped without a generic URL encoder.
+     * @return Serialized parameters as ASCII bytes.
+     * 
+     * @throws IllegalStateException if the image is specified as {@link ImageSource}.
+     * @see UploadParameters#writeEncodedForm(ByteBuffer)
+     */
+    public byte[] toEncodedForm() {
+        int escapedLength = getEscapedImageLength();
+        byte[] body = new byte[getEncodedFormLength(escapedLength)];
+        writeEncodedForm(ByteBuffer.wrap(body), escapedLength);
+        return body;
+    }
+    
+    /**
+     * Returns the length of the 'application/x-www-form-urlencoded' request body of these parameters.
+     * @return The serialized parameters length in bytes.
+     * 
+     * @throws IllegalStateException if the image is specified as {@link ImageSource}.
+     */
+    public int getEncodedFormLength() {
+        return getEncodedFormLength(getEscapedImageLength());
+    }
+    
+    /**
+     * Serializes current parameters instance to the 'application/x-www-form-urlencoded' request body
+     * into the buffer, for example a pooled one.
+     * @param target the buffer to write to, it must have {@link UploadParameters#getEncodedFormLength()} bytes remaining.
+     * 
+     * @throws IllegalStateException if the image is specified as {@link ImageSource}.
+     * @throws java.nio.BufferOverflowException if the buffer has not enough space.
+     */
+    public void writeEncodedForm(ByteBuffer target) {
+        writeEncodedForm(target, getEscapedImageLength());
+    }
+    
+    private int getEncodedFormLength(int escapedLength) {
+        if(escapedLength < 0)
+            return encodeForm().length;
+        
+        return template.getEncodedForm().length + 6 + escapedLength + encodeName().length;
+    }
+    
+    private void writeEncodedForm(ByteBuffer target, int escapedLength) {
+        if(escapedLength < 0) {
+            target.put(encodeForm());
+            return;
+        }
+        
+        target.put(template.getEncodedForm());
+        for(int i = 0; i < 6; i++)
+            target.put((byte) "image=".charAt(i));
+        
+        int imageLength = imageBase64.length();
+        for(int i = 0; i < imageLength; i++) {
+            char next = imageBase64.charAt(i);
+            if(isEscaped(next)) {
+                target.put((byte) '%');
+                target.put((byte) Character.toUpperCase(Character.forDigit(next >> 4, 16)));
+                target.put((byte) Character.toUpperCase(Character.forDigit(next & 0xF, 16)));
+            } else {
+                target.put((byte) next);
+            }
+        }
+        
+        target.put(encodeName());
+    }
+    
+    // -1 if the image has non-ASCII characters
+    private int getEscapedImageLength() {
+        if(imageSource != null)
+            throw new IllegalStateException("The streamed image cannot be sent in a form body!");
+        
+        int imageLength = imageBase64.length();
+        int escapedLength = imageLength;
+        for(int i = 0; i < imageLength; i++) {
+            char next = imageBase64.charAt(i);
+            if(next > 0x7F)
+                return -1;
+            
+            if(isEscaped(next))
+                escapedLength += 2;
+        }
+        return escapedLength;
+    }
+        
+    private byte[] encodeName() {
+        return imageName != null
+                ? ("&name=" + URLEncoder.encode(imageName, StandardCharsets.UTF_8)).getBytes(StandardCharsets.US_ASCII)
+                : new byte[0];
+    }
+    
+    // not a base64 string, it's left to the server to reject it
+    private byte[] encodeForm() {
+        String image = "image=" + URLEncoder.encode(imageBase64, StandardCharsets.UTF_8);
+        return (new String(template.getEncodedForm(), StandardCharsets.US_ASCII) + image + new String(encodeName(), StandardCharsets.US_ASCII))
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    // any character except the unreserved ones, line breaks of the MIME base64 are escaped as well
+    private static boolean isEscaped(char value) {
+        return !(value >= 'A' && value <= 'Z' || value >= 'a' && value <= 'z' || value >= '0' && value <= '9'
+                || value == '-' || value == '_' || value == '.' || value == '*');
+    }
+    
+    /**
+     * Checks if the image is specified as {@link ImageSource} to stream it in a multipart request.
+     * @return 'true' if the image is streamed or 'false' if it's sent as Base64 string.
+     */
+    public boolean isStreamed() {
+        return imageSource != null;
+    }
+    
+    /**
+     * Checks if the image may be sent again, so the upload may be repeated.
+     * @return 'true' if the image may be sent again or 'false' if it's a one-off stream.
+     * 
+     * @see ImageSource#isReplayable()
+     */
+    public boolean isReplayable() {
+        return imageSource == null || imageSource.isReplayable();
     }
     
     /**
      * A builder for the {@link UploadParameters}, provides an easy way to create it.
+     * <p>
+     * Each {@link UploadParameters.Builder#build()} call creates a new parameters instance,
+     * so the builder may be reused, but it isn't thread-safe itself.
      */
     public static class Builder {
         
-        private final UploadParameters parameters;
+        private UploadTemplate template;
+        private String apiKey;
+        private String imageBase64;
+        private ImageSource imageSource;
+        private String imageName;
+        private ExpirationTime expirationTime;
         
         /**
          * Building of parameters starts from this step.
@@ -71,18 +243,32 @@ public class UploadParameters {
          * You created a builder and now you can use next methods to set parameters.
          */
         public Builder() {
-            this.parameters = new UploadParameters();
+        }
+        
+        /**
+         * Building of parameters starts from this step with the parameters of received template.
+         * @param template the template to take the API key and the expiration time from.
+         * 
+         * @throws IllegalArgumentException if received template is null.
+         */
+        public Builder(UploadTemplate template) {
+            if(template == null)
+                throw new IllegalArgumentException("Specified template is null!");
+            
+            this.template = template;
+            this.apiKey = template.getApiKey();
+            this.expirationTime = template.getExpirationTime();
         }
         
         /**
          * <b>[REQUIRED]</b>
          * <p>
-         * Sets the required API key parameter.
+         * Sets the required API key parameter, it may be omitted if the client has a key pool.
          * @param value the API key to set.
          * @return Current builder instance.
          */
         public Builder apiKey(String value) {
-            parameters.apiKey = value;
+            this.apiKey = value;
             return this;
         }
         
@@ -94,7 +280,27 @@ public class UploadParameters {
          * @return Current builder instance.
          */
         public Builder imageBase64(String value) {
-            parameters.imageBase64 = value;
+            this.imageBase64 = value;
+            this.imageSource = null;
+            return this;
+        }
+        
+        /**
+         * <b>[REQUIRED]</b>
+         * <p>
+         * Sets the required image parameter as a raw bytes source.
+         * <p>
+         * The image will be streamed in a multipart request body without Base64 encoding,
+         * it replaces previously specified Base64 encoded string.
+         * @param value the image source to set.
+         * @return Current builder instance.
+         * 
+         * @see ImageSource#of(java.io.File)
+         * @see ImageSource#of(java.nio.file.Path)
+         */
+        public Builder imageSource(ImageSource value) {
+            this.imageSource = value;
+            this.imageBase64 = null;
             return this;
         }
         
@@ -106,7 +312,7 @@ public class UploadParameters {
          * @return Current builder instance.
          */
         public Builder imageName(String value) {
-            parameters.imageName = value;
+            this.imageName = value;
             return this;
         }
         
@@ -121,16 +327,27 @@ public class UploadParameters {
          * @see ExpirationTime#fromString(String)
          */
         public Builder expirationTime(ExpirationTime value) {
-            parameters.expirationTime = value;
+            this.expirationTime = value;
             return this;
         }
         
         /**
          * Finishes a parameters building and returns builded parameters.
          * @return Builded upload parameters instance.
+         * 
+         * @throws IllegalArgumentException when the API key parameter is empty.
+         * @throws IllegalArgumentException when the required image parameter is invalid.
          */
         public UploadParameters build() {
-            return parameters;
+            if(imageSource == null && (imageBase64 == null || imageBase64.isEmpty()))
+                throw new IllegalArgumentException("The required image parameter is invalid!");
+            
+            // the template is reused while its parameters aren't changed
+            if(template == null || !template.matches(apiKey, expirationTime))
+                this.template = UploadTemplate.of(apiKey, expirationTime);
+            
+            String name = imageName != null && !imageName.isEmpty() ? imageName : null;
+            return new UploadParameters(template, imageBase64, imageSource, name);
         }
         
     }
@@ -0,0 +1,150 @@
+package ru.soknight.imgbb.parameter;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import ru.soknight.imgbb.source.ImageSource;
+
+/**
+ * An immutable template of the upload parameters which are the same for many images.
+ * <p>
+ * The template is validated once when it's built and its parameters are serialized in advance,
+ * so the upload parameters are derived from it for each image without any repeated work.
+ * It's thread-safe and may be shared by all the uploading threads.
+ * <p>
+ * You must use the {@link UploadTemplate.Builder} to build a new template instance.
+ * 
+ * @see UploadTemplate#withImage(String)
+ * @see UploadTemplate#withImage(ImageSource)
+ */
+public final class UploadTemplate {
+
+    private final String apiKey;
+    private final ExpirationTime expirationTime;
+    private final byte[] encodedForm;
+    
+    private UploadTemplate(String apiKey, ExpirationTime expirationTime) {
+        this.apiKey = apiKey;
+        this.expirationTime = expirationTime;
+        this.encodedForm = encodeForm(apiKey, expirationTime);
+    }
+    
+    static UploadTemplate of(String apiKey, ExpirationTime expirationTime) {
+        if(apiKey != null && apiKey.isEmpty())
+            throw new IllegalArgumentException("The required API key parameter is invalid!");
+        
+        return new UploadTemplate(apiKey, expirationTime);
+    }
+    
+    /**
+     * Returns the API key parameter.
+     * @return The API key or null if the key is taken from the client key pool.
+     */
+    public String getApiKey() {
+        return apiKey;
+    }
+    
+    /**
+     * Returns the expiration time parameter.
+     * @return The expiration time or null if the images never expire.
+     */
+    public ExpirationTime getExpirationTime() {
+        return expirationTime;
+    }
+    
+    /**
+     * Derives the upload parameters for an image specified as a Base64 encoded string.
+     * @param imageBase64 the image base64 encoded string.
+     * @return The new upload parameters instance.
+     * 
+     * @throws IllegalArgumentException if received image is null or empty.
+     */
+    public UploadParameters withImage(String imageBase64) {
+        return new UploadParameters.Builder(this).imageBase64(imageBase64).build();
+    }
+    
+    /**
+     * Derives the upload parameters for an image specified as a raw bytes source.
+     * @param imageSource the image source.
+     * @return The new upload parameters instance.
+     * 
+     * @throws IllegalArgumentException if received image is null.
+     */
+    public UploadParameters withImage(ImageSource imageSource) {
+        return new UploadParameters.Builder(this).imageSource(imageSource).build();
+    }
+    
+    boolean matches(String apiKey, ExpirationTime expirationTime) {
+        return Objects.equals(this.apiKey, apiKey) && this.expirationTime == expirationTime;
+    }
+    
+    // the URL-encoded template parameters, each one is followed by '&'
+    byte[] getEncodedForm() {
+        return encodedForm;
+    }
+    
+    private static byte[] encodeForm(String apiKey, ExpirationTime expirationTime) {
+        StringBuilder form = new StringBuilder();
+        if(apiKey != null)
+            form.append("key=").append(URLEncoder.encode(apiKey, StandardCharsets.UTF_8)).append('&');
+        
+        if(expirationTime != null)
+            form.append("expiration=").append(expirationTime.getAsString()).append('&');
+        
+        return form.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    @Override
+    public String toString() {
+        return "UploadTemplate{expirationTime=" + (expirationTime != null ? expirationTime.getAsString() : null) + "}";
+    }
+    
+    /**
+     * A builder for the {@link UploadTemplate}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private String apiKey;
+        private ExpirationTime expirationTime;
+        
+        /**
+         * <b>[REQUIRED]</b>
+         * <p>
+         * Sets the required API key parameter, it may be omitted if the client has a key pool.
+         * @param value the API key to set.
+         * @return Current builder instance.
+         */
+        public Builder apiKey(String value) {
+            this.apiKey = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the optional expiration time parameter of all the images.
+         * @param value the expiration time instance.
+         * @return Current builder instance.
+         * 
+         * @see ExpirationTime#fromLong(long)
+         * @see ExpirationTime#fromString(String)
+         */
+        public Builder expirationTime(ExpirationTime value) {
+            this.expirationTime = value;
+            return this;
+        }
+        
+        /**
+         * Finishes a template building and returns builded template.
+         * @return Builded upload template instance.
+         * 
+         * @throws IllegalArgumentException if the API key is empty.
+         */
+        public UploadTemplate build() {
+            return UploadTemplate.of(apiKey, expirationTime);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,288 @@
+package ru.soknight.imgbb.preprocess;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import ru.soknight.imgbb.converter.ImageOutput;
+import ru.soknight.imgbb.source.ImageSource;
+
+/**
+ * An image preprocessor which downscales and recompresses images before uploading.
+ * <p>
+ * The image is decoded with the source subsampling, so a large image is never decoded in full resolution:
+ * each n-th pixel is read directly from the stream and only the rest of the downscaling (less than 2x)
+ * is done by the bilinear interpolation. The result is written in the target format with the target quality.
+ * <p>
+ * The metadata (EXIF, color profiles, comments etc.) isn't read and isn't written, so it's stripped.
+ * Note that the EXIF orientation isn't applied to the pixels as well.
+ * <p>
+ * You must use the {@link ImagePreprocessor.Builder} to build a new preprocessor instance.
+ * 
+ * @see ImagePreprocessor#process(ImageSource)
+ */
+public class ImagePreprocessor {
+
+    private static final String[] OPAQUE_FORMATS = { "bmp", "jpeg", "jpg", "wbmp" };
+    
+    private final int maxWidth;
+    private final int maxHeight;
+    private final String formatName;
+    private final float quality;
+    private final boolean stripMetadata;
+    
+    private ImagePreprocessor(Builder builder) {
+        this.maxWidth = builder.maxWidth;
+        this.maxHeight = builder.maxHeight;
+        this.formatName = builder.formatName;
+        this.quality = builder.quality;
+        this.stripMetadata = builder.stripMetadata;
+    }
+    
+    /**
+     * Downscales the image to fit the maximal dimensions and writes it in the target format.
+     * <p>
+     * When the metadata stripping is disabled, the image which already fits and has the target format
+     * is returned as is. The returned source is always replayable.
+     * @param source the image to process.
+     * @return The processed image source, which is backed by a heap buffer.
+     * 
+     * @throws IllegalArgumentException if received source is null.
+     * @throws IllegalArgumentException if received image format cannot be read.
+     * @throws IOException when the image cannot be read or written.
+     */
+    public ImageSource process(ImageSource source) throws IOException {
+        if(source == null)
+            throw new IllegalArgumentException("Specified image source is null!");
+        
+        try(ReadableByteChannel channel = source.openChannel();
+                ImageInputStream input = ImageIO.createImageInputStream(Channels.newInputStream(channel))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext())
+                throw new IllegalArgumentException("Sorry, but we cannot read this image format!");
+            
+            ImageReader reader = readers.next();
+            try {
+                // the metadata isn't needed, so it's skipped instead of parsing
+                reader.setInput(input, true, true);
+                
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                double scale = Math.min(1D, Math.min((double) maxWidth / width, (double) maxHeight / height));
+                
+                if(scale == 1D && !stripMetadata && source.isReplayable() && isFormatOf(reader))
+                    return source;
+                
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = (int) Math.floor(1D / scale);
+                if(subsampling > 1)
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                
+                BufferedImage image = reader.read(0, param);
+                int targetWidth = Math.max(1, (int) Math.round(width * scale));
+                int targetHeight = Math.max(1, (int) Math.round(height * scale));
+                if(image.getWidth() != targetWidth || image.getHeight() != targetHeight)
+                    image = resize(image, targetWidth, targetHeight);
+                
+                return ImageSource.of(write(image), renameFile(source.getFilename()));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    private boolean isFormatOf(ImageReader reader) {
+        String[] names = reader.getOriginatingProvider().getFormatNames();
+        for(String name : names)
+            if(name.equalsIgnoreCase(formatName))
+                return true;
+        
+        return false;
+    }
+    
+    private BufferedImage resize(BufferedImage image, int width, int height) {
+        // the subsampled image is less than twice larger, so one bilinear step doesn't lose the details
+        boolean opaque = !image.getColorModel().hasAlpha() || isOpaqueFormat();
+        BufferedImage resized = new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if(opaque) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+    
+    private BufferedImage flatten(BufferedImage image) {
+        if(!image.getColorModel().hasAlpha() || !isOpaqueFormat())
+            return image;
+        
+        return resize(image, image.getWidth(), image.getHeight());
+    }
+    
+    private ByteBuffer write(BufferedImage image) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if(!writers.hasNext())
+            throw new IllegalArgumentException("Sorry, but we cannot write an image formatted as '" + formatName + "'!");
+        
+        ImageWriter writer = writers.next();
+        ImageOutput output = new ImageOutput();
+        try(ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(stream);
+            
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if(param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if(param.getCompressionType() == null && param.getCompressionTypes() != null)
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                
+                param.setCompressionQuality(quality);
+            }
+            
+            // no metadata is passed, so nothing except the pixels is written
+            writer.write(null, new IIOImage(flatten(image), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.asByteBuffer();
+    }
+    
+    private boolean isOpaqueFormat() {
+        return Arrays.asList(OPAQUE_FORMATS).contains(formatName);
+    }
+    
+    private String renameFile(String filename) {
+        if(filename == null)
+            return null;
+        
+        int extensionStart = filename.lastIndexOf('.');
+        String name = extensionStart > 0 ? filename.substring(0, extensionStart) : filename;
+        return name + '.' + formatName;
+    }
+    
+    @Override
+    public String toString() {
+        return "ImagePreprocessor{"
+                + "maxWidth=" + maxWidth + ", "
+                + "maxHeight=" + maxHeight + ", "
+                + "formatName=" + formatName + ", "
+                + "quality=" + quality + ", "
+                + "stripMetadata=" + stripMetadata + "}";
+    }
+    
+    /**
+     * A builder for the {@link ImagePreprocessor}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private int maxWidth = Integer.MAX_VALUE;
+        private int maxHeight = Integer.MAX_VALUE;
+        private String formatName = "jpeg";
+        private float quality = 0.85F;
+        private boolean stripMetadata = true;
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal image dimensions, the image is downscaled with the same aspect ratio to fit them.
+         * The image size isn't limited by default.
+         * @param width the maximal width in pixels.
+         * @param height the maximal height in pixels.
+         * @return Current builder instance.
+         */
+        public Builder maxDimensions(int width, int height) {
+            if(width <= 0 || height <= 0)
+                throw new IllegalArgumentException("The maximal dimensions must be positive!");
+            
+            this.maxWidth = width;
+            this.maxHeight = height;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the name of the target image format (png, jpeg etc.), the default is 'jpeg'.
+         * <p>
+         * The format must be writable by the {@link ImageIO}, e.g. 'webp' requires a plugin.
+         * @param value the target format name.
+         * @return Current builder instance.
+         */
+        public Builder formatName(String value) {
+            if(value == null || value.isEmpty())
+                throw new IllegalArgumentException("The format name cannot be null or empty!");
+            
+            String formatName = value.toLowerCase(Locale.ROOT);
+            if(!ImageIO.getImageWritersByFormatName(formatName).hasNext())
+                throw new IllegalArgumentException("Sorry, but we cannot write an image formatted as '" + value + "'!");
+            
+            this.formatName = formatName;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the compression quality from 0 to 1 (JPEG, WebP etc.), the default is 0.85.
+         * <p>
+         * It's ignored by the formats which don't support the compression.
+         * @param value the compression quality.
+         * @return Current builder instance.
+         */
+        public Builder quality(float value) {
+            if(value < 0F || value > 1F)
+                throw new IllegalArgumentException("The quality must be between 0 and 1!");
+            
+            this.quality = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets whether the images are always rewritten without metadata, the default is 'true'.
+         * <p>
+         * Otherwise the image which already fits and has the target format is uploaded as is.
+         * @param value 'true' to strip the metadata of all the images.
+         * @return Current builder instance.
+         */
+        public Builder stripMetadata(boolean value) {
+            this.stripMetadata = value;
+            return this;
+        }
+        
+        /**
+         * Finishes a preprocessor building and returns builded preprocessor.
+         * @return Builded image preprocessor instance.
+         */
+        public ImagePreprocessor build() {
+            return new ImagePreprocessor(this);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,37 @@
+package ru.soknight.imgbb.progress;
+
+import java.io.IOException;
+
+/**
+ * Signals that the request body transfer was aborted in the middle of the stream.
+ * <p>
+ * It's thrown when the transfer was cancelled by the caller or when its throughput fell below
+ * the client minimal throughput. The cancelled uploads are never repeated, the slow ones are
+ * repeated as the connection failures according to the client retry policy, since the body
+ * wasn't sent completely.
+ */
+public class TransferAbortedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+    
+    private final boolean cancelled;
+    
+    /**
+     * Creates a new exception of the aborted transfer.
+     * @param message the detail message.
+     * @param cancelled 'true' if the transfer was cancelled by the caller.
+     */
+    public TransferAbortedException(String message, boolean cancelled) {
+        super(message);
+        this.cancelled = cancelled;
+    }
+    
+    /**
+     * Checks if the transfer was cancelled by the caller rather than aborted as a slow one.
+     * @return 'true' if the transfer was cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+}
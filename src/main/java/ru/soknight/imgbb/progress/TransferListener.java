@@ -0,0 +1,24 @@
+package ru.soknight.imgbb.progress;
+
+import ru.soknight.imgbb.parameter.UploadParameters;
+
+/**
+ * A listener of the request body transfers of the client uploads.
+ * <p>
+ * It's called by the client monitor thread periodically while the body is written and once when
+ * the body is written completely, so it must be fast. Each attempt (and each hedged request) writes
+ * the body again, so it's reported as a new transfer.
+ * 
+ * @see TransferProgress#cancel()
+ */
+@FunctionalInterface
+public interface TransferListener {
+
+    /**
+     * Called with the current progress of the body transfer.
+     * @param parameters the parameters of the uploaded image.
+     * @param progress the live progress of the transfer, it may be used to cancel the upload.
+     */
+    void progress(UploadParameters parameters, TransferProgress progress);
+    
+}
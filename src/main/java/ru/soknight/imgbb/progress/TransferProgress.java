@@ -0,0 +1,49 @@
+package ru.soknight.imgbb.progress;
+
+/**
+ * A live progress of one request body transfer, the values are read when the methods are called.
+ * 
+ * @see TransferListener
+ */
+public interface TransferProgress {
+
+    /**
+     * Returns the amount of the body bytes which were taken by the HTTP client.
+     * <p>
+     * The bytes are buffered by the socket, so it's slightly ahead of the bytes received by the server.
+     * @return The written bytes amount.
+     */
+    long getBytesWritten();
+    
+    /**
+     * Returns the whole body size if it's known before writing.
+     * @return The body size in bytes or -1 if it's unknown.
+     */
+    long getContentLength();
+    
+    /**
+     * Returns the time since the transfer start <b>in milliseconds</b>.
+     * @return The elapsed time.
+     */
+    long getElapsedTime();
+    
+    /**
+     * Returns the transfer rate over the recent throughput window of the client.
+     * @return The written bytes per second.
+     */
+    double getBytesPerSecond();
+    
+    /**
+     * Checks if the body was written completely, so only the response is awaited.
+     * @return 'true' if the body is written or 'false' otherwise.
+     */
+    boolean isCompleted();
+    
+    /**
+     * Aborts the transfer, the upload fails with {@link TransferAbortedException} and isn't repeated.
+     * <p>
+     * It does nothing if the body is already written or the transfer is already aborted.
+     */
+    void cancel();
+    
+}
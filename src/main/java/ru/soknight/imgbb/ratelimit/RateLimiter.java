@@ -0,0 +1,88 @@
+package ru.soknight.imgbb.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter which smooths the requests rate.
+ * <p>
+ * The bucket is refilled continuously with the configured rate and may accumulate
+ * up to the burst size of tokens. A request takes one token, when the bucket is empty
+ * the token is reserved in advance and the request waits for its refill time,
+ * so waiting requests are served in the reservation order.
+ */
+public class RateLimiter {
+
+    private final double tokensPerNano;
+    private final double burst;
+    
+    private double tokens;
+    private long lastRefill;
+    
+    /**
+     * Creates a new rate limiter with a full bucket.
+     * @param permitsPerSecond the maximal average rate of requests.
+     * @param burst the maximal amount of requests which may be executed without waiting.
+     * 
+     * @throws IllegalArgumentException if the rate isn't positive.
+     * @throws IllegalArgumentException if the burst isn't positive.
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if(!(permitsPerSecond > 0D))
+            throw new IllegalArgumentException("The permits rate must be positive!");
+        
+        if(burst <= 0)
+            throw new IllegalArgumentException("The burst size must be positive!");
+        
+        this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+    
+    /**
+     * Takes one token from the bucket, reserving it in advance if the bucket is empty.
+     * @return The time <b>in nanoseconds</b> to wait before the request, 0 if it may be executed immediately.
+     */
+    public synchronized long reserve() {
+        refill();
+        tokens -= 1D;
+        return tokens >= 0D ? 0L : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+    
+    /**
+     * Takes one token from the bucket only if it's available right now.
+     * @return 'true' if the token was taken or 'false' if the bucket is empty.
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if(tokens < 1D)
+            return false;
+        
+        tokens -= 1D;
+        return true;
+    }
+    
+    /**
+     * Takes one token from the bucket, waiting for it in the calling thread if needed.
+     * @throws InterruptedException when the calling thread was interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        long delay = reserve();
+        if(delay > 0)
+            TimeUnit.NANOSECONDS.sleep(delay);
+    }
+    
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+    
+    @Override
+    public String toString() {
+        return "RateLimiter{"
+                + "permitsPerSecond=" + tokensPerNano * TimeUnit.SECONDS.toNanos(1) + ", "
+                + "burst=" + (long) burst + "}";
+    }
+    
+}
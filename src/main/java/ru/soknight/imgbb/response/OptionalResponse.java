@@ -1,12 +1,13 @@
 package ru.soknight.imgbb.response;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.NoSuchElementException;
 
-import org.jsoup.Connection.Response;
-
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 /**
  * Represents optional response which may be presented or not.
  * 
@@ -14,21 +15,25 @@ import com.google.gson.GsonBuilder;
  * @see OptionalResponse#isPresent()
  */
 public class OptionalResponse {
-
-    private static final Gson GSON = new GsonBuilder().create();
     
     private final ResponseModel response;
     private final String rawResponse;
     
     private final int statusCode;
     private final String statusMessage;
+    private final boolean cached;
     
     private OptionalResponse(ResponseModel response, String rawResponse, int statusCode, String statusMessage) {
+        this(response, rawResponse, statusCode, statusMessage, false);
+    }
+    
+    private OptionalResponse(ResponseModel response, String rawResponse, int statusCode, String statusMessage, boolean cached) {
         this.response = response;
         this.rawResponse = rawResponse;
         
         this.statusCode = statusCode;
         this.statusMessage = statusMessage;
+        this.cached = cached;
     }
 
     /**
@@ -56,8 +61,10 @@ public class OptionalResponse {
     }
     
     /**
-     * Returns a raw response as json string from the primary Jsoup response.
-     * @return Raw response as json string.
+     * Returns a raw response as json string from the primary HTTP response.
+     * <p>
+     * The raw response of successful upload is retained only if it was requested.
+     * @return Raw response as json string or null if it wasn't retained.
      */
     public String getRaw() {
         return rawResponse;
@@ -83,10 +90,21 @@ public class OptionalResponse {
         return statusMessage;
     }
     
+    /**
+     * Checks if this response was taken from a cache instead of the real upload.
+     * <p>
+     * A cached response has no raw response.
+     * @return 'true' if it's cached or 'false' if not.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+    
     @Override
     public String toString() {
         return "OptionalResponse{"
                 + "present=" + isPresent() + ", "
+                + "cached=" + cached + ", "
                 + "response=" + response + ", "
                 + "rawResponse=" + rawResponse + ", "
                 + "statusCode=" + statusCode
@@ -94,21 +112,69 @@ public class OptionalResponse {
     }
     
     /**
-     * Creates optional response instance from a Jsoup connection response.
-     * @param jsoupResponse Jsoup connection response.
-     * @return A new {@link OptionalResponse} instance from received Jsoup response.
+     * Creates optional response instance from a previously received response data.
+     * @param data a previously received response data.
+     * @return A new successful {@link OptionalResponse} instance marked as cached.
+     * 
+     * @throws IllegalArgumentException if received data is null.
      */
-    public static OptionalResponse of(Response jsoupResponse) {
-        int status = jsoupResponse.statusCode();
-        String statusMessage = jsoupResponse.statusMessage();
+    public static OptionalResponse ofCached(ResponseModelData data) {
+        if(data == null)
+            throw new IllegalArgumentException("Specified response data is null!");
         
-        String body = jsoupResponse.body();
+        ResponseModel model = new ResponseModel(data, true, 200);
+        return new OptionalResponse(model, null, 200, "OK", true);
+    }
+    
+    /**
+     * Creates optional response instance from a JDK HTTP client response.
+     * <p>
+     * The JDK response has no status message, so it will be 'OK' for 200 status code or null otherwise.
+     * @param httpResponse JDK HTTP client response with the body as string.
+     * @return A new {@link OptionalResponse} instance from received HTTP response.
+     */
+    public static OptionalResponse of(HttpResponse<String> httpResponse) {
+        int status = httpResponse.statusCode();
+        String body = httpResponse.body();
         
         if(status != 200)
-            return new OptionalResponse(null, body, status, statusMessage);
+            return new OptionalResponse(null, body, status, null);
+        
+        ResponseModel model = parse(body);
+        return new OptionalResponse(model, body, status, "OK");
+    }
+    
+    /**
+     * Creates optional response instance reading the response body as a stream.
+     * <p>
+     * The successful response body is parsed right from the stream, so it isn't buffered as a string
+     * unless the raw response retaining is requested. The body of not successful response is always retained.
+     * The stream isn't closed by this method.
+     * @param statusCode a response status code.
+     * @param body a response body stream.
+     * @param retainRaw 'true' to retain the raw response of successful upload.
+     * @return A new {@link OptionalResponse} instance from received response body.
+     * 
+     * @throws IOException when the body cannot be read or it's malformed.
+     */
+    public static OptionalResponse of(int statusCode, InputStream body, boolean retainRaw) throws IOException {
+        if(statusCode != 200)
+            return new OptionalResponse(null, new String(body.readAllBytes(), StandardCharsets.UTF_8), statusCode, null);
         
-        ResponseModel model = GSON.fromJson(body, ResponseModel.class);
-        return new OptionalResponse(model, body, status, statusMessage);
+        if(!retainRaw)
+            return new OptionalResponse(ResponseModelReader.read(body), null, statusCode, "OK");
+        
+        byte[] bytes = body.readAllBytes();
+        ResponseModel model = ResponseModelReader.read(new ByteArrayInputStream(bytes));
+        return new OptionalResponse(model, new String(bytes, StandardCharsets.UTF_8), statusCode, "OK");
+    }
+    
+    private static ResponseModel parse(String body) {
+        try {
+            return ResponseModelReader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
     }
     
 }
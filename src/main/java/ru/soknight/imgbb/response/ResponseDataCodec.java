@@ -0,0 +1,109 @@
+package ru.soknight.imgbb.response;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A compact binary codec of the response data, which is used to persist the upload results.
+ * <p>
+ * The fields are written in the declaration order, the strings are written as modified UTF-8
+ * with a presence flag, so null values are kept as null.
+ */
+public final class ResponseDataCodec {
+
+    private static final byte VERSION = 1;
+    
+    private ResponseDataCodec() {}
+    
+    /**
+     * Writes the response data to the output.
+     * @param output the output to write to.
+     * @param data the response data to write.
+     * 
+     * @throws IllegalArgumentException if received data is null.
+     * @throws IOException when the output cannot be written.
+     */
+    public static void write(DataOutput output, ResponseModelData data) throws IOException {
+        if(data == null)
+            throw new IllegalArgumentException("Specified response data is null!");
+        
+        output.writeByte(VERSION);
+        writeString(output, data.id);
+        writeString(output, data.title);
+        writeString(output, data.url_viewer);
+        writeString(output, data.url);
+        writeString(output, data.display_url);
+        writeString(output, data.delete_url);
+        output.writeInt(data.size);
+        output.writeLong(data.time);
+        output.writeLong(data.expiration);
+        writeImage(output, data.image);
+        writeImage(output, data.thumb);
+        writeImage(output, data.medium);
+    }
+    
+    /**
+     * Reads the response data from the input.
+     * @param input the input to read from.
+     * @return The read response data.
+     * 
+     * @throws IOException when the input cannot be read or has unknown format.
+     */
+    public static ResponseModelData read(DataInput input) throws IOException {
+        byte version = input.readByte();
+        if(version != VERSION)
+            throw new IOException("Unknown response data format version: " + version + "!");
+        
+        ResponseModelData data = new ResponseModelData();
+        data.id = readString(input);
+        data.title = readString(input);
+        data.url_viewer = readString(input);
+        data.url = readString(input);
+        data.display_url = readString(input);
+        data.delete_url = readString(input);
+        data.size = input.readInt();
+        data.time = input.readLong();
+        data.expiration = input.readLong();
+        data.image = readImage(input);
+        data.thumb = readImage(input);
+        data.medium = readImage(input);
+        return data;
+    }
+    
+    private static void writeImage(DataOutput output, ResponseModelImage image) throws IOException {
+        output.writeBoolean(image != null);
+        if(image == null)
+            return;
+        
+        writeString(output, image.filename);
+        writeString(output, image.name);
+        writeString(output, image.mime);
+        writeString(output, image.extension);
+        writeString(output, image.url);
+    }
+    
+    private static ResponseModelImage readImage(DataInput input) throws IOException {
+        if(!input.readBoolean())
+            return null;
+        
+        ResponseModelImage image = new ResponseModelImage();
+        image.filename = readString(input);
+        image.name = readString(input);
+        image.mime = readString(input);
+        image.extension = readString(input);
+        image.url = readString(input);
+        return image;
+    }
+    
+    private static void writeString(DataOutput output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if(value != null)
+            output.writeUTF(value);
+    }
+    
+    private static String readString(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+    
+}
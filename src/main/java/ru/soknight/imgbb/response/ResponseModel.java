@@ -5,14 +5,20 @@ import lombok.NoArgsConstructor;
 /**
  * Represents a upload response.
  * <p>
- * Uses as deserialization model for Gson.
+ * Uses as deserialization model for the response reader.
  */
 @NoArgsConstructor
 public class ResponseModel {
 
-    private ResponseModelData data;
-    private boolean success;
-    private int status;
+    ResponseModelData data;
+    boolean success;
+    int status;
+    
+    ResponseModel(ResponseModelData data, boolean success, int status) {
+        this.data = data;
+        this.success = success;
+        this.status = status;
+    }
     
     /**
      * Returns a deserialized response data as {@link ResponseModelData} instance.
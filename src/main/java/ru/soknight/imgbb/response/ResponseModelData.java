@@ -3,30 +3,31 @@ package ru.soknight.imgbb.response;
 import java.util.Date;
 
 import lombok.NoArgsConstructor;
+import ru.soknight.imgbb.delete.ImageDeleter;
 import ru.soknight.imgbb.parameter.ExpirationTime;
 
 /**
  * Represents a upload response data.
  * <p>
- * Uses as deserialization model for Gson.
+ * Uses as deserialization model for the response reader.
  */
 @NoArgsConstructor
 public class ResponseModelData {
 
-    private String id;
-    private String title;
-    private String url_viewer;
-    private String url;
-    private String display_url;
-    private String delete_url;
+    String id;
+    String title;
+    String url_viewer;
+    String url;
+    String display_url;
+    String delete_url;
     
-    private int size;
-    private long time;
-    private long expiration;
+    int size;
+    long time;
+    long expiration;
     
-    private ResponseModelImage image;
-    private ResponseModelImage thumb;
-    private ResponseModelImage medium;
+    ResponseModelImage image;
+    ResponseModelImage thumb;
+    ResponseModelImage medium;
     
     /**
      * Returns an image ID on remote host.
@@ -73,7 +74,7 @@ public class ResponseModelData {
     /**
      * Returns an URL to image deletion.
      * <p>
-     * But I am not know how it works :/
+     * It's a page of the website which confirms the deletion, use the {@link ImageDeleter} to delete the image by it.
      * @return Delete image URL.
      */
     public String getDeleteUrl() {
@@ -121,6 +122,26 @@ public class ResponseModelData {
         return expiration;
     }
 
+    /**
+     * Returns an image URLs expiration timestamp relatively a remote host.
+     * <p>
+     * It is a time in seconds since January 1, 1970, 00:00:00 GMT.
+     * @return Image URLs expiration timestamp or 0 if they never expire.
+     * @see ResponseModelData#isExpired(long)
+     */
+    public long getExpirationTimestamp() {
+        return expiration > 0 ? time + expiration : 0L;
+    }
+    
+    /**
+     * Checks if the image URLs are expired (or will be expired) at the specified moment.
+     * @param timestamp the moment in seconds since January 1, 1970, 00:00:00 GMT.
+     * @return 'true' if the URLs are expired at this moment or 'false' if they aren't.
+     */
+    public boolean isExpired(long timestamp) {
+        return expiration > 0 && time + expiration <= timestamp;
+    }
+    
     /**
      * Returns an original image information from remote host.
      * @return Original image information.
@@ -5,16 +5,16 @@ import lombok.NoArgsConstructor;
 /**
  * Represents a upload response data image.
  * <p>
- * Uses as deserialization model for Gson.
+ * Uses as deserialization model for the response reader.
  */
 @NoArgsConstructor
 public class ResponseModelImage {
 
-    private String filename;
-    private String name;
-    private String mime;
-    private String extension;
-    private String url;
+    String filename;
+    String name;
+    String mime;
+    String extension;
+    String url;
     
     /**
      * Returns an uploaded file name received by remote host.
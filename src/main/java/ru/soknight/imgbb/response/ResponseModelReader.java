@@ -0,0 +1,452 @@
+package ru.soknight.imgbb.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A hand-written streaming reader of the upload response JSON.
+ * 
+ * It reads the bytes from the stream through a small buffer and fills the model fields
+ * directly, without reflection. Field names are compared as bytes, so only the model
+ * objects and their string values are allocated. Unknown fields are skipped, numbers
+ * are accepted both as JSON numbers and as strings (the site sends them as strings).
+ */
+final class ResponseModelReader {
+
+    private static final int BUFFER_SIZE = 2048;
+    
+    private static final byte[] DATA = ascii("data");
+    private static final byte[] SUCCESS = ascii("success");
+    private static final byte[] STATUS = ascii("status");
+    
+    private static final byte[] ID = ascii("id");
+    private static final byte[] TITLE = ascii("title");
+    private static final byte[] URL_VIEWER = ascii("url_viewer");
+    private static final byte[] URL = ascii("url");
+    private static final byte[] DISPLAY_URL = ascii("display_url");
+    private static final byte[] DELETE_URL = ascii("delete_url");
+    private static final byte[] SIZE = ascii("size");
+    private static final byte[] TIME = ascii("time");
+    private static final byte[] EXPIRATION = ascii("expiration");
+    private static final byte[] IMAGE = ascii("image");
+    private static final byte[] THUMB = ascii("thumb");
+    private static final byte[] MEDIUM = ascii("medium");
+    
+    private static final byte[] FILENAME = ascii("filename");
+    private static final byte[] NAME = ascii("name");
+    private static final byte[] MIME = ascii("mime");
+    private static final byte[] EXTENSION = ascii("extension");
+    
+    private static final byte[] TRUE = ascii("true");
+    
+    private final InputStream input;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private long offset;
+    
+    // the last read string or field name as UTF-8 bytes
+    private byte[] text;
+    private int textLength;
+    
+    private ResponseModelReader(InputStream input) {
+        this.input = input;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.text = new byte[128];
+    }
+    
+    static ResponseModel read(InputStream input) throws IOException {
+        ResponseModelReader reader = new ResponseModelReader(input);
+        ResponseModel model = reader.readModel();
+        if(model == null)
+            throw reader.malformed("the response is null");
+        
+        return model;
+    }
+    
+    private ResponseModel readModel() throws IOException {
+        if(consumeNull())
+            return null;
+        
+        ResponseModel model = new ResponseModel();
+        expect('{');
+        if(consume('}'))
+            return model;
+        
+        do {
+            readName();
+            if(textIs(DATA))
+                model.data = readData();
+            else if(textIs(SUCCESS))
+                model.success = readBoolean();
+            else if(textIs(STATUS))
+                model.status = (int) readLong();
+            else
+                skipValue();
+        } while(nextMember());
+        
+        return model;
+    }
+    
+    private ResponseModelData readData() throws IOException {
+        if(consumeNull())
+            return null;
+        
+        ResponseModelData data = new ResponseModelData();
+        expect('{');
+        if(consume('}'))
+            return data;
+        
+        do {
+            readName();
+            if(textIs(ID))
+                data.id = readString();
+            else if(textIs(TITLE))
+                data.title = readString();
+            else if(textIs(URL_VIEWER))
+                data.url_viewer = readString();
+            else if(textIs(URL))
+                data.url = readString();
+            else if(textIs(DISPLAY_URL))
+                data.display_url = readString();
+            else if(textIs(DELETE_URL))
+                data.delete_url = readString();
+            else if(textIs(SIZE))
+                data.size = (int) readLong();
+            else if(textIs(TIME))
+                data.time = readLong();
+            else if(textIs(EXPIRATION))
+                data.expiration = readLong();
+            else if(textIs(IMAGE))
+                data.image = readImage();
+            else if(textIs(THUMB))
+                data.thumb = readImage();
+            else if(textIs(MEDIUM))
+                data.medium = readImage();
+            else
+                skipValue();
+        } while(nextMember());
+        
+        return data;
+    }
+    
+    private ResponseModelImage readImage() throws IOException {
+        if(consumeNull())
+            return null;
+        
+        ResponseModelImage image = new ResponseModelImage();
+        expect('{');
+        if(consume('}'))
+            return image;
+        
+        do {
+            readName();
+            if(textIs(FILENAME))
+                image.filename = readString();
+            else if(textIs(NAME))
+                image.name = readString();
+            else if(textIs(MIME))
+                image.mime = readString();
+            else if(textIs(EXTENSION))
+                image.extension = readString();
+            else if(textIs(URL))
+                image.url = readString();
+            else
+                skipValue();
+        } while(nextMember());
+        
+        return image;
+    }
+    
+    /*
+     * VALUES
+     */
+    
+    private String readString() throws IOException {
+        int first = peek();
+        if(first == '"') {
+            readText();
+            return new String(text, 0, textLength, StandardCharsets.UTF_8);
+        }
+        
+        if(consumeNull())
+            return null;
+        
+        // a number or a literal as string
+        readLiteral();
+        return new String(text, 0, textLength, StandardCharsets.US_ASCII);
+    }
+    
+    private long readLong() throws IOException {
+        int first = peek();
+        if(first == '"')
+            readText();
+        else if(consumeNull())
+            return 0L;
+        else
+            readLiteral();
+        
+        if(textLength == 0)
+            return 0L;
+        
+        long value = 0L;
+        boolean negative = text[0] == '-';
+        for(int i = negative ? 1 : 0; i < textLength; i++) {
+            int digit = text[i] - '0';
+            if(digit < 0 || digit > 9) {
+                // a fractional part isn't expected, but it mustn't break the reading
+                if(text[i] == '.' || text[i] == 'e' || text[i] == 'E')
+                    break;
+                
+                throw malformed("a number is expected");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+    
+    private boolean readBoolean() throws IOException {
+        if(peek() == '"')
+            readText();
+        else
+            readLiteral();
+        
+        return textIs(TRUE) || textLength == 1 && text[0] == '1';
+    }
+    
+    private void skipValue() throws IOException {
+        int first = peek();
+        if(first == '"') {
+            readText();
+        } else if(first == '{' || first == '[') {
+            int depth = 0;
+            do {
+                int next = peek();
+                if(next == '"') {
+                    readText();
+                    continue;
+                }
+                
+                next = read();
+                if(next == '{' || next == '[')
+                    depth++;
+                else if(next == '}' || next == ']')
+                    depth--;
+            } while(depth > 0);
+        } else {
+            readLiteral();
+        }
+    }
+    
+    /*
+     * TOKENS
+     */
+    
+    private void readName() throws IOException {
+        if(peek() != '"')
+            throw malformed("a field name is expected");
+        
+        readText();
+        expect(':');
+    }
+    
+    private boolean nextMember() throws IOException {
+        int next = read();
+        if(next == ',')
+            return true;
+        
+        if(next == '}')
+            return false;
+        
+        throw malformed("',' or '}' is expected");
+    }
+    
+    private void readText() throws IOException {
+        expect('"');
+        textLength = 0;
+        while(true) {
+            int next = readRaw();
+            if(next == '"')
+                return;
+            
+            if(next != '\\') {
+                append(next);
+                continue;
+            }
+            
+            int escaped = readRaw();
+            switch(escaped) {
+                case 'b': append('\b'); break;
+                case 'f': append('\f'); break;
+                case 'n': append('\n'); break;
+                case 'r': append('\r'); break;
+                case 't': append('\t'); break;
+                case 'u': appendCodePoint(readUnicodeEscape()); break;
+                default: append(escaped); break;
+            }
+        }
+    }
+    
+    private int readUnicodeEscape() throws IOException {
+        int high = readHex();
+        if(!Character.isHighSurrogate((char) high))
+            return high;
+        
+        if(readRaw() != '\\' || readRaw() != 'u')
+            throw malformed("a low surrogate escape is expected");
+        
+        return Character.toCodePoint((char) high, (char) readHex());
+    }
+    
+    private int readHex() throws IOException {
+        int value = 0;
+        for(int i = 0; i < 4; i++) {
+            int digit = Character.digit(readRaw(), 16);
+            if(digit < 0)
+                throw malformed("a hex digit is expected");
+            
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+    
+    private void readLiteral() throws IOException {
+        skipWhitespace();
+        textLength = 0;
+        while(true) {
+            if(position == limit && !fill())
+                return;
+            
+            int next = buffer[position] & 0xFF;
+            if(next == ',' || next == '}' || next == ']' || isWhitespace(next))
+                return;
+            
+            position++;
+            append(next);
+        }
+    }
+    
+    private boolean consumeNull() throws IOException {
+        if(peek() != 'n')
+            return false;
+        
+        readLiteral();
+        return true;
+    }
+    
+    private boolean consume(char expected) throws IOException {
+        if(peek() != expected)
+            return false;
+        
+        position++;
+        return true;
+    }
+    
+    private void expect(char expected) throws IOException {
+        if(read() != expected)
+            throw malformed("'" + expected + "' is expected");
+    }
+    
+    private boolean textIs(byte[] name) {
+        if(textLength != name.length)
+            return false;
+        
+        for(int i = 0; i < textLength; i++)
+            if(text[i] != name[i])
+                return false;
+        
+        return true;
+    }
+    
+    /*
+     * BYTES
+     */
+    
+    private int peek() throws IOException {
+        skipWhitespace();
+        if(position == limit && !fill())
+            throw malformed("unexpected end of the response");
+        
+        return buffer[position] & 0xFF;
+    }
+    
+    private int read() throws IOException {
+        int next = peek();
+        position++;
+        return next;
+    }
+    
+    private int readRaw() throws IOException {
+        if(position == limit && !fill())
+            throw malformed("unexpected end of the response");
+        
+        return buffer[position++] & 0xFF;
+    }
+    
+    private void skipWhitespace() throws IOException {
+        while(true) {
+            if(position == limit && !fill())
+                return;
+            
+            if(!isWhitespace(buffer[position]))
+                return;
+            
+            position++;
+        }
+    }
+    
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        limit = 0;
+        
+        int read = input.read(buffer);
+        if(read <= 0)
+            return false;
+        
+        limit = read;
+        return true;
+    }
+    
+    private void append(int value) {
+        if(textLength == text.length) {
+            byte[] extended = new byte[text.length * 2];
+            System.arraycopy(text, 0, extended, 0, textLength);
+            text = extended;
+        }
+        text[textLength++] = (byte) value;
+    }
+    
+    private void appendCodePoint(int codePoint) {
+        // an escaped character is stored as UTF-8 bytes like the others
+        if(codePoint < 0x80) {
+            append(codePoint);
+        } else if(codePoint < 0x800) {
+            append(0xC0 | (codePoint >> 6));
+            append(0x80 | (codePoint & 0x3F));
+        } else if(codePoint < 0x10000) {
+            append(0xE0 | (codePoint >> 12));
+            append(0x80 | ((codePoint >> 6) & 0x3F));
+            append(0x80 | (codePoint & 0x3F));
+        } else {
+            append(0xF0 | (codePoint >> 18));
+            append(0x80 | ((codePoint >> 12) & 0x3F));
+            append(0x80 | ((codePoint >> 6) & 0x3F));
+            append(0x80 | (codePoint & 0x3F));
+        }
+    }
+    
+    private static boolean isWhitespace(int value) {
+        return value == ' ' || value == '\n' || value == '\r' || value == '\t';
+    }
+    
+    private IOException malformed(String reason) {
+        return new IOException("Malformed response JSON at byte " + (offset + position) + ": " + reason + "!");
+    }
+    
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+}
@@ -0,0 +1,312 @@
+package ru.soknight.imgbb.retry;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLException;
+
+import ru.soknight.imgbb.progress.TransferAbortedException;
+
+/**
+ * A policy of repeating failed uploads with exponential backoff and jitter.
+ * <p>
+ * Only the transient failures are repeated by default: connection failures (the request wasn't sent at all),
+ * aborted body transfers and 429, 502, 503, 504 status codes. An upload isn't an idempotent operation,
+ * so the response timeouts and 500 status code retrying may lead to duplicated images on the site,
+ * they're repeated only if it's enabled explicitly.
+ * <p>
+ * You must use the {@link RetryPolicy.Builder} to build a new policy instance.
+ * 
+ * @see RetryPolicy#disabled()
+ */
+public class RetryPolicy {
+
+    private static final RetryPolicy DISABLED = new Builder().maxAttempts(1).build();
+    
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    private final int[] retryableStatuses;
+    private final boolean retryOnTimeout;
+    private final boolean respectRetryAfter;
+    
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.retryableStatuses = builder.retryableStatuses.clone();
+        this.retryOnTimeout = builder.retryOnTimeout;
+        this.respectRetryAfter = builder.respectRetryAfter;
+        
+        Arrays.sort(retryableStatuses);
+    }
+    
+    /**
+     * Returns the policy which makes the only attempt.
+     * @return The policy without retries.
+     */
+    public static RetryPolicy disabled() {
+        return DISABLED;
+    }
+    
+    /**
+     * Returns the maximal amount of attempts including the first one.
+     * @return The attempts limit.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    /**
+     * Calculates a delay before the next attempt after the response with received status code.
+     * @param attempt the number of the failed attempt starting with 1.
+     * @param statusCode the response status code.
+     * @param retryAfter the 'Retry-After' header value, may be null.
+     * @return The delay <b>in milliseconds</b> or -1 if the upload mustn't be repeated.
+     */
+    public long getRetryDelay(int attempt, int statusCode, String retryAfter) {
+        if(attempt >= maxAttempts || Arrays.binarySearch(retryableStatuses, statusCode) < 0)
+            return -1L;
+        
+        long delay = getBackoff(attempt);
+        if(respectRetryAfter && retryAfter != null) {
+            long requested = parseRetryAfter(retryAfter);
+            if(requested > maxBackoff)
+                return -1L;
+            
+            delay = Math.max(delay, requested);
+        }
+        
+        return delay;
+    }
+    
+    /**
+     * Calculates a delay before the next attempt after the exception.
+     * @param attempt the number of the failed attempt starting with 1.
+     * @param error the exception which was thrown while the attempt.
+     * @return The delay <b>in milliseconds</b> or -1 if the upload mustn't be repeated.
+     */
+    public long getRetryDelay(int attempt, Throwable error) {
+        if(attempt >= maxAttempts || !isTransient(error))
+            return -1L;
+        
+        return getBackoff(attempt);
+    }
+    
+    private boolean isTransient(Throwable error) {
+        // the request wasn't sent, so it's safe to repeat it
+        if(error instanceof HttpConnectTimeoutException || error instanceof ConnectException)
+            return true;
+        
+        if(error instanceof UnknownHostException || error instanceof SSLException)
+            return false;
+        
+        // the body wasn't sent completely, so the image cannot be uploaded
+        if(error instanceof TransferAbortedException)
+            return !((TransferAbortedException) error).isCancelled();
+        
+        // the response wasn't received, but the image may be uploaded
+        if(error instanceof HttpTimeoutException)
+            return retryOnTimeout;
+        
+        return retryOnTimeout && error instanceof IOException;
+    }
+    
+    private long getBackoff(int attempt) {
+        double backoff = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempt - 1));
+        double randomized = backoff * (1D - jitter * ThreadLocalRandom.current().nextDouble());
+        return Math.max(0L, Math.round(randomized));
+    }
+    
+    /**
+     * Parses the 'Retry-After' header value, which may be a delay in seconds or a HTTP date.
+     * @param value the header value.
+     * @return The requested delay <b>in milliseconds</b>, 0 if the value cannot be parsed.
+     */
+    public static long parseRetryAfter(String value) {
+        String trimmed = value.trim();
+        try {
+            return Math.max(0L, Long.parseLong(trimmed) * 1000L);
+        } catch (NumberFormatException ignored) {
+        }
+        
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0L, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException ignored) {
+            return 0L;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "RetryPolicy{"
+                + "maxAttempts=" + maxAttempts + ", "
+                + "initialBackoff=" + initialBackoff + ", "
+                + "maxBackoff=" + maxBackoff + ", "
+                + "multiplier=" + multiplier + ", "
+                + "jitter=" + jitter + ", "
+                + "retryableStatuses=" + Arrays.toString(retryableStatuses) + ", "
+                + "retryOnTimeout=" + retryOnTimeout + ", "
+                + "respectRetryAfter=" + respectRetryAfter + "}";
+    }
+    
+    /**
+     * A builder for the {@link RetryPolicy}, provides an easy way to create it.
+     */
+    public static class Builder {
+        
+        private int maxAttempts = 3;
+        private long initialBackoff = 500L;
+        private long maxBackoff = 30_000L;
+        private double multiplier = 2D;
+        private double jitter = 0.5D;
+        private int[] retryableStatuses = { 429, 502, 503, 504 };
+        private boolean retryOnTimeout = false;
+        private boolean respectRetryAfter = true;
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal amount of attempts including the first one, the default is 3.
+         * @param value the attempts limit.
+         * @return Current builder instance.
+         */
+        public Builder maxAttempts(int value) {
+            if(value <= 0)
+                throw new IllegalArgumentException("The attempts limit must be positive!");
+            
+            this.maxAttempts = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the delay before the second attempt <b>in milliseconds</b>, the default is 500.
+         * @param value the initial backoff.
+         * @return Current builder instance.
+         */
+        public Builder initialBackoff(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The initial backoff cannot be negative!");
+            
+            this.initialBackoff = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the maximal delay between attempts <b>in milliseconds</b>, the default is 30000.
+         * <p>
+         * The upload isn't repeated if the server requests a longer delay via 'Retry-After' header.
+         * @param value the maximal backoff.
+         * @return Current builder instance.
+         */
+        public Builder maxBackoff(long value) {
+            if(value < 0)
+                throw new IllegalArgumentException("The maximal backoff cannot be negative!");
+            
+            this.maxBackoff = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the multiplier of the delay after each attempt, the default is 2.
+         * @param value the backoff multiplier.
+         * @return Current builder instance.
+         */
+        public Builder multiplier(double value) {
+            if(value < 1D)
+                throw new IllegalArgumentException("The backoff multiplier must be at least 1!");
+            
+            this.multiplier = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the randomly subtracted part of the delay (from 0 to 1), the default is 0.5.
+         * <p>
+         * It spreads the repeated uploads of many clients in time.
+         * @param value the jitter factor.
+         * @return Current builder instance.
+         */
+        public Builder jitter(double value) {
+            if(value < 0D || value > 1D)
+                throw new IllegalArgumentException("The jitter factor must be between 0 and 1!");
+            
+            this.jitter = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets the response status codes to repeat the upload after, the default is 429, 502, 503, 504.
+         * <p>
+         * The image may be uploaded even though 500 status code was received, so it isn't repeated by default.
+         * @param value the retryable status codes.
+         * @return Current builder instance.
+         */
+        public Builder retryableStatuses(int... value) {
+            if(value == null)
+                throw new IllegalArgumentException("The retryable statuses cannot be null!");
+            
+            this.retryableStatuses = value.clone();
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets whether the upload is repeated after the response timeout or the connection break, the default is 'false'.
+         * <p>
+         * The image may be uploaded even though the response wasn't received.
+         * @param value 'true' to repeat such uploads.
+         * @return Current builder instance.
+         */
+        public Builder retryOnTimeout(boolean value) {
+            this.retryOnTimeout = value;
+            return this;
+        }
+        
+        /**
+         * <b>(OPTIONAL)</b>
+         * <p>
+         * Sets whether the 'Retry-After' response header is respected, the default is 'true'.
+         * @param value 'true' to wait at least requested by the server time.
+         * @return Current builder instance.
+         */
+        public Builder respectRetryAfter(boolean value) {
+            this.respectRetryAfter = value;
+            return this;
+        }
+        
+        /**
+         * Finishes a policy building and returns builded policy.
+         * @return Builded retry policy instance.
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,83 @@
+package ru.soknight.imgbb.source;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+ * An image source which reads remaining bytes of a byte buffer.
+ */
+final class BufferImageSource implements ImageSource {
+
+    private final ByteBuffer buffer;
+    private final String filename;
+    
+    BufferImageSource(ByteBuffer buffer, String filename) {
+        this.buffer = buffer.slice();
+        this.filename = filename;
+    }
+    
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+    
+    @Override
+    public long getContentLength() {
+        return buffer.remaining();
+    }
+    
+    @Override
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+    
+    @Override
+    public ReadableByteChannel openChannel() {
+        return new BufferChannel(buffer.duplicate());
+    }
+    
+    @Override
+    public String toString() {
+        return "BufferImageSource{buffer=" + buffer + ", filename=" + filename + "}";
+    }
+    
+    private static final class BufferChannel implements ReadableByteChannel {
+        
+        private final ByteBuffer buffer;
+        private boolean open;
+        
+        private BufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.open = true;
+        }
+        
+        @Override
+        public int read(ByteBuffer destination) throws ClosedChannelException {
+            if(!open)
+                throw new ClosedChannelException();
+            
+            if(!buffer.hasRemaining())
+                return -1;
+            
+            int length = Math.min(buffer.remaining(), destination.remaining());
+            ByteBuffer part = buffer.duplicate();
+            part.limit(part.position() + length);
+            destination.put(part);
+            buffer.position(buffer.position() + length);
+            return length;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+        
+        @Override
+        public void close() {
+            open = false;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,129 @@
+package ru.soknight.imgbb.source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Image file formats supported by the site, which may be recognized by the file signature (magic bytes).
+ * 
+ * @see ImageFormat#sniff(ByteBuffer)
+ * @see ImageFormat#sniff(Path)
+ */
+public enum ImageFormat {
+
+    PNG("png", "image/png"),
+    JPEG("jpeg", "image/jpeg"),
+    GIF("gif", "image/gif"),
+    BMP("bmp", "image/bmp"),
+    TIFF("tiff", "image/tiff"),
+    WEBP("webp", "image/webp"),
+    HEIC("heic", "image/heic"),
+    AVIF("avif", "image/avif");
+    
+    /**
+     * Amount of the leading file bytes which is enough to recognize any supported format.
+     * <p>
+     * Value is <b>{@value}</b>.
+     */
+    public static final int SIGNATURE_LENGTH = 16;
+    
+    private final String formatName;
+    private final String mimeType;
+    
+    ImageFormat(String formatName, String mimeType) {
+        this.formatName = formatName;
+        this.mimeType = mimeType;
+    }
+    
+    /**
+     * Returns a name of the image format (png, jpeg etc.)
+     * @return The format name.
+     */
+    public String getFormatName() {
+        return formatName;
+    }
+    
+    /**
+     * Returns a MIME type of the image format.
+     * @return The format MIME type.
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+    
+    /**
+     * Recognizes an image format by the leading bytes of the image.
+     * <p>
+     * The buffer position isn't changed, {@value ImageFormat#SIGNATURE_LENGTH} remaining bytes are enough.
+     * @param header a buffer with the leading image bytes.
+     * @return The recognized image format or null if it's unknown.
+     */
+    public static ImageFormat sniff(ByteBuffer header) {
+        ByteBuffer bytes = header.slice();
+        int length = bytes.remaining();
+        
+        if(startsWith(bytes, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A))
+            return PNG;
+        
+        if(startsWith(bytes, 0, 0xFF, 0xD8, 0xFF))
+            return JPEG;
+        
+        if(startsWith(bytes, 0, 'G', 'I', 'F', '8'))
+            return GIF;
+        
+        if(startsWith(bytes, 0, 'B', 'M'))
+            return BMP;
+        
+        if(startsWith(bytes, 0, 'I', 'I', 0x2A, 0x00) || startsWith(bytes, 0, 'M', 'M', 0x00, 0x2A))
+            return TIFF;
+        
+        if(startsWith(bytes, 0, 'R', 'I', 'F', 'F') && startsWith(bytes, 8, 'W', 'E', 'B', 'P'))
+            return WEBP;
+        
+        // ISO base media file: 'ftyp' box with the major brand
+        if(length >= 12 && startsWith(bytes, 4, 'f', 't', 'y', 'p')) {
+            if(startsWith(bytes, 8, 'a', 'v', 'i', 'f') || startsWith(bytes, 8, 'a', 'v', 'i', 's'))
+                return AVIF;
+            
+            if(startsWith(bytes, 8, 'h', 'e', 'i', 'c') || startsWith(bytes, 8, 'h', 'e', 'i', 'x')
+                    || startsWith(bytes, 8, 'm', 'i', 'f', '1') || startsWith(bytes, 8, 'm', 's', 'f', '1'))
+                return HEIC;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Recognizes an image format by the leading bytes of the image file.
+     * <p>
+     * Only {@value ImageFormat#SIGNATURE_LENGTH} bytes are read, the image isn't decoded.
+     * @param path a path to an image file from the system.
+     * @return The recognized image format or null if it's unknown.
+     * 
+     * @throws IOException when the file cannot be read.
+     */
+    public static ImageFormat sniff(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SIGNATURE_LENGTH);
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while(header.hasRemaining())
+                if(channel.read(header) < 0)
+                    break;
+        }
+        return sniff(header.flip());
+    }
+    
+    private static boolean startsWith(ByteBuffer bytes, int offset, int... signature) {
+        if(bytes.remaining() < offset + signature.length)
+            return false;
+        
+        for(int i = 0; i < signature.length; i++)
+            if((bytes.get(offset + i) & 0xFF) != signature[i])
+                return false;
+        
+        return true;
+    }
+    
+}
@@ -0,0 +1,201 @@
+package ru.soknight.imgbb.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Represents raw (not encoded) image bytes which can be streamed into the upload request body.
+ * <p>
+ * Use static factory methods to create a source from a file, an input stream or a byte buffer.
+ * 
+ * @see ImageSource#of(File)
+ * @see ImageSource#of(Path)
+ * @see ImageSource#of(InputStream)
+ * @see ImageSource#of(ByteBuffer)
+ * @see ImageSource#ofMapped(Path)
+ */
+public interface ImageSource {
+
+    /**
+     * Returns a file name which will be sent with the image bytes.
+     * @return The image file name, may be null if it's unknown.
+     */
+    String getFilename();
+    
+    /**
+     * Returns an image bytes amount if it's known before reading.
+     * @return The image size in bytes or -1 if it's unknown.
+     */
+    long getContentLength();
+    
+    /**
+     * Opens a new channel to read the image bytes from the beginning.
+     * @return A new readable channel, the caller must close it.
+     * 
+     * @throws IOException when the channel cannot be opened.
+     */
+    ReadableByteChannel openChannel() throws IOException;
+    
+    /**
+     * Returns the image bytes as a read-only buffer if they're already in memory or mapped from a file.
+     * <p>
+     * Such a buffer is sent by the multipart body as is, without copying of the bytes into the heap chunks.
+     * A new buffer view is returned by each call, so its position may be changed freely.
+     * @return The image bytes buffer or null if the bytes may be only read from the channel.
+     * 
+     * @throws IOException when the file cannot be mapped.
+     */
+    default ByteBuffer getBuffer() throws IOException {
+        return null;
+    }
+    
+    /**
+     * Checks if the channel may be opened again to read the same bytes.
+     * @return 'true' if the source may be read many times or 'false' if only once.
+     */
+    default boolean isReplayable() {
+        return true;
+    }
+    
+    /**
+     * Creates an image source which reads bytes from the file.
+     * @param file an image file from the system.
+     * @return The new image source instance.
+     * 
+     * @throws IllegalArgumentException if received file parameter is null.
+     * @throws IllegalArgumentException if received file is not exists.
+     */
+    static ImageSource of(File file) {
+        if(file == null)
+            throw new IllegalArgumentException("Specified file is null!");
+        
+        return of(file.toPath());
+    }
+    
+    /**
+     * Creates an image source which reads bytes from the file.
+     * @param path a path to an image file from the system.
+     * @return The new image source instance.
+     * 
+     * @throws IllegalArgumentException if received path parameter is null.
+     * @throws IllegalArgumentException if received file is not exists.
+     */
+    static ImageSource of(Path path) {
+        if(path == null)
+            throw new IllegalArgumentException("Specified path is null!");
+        
+        if(!Files.isRegularFile(path))
+            throw new IllegalArgumentException("Specified file isn't exists in your system!");
+        
+        return new PathImageSource(path);
+    }
+    
+    /**
+     * Creates an image source which maps the file into memory and sends its bytes without copying.
+     * <p>
+     * The file is mapped once on the first upload, the mapped bytes are written into the socket
+     * from the page cache directly. The file mustn't be changed while this source is used.
+     * @param path a path to an image file from the system.
+     * @return The new image source instance.
+     * 
+     * @throws IllegalArgumentException if received path parameter is null.
+     * @throws IllegalArgumentException if received file is not exists.
+     * @see ImageSource#getBuffer()
+     */
+    static ImageSource ofMapped(Path path) {
+        if(path == null)
+            throw new IllegalArgumentException("Specified path is null!");
+        
+        if(!Files.isRegularFile(path))
+            throw new IllegalArgumentException("Specified file isn't exists in your system!");
+        
+        return new MappedImageSource(path);
+    }
+    
+    /**
+     * Creates an image source which reads bytes from the image file after checking its format.
+     * <p>
+     * The format is recognized by the file signature, the image isn't decoded and
+     * its bytes will be sent unchanged.
+     * @param path a path to an image file from the system.
+     * @return The new image source instance.
+     * 
+     * @throws IllegalArgumentException if received path parameter is null.
+     * @throws IllegalArgumentException if received file is not exists.
+     * @throws IllegalArgumentException if received file isn't an image in supported format.
+     * @throws UncheckedIOException when the file cannot be read.
+     * @see ImageFormat#sniff(Path)
+     */
+    static ImageSource ofImageFile(Path path) {
+        ImageSource source = of(path);
+        
+        ImageFormat format;
+        try {
+            format = ImageFormat.sniff(path);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("I/O exception was catched while try to read an image file!", ex);
+        }
+        
+        if(format == null)
+            throw new IllegalArgumentException("Specified file isn't an image in supported format!");
+        
+        return source;
+    }
+    
+    /**
+     * Creates an image source which reads bytes from the input stream.
+     * <p>
+     * The stream can be read only once, so this source cannot be sent again.
+     * @param inputStream an input stream with image bytes.
+     * @return The new image source instance.
+     * 
+     * @throws IllegalArgumentException if received input stream parameter is null.
+     */
+    static ImageSource of(InputStream inputStream) {
+        if(inputStream == null)
+            throw new IllegalArgumentException("Specified input stream is null!");
+        
+        return new StreamImageSource(inputStream);
+    }
+    
+    /**
+     * Creates an image source which reads remaining bytes of the byte buffer.
+     * <p>
+     * The buffer position and limit aren't changed while reading.
+     * @param buffer a byte buffer with image bytes.
+     * @return The new image source instance.
+     * 
+     * @throws IllegalArgumentException if received buffer parameter is null.
+     */
+    static ImageSource of(ByteBuffer buffer) {
+        if(buffer == null)
+            throw new IllegalArgumentException("Specified buffer is null!");
+        
+        return of(buffer, null);
+    }
+    
+    /**
+     * Creates an image source which reads remaining bytes of the byte buffer.
+     * <p>
+     * The buffer position and limit aren't changed while reading. The direct and mapped buffers
+     * are sent without copying of the bytes into the heap.
+     * @param buffer a byte buffer with image bytes.
+     * @param filename a file name which will be sent with the image bytes, may be null.
+     * @return The new image source instance.
+     * 
+     * @throws IllegalArgumentException if received buffer parameter is null.
+     */
+    static ImageSource of(ByteBuffer buffer, String filename) {
+        if(buffer == null)
+            throw new IllegalArgumentException("Specified buffer is null!");
+        
+        return new BufferImageSource(buffer, filename);
+    }
+    
+}
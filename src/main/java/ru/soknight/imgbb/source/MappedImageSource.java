@@ -0,0 +1,73 @@
+package ru.soknight.imgbb.source;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * An image source which maps the file into memory once and shares the mapping between uploads.
+ * 
+ * The mapping is released by the garbage collector together with the last buffer view,
+ * the channel is used only by the readers which need a stream of bytes (hashing etc.)
+ */
+final class MappedImageSource implements ImageSource {
+
+    private final Path path;
+    private volatile MappedByteBuffer mapping;
+    
+    MappedImageSource(Path path) {
+        this.path = path;
+    }
+    
+    @Override
+    public String getFilename() {
+        return path.getFileName().toString();
+    }
+    
+    @Override
+    public long getContentLength() {
+        MappedByteBuffer mapped = mapping;
+        if(mapped != null)
+            return mapped.capacity();
+        
+        try {
+            return Files.size(path);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("I/O exception was catched while try to get an image file size!", ex);
+        }
+    }
+    
+    @Override
+    public ByteBuffer getBuffer() throws IOException {
+        MappedByteBuffer mapped = mapping;
+        if(mapped == null) {
+            synchronized (this) {
+                mapped = mapping;
+                if(mapped == null) {
+                    try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+                    }
+                    this.mapping = mapped;
+                }
+            }
+        }
+        return mapped.asReadOnlyBuffer();
+    }
+    
+    @Override
+    public ReadableByteChannel openChannel() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+    
+    @Override
+    public String toString() {
+        return "MappedImageSource{path=" + path + "}";
+    }
+    
+}
@@ -0,0 +1,46 @@
+package ru.soknight.imgbb.source;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * An image source which reads bytes from a file using the file channel.
+ */
+final class PathImageSource implements ImageSource {
+
+    private final Path path;
+    
+    PathImageSource(Path path) {
+        this.path = path;
+    }
+    
+    @Override
+    public String getFilename() {
+        return path.getFileName().toString();
+    }
+    
+    @Override
+    public long getContentLength() {
+        try {
+            return Files.size(path);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("I/O exception was catched while try to get an image file size!", ex);
+        }
+    }
+    
+    @Override
+    public ReadableByteChannel openChannel() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+    
+    @Override
+    public String toString() {
+        return "PathImageSource{path=" + path + "}";
+    }
+    
+}
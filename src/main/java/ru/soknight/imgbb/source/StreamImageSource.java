@@ -0,0 +1,50 @@
+package ru.soknight.imgbb.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * An image source which reads bytes from an input stream, it may be opened only once.
+ */
+final class StreamImageSource implements ImageSource {
+
+    private final InputStream inputStream;
+    private final AtomicBoolean opened;
+    
+    StreamImageSource(InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.opened = new AtomicBoolean();
+    }
+    
+    @Override
+    public String getFilename() {
+        return null;
+    }
+    
+    @Override
+    public long getContentLength() {
+        return -1L;
+    }
+    
+    @Override
+    public boolean isReplayable() {
+        return false;
+    }
+    
+    @Override
+    public ReadableByteChannel openChannel() throws IOException {
+        if(!opened.compareAndSet(false, true))
+            throw new IOException("The input stream image source was already read!");
+        
+        return Channels.newChannel(inputStream);
+    }
+    
+    @Override
+    public String toString() {
+        return "StreamImageSource{stream=" + inputStream + "}";
+    }
+    
+}